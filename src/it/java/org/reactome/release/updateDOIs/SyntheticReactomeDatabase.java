@@ -0,0 +1,177 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaClass;
+
+/**
+ * A Reactome database in an embedded MariaDB server, created from a schema dump and filled with synthetic data: one
+ * Person and a number of Pathways, each with its own StableIdentifier (R-HSA-&lt;n&gt;.1), marked as needing a DOI.
+ *
+ * The instances are stored through the adaptor, so they are laid out in whichever tables the data model of the dump
+ * puts them.  Databases generated with the same number of pathways from the same dump get the same DB_IDs, as
+ * Test Reactome and GK Central share theirs.
+ */
+final class SyntheticReactomeDatabase {
+
+	static final String USER = "root";
+	static final String PASSWORD = "";
+
+	private final String name;
+	private final int port;
+	private final long personId;
+	private final List<Long> pathwayDbIds;
+
+	private SyntheticReactomeDatabase(String name, int port, long personId, List<Long> pathwayDbIds) {
+		this.name = name;
+		this.port = port;
+		this.personId = personId;
+		this.pathwayDbIds = pathwayDbIds;
+	}
+
+	/**
+	 * Creates the database on the embedded server, loads the schema dump and stores the synthetic instances.
+	 *
+	 * @param server Running embedded MariaDB server
+	 * @param name Name of the database to create (an existing database of that name is dropped first)
+	 * @param schemaDump SQL dump of a Reactome database's tables (without data) and its DataModel table (with data)
+	 * @param pathwayCount Number of pathways to generate
+	 * @return The generated database
+	 * @throws Exception Thrown if the dump can not be loaded or the instances can not be stored
+	 */
+	static SyntheticReactomeDatabase create(DB server, String name, Path schemaDump, int pathwayCount)
+		throws Exception {
+
+		int port = server.getConfiguration().getPort();
+		server.run("DROP DATABASE IF EXISTS " + name, USER, PASSWORD);
+		server.createDB(name);
+		try (InputStream dump = Files.newInputStream(schemaDump)) {
+			server.source(dump, USER, PASSWORD, name);
+		}
+
+		MySQLAdaptor dba = new MySQLAdaptor("127.0.0.1", name, USER, PASSWORD, port);
+		try {
+			dba.startTransaction();
+			GKInstance person = newInstance(dba, ReactomeJavaConstants.Person);
+			person.setAttributeValue(ReactomeJavaConstants.surname, "Synthetic");
+			person.setAttributeValue(ReactomeJavaConstants.firstname, "Curator");
+			person.setDisplayName("Synthetic, Curator");
+			long personId = dba.storeInstance(person);
+
+			List<Long> pathwayDbIds = new ArrayList<>();
+			for (int pathwayNumber = 1; pathwayNumber <= pathwayCount; pathwayNumber++) {
+				GKInstance stableIdentifier = newInstance(dba, ReactomeJavaConstants.StableIdentifier);
+				stableIdentifier.setAttributeValue(ReactomeJavaConstants.identifier, "R-HSA-" + pathwayNumber);
+				stableIdentifier.setAttributeValue(ReactomeJavaConstants.identifierVersion, "1");
+				stableIdentifier.setDisplayName(stableId(pathwayNumber));
+				dba.storeInstance(stableIdentifier);
+
+				GKInstance pathway = newInstance(dba, ReactomeJavaConstants.Pathway);
+				pathway.setAttributeValue(ReactomeJavaConstants.name, pathwayName(pathwayNumber));
+				pathway.setAttributeValue(ReactomeJavaConstants.stableIdentifier, stableIdentifier);
+				pathway.setAttributeValue(ReactomeJavaConstants.doi, CandidateSelector.NEEDS_DOI_SENTINEL);
+				pathway.setDisplayName(pathwayName(pathwayNumber));
+				pathwayDbIds.add(dba.storeInstance(pathway));
+			}
+			dba.commit();
+			return new SyntheticReactomeDatabase(name, port, personId, pathwayDbIds);
+		} finally {
+			dba.cleanUp();
+		}
+	}
+
+	static String stableId(int pathwayNumber) {
+		return "R-HSA-" + pathwayNumber + ".1";
+	}
+
+	static String pathwayName(int pathwayNumber) {
+		return "Synthetic pathway " + pathwayNumber;
+	}
+
+	// Lines of an UpdateDOIs.report listing every generated pathway
+	static List<String> reportLines(int pathwayCount) {
+		List<String> lines = new ArrayList<>();
+		for (int pathwayNumber = 1; pathwayNumber <= pathwayCount; pathwayNumber++) {
+			lines.add(UpdateDOIs.REACTOME_DOI_PREFIX + "/" + stableId(pathwayNumber) + "," + pathwayName(pathwayNumber));
+		}
+		return lines;
+	}
+
+	String getName() {
+		return this.name;
+	}
+
+	int getPort() {
+		return this.port;
+	}
+
+	long getPersonId() {
+		return this.personId;
+	}
+
+	List<Long> getPathwayDbIds() {
+		return this.pathwayDbIds;
+	}
+
+	MySQLAdaptor connect() throws SQLException {
+		return new MySQLAdaptor("127.0.0.1", this.name, USER, PASSWORD, this.port);
+	}
+
+	/**
+	 * @return Messages for the pathways whose doi is not the DOI built from their stable identifier (empty if all
+	 * pathways have theirs)
+	 * @throws Exception Thrown if the pathways can not be read
+	 */
+	@SuppressWarnings("unchecked")
+	List<String> getPathwaysWithoutTheirDOI() throws Exception {
+		List<String> messages = new ArrayList<>();
+		MySQLAdaptor dba = connect();
+		try {
+			List<GKInstance> pathways = new ArrayList<>(dba.fetchInstancesByClass(ReactomeJavaConstants.Pathway));
+			new PathwayPreloader(dba, PathwayResolver.DEFAULT_CHUNK_SIZE).preload(pathways, ReactomeJavaConstants.doi);
+			new PathwayPreloader(dba, PathwayResolver.DEFAULT_CHUNK_SIZE).preloadStableIdentifiers(pathways);
+			for (GKInstance pathway : pathways) {
+				GKInstance stableIdentifier =
+					(GKInstance) pathway.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+				String expectedDOI = UpdateDOIs.REACTOME_DOI_PREFIX + "/" + stableIdentifier.getDisplayName();
+				Object doi = pathway.getAttributeValue(ReactomeJavaConstants.doi);
+				if (!expectedDOI.equals(doi)) {
+					messages.add(pathway + " in " + this.name + " has doi '" + doi + "' (expected " + expectedDOI + ")");
+				}
+			}
+			if (pathways.size() != this.pathwayDbIds.size()) {
+				messages.add(this.name + " has " + pathways.size() + " pathways, " + this.pathwayDbIds.size() +
+					" were generated");
+			}
+		} finally {
+			dba.cleanUp();
+		}
+		return messages;
+	}
+
+	private static GKInstance newInstance(MySQLAdaptor dba, String className) {
+		SchemaClass schemaClass = dba.getSchema().getClassByName(className);
+		if (schemaClass == null) {
+			throw new IllegalStateException("The schema dump has no " + className + " class");
+		}
+		GKInstance instance = new GKInstance();
+		instance.setDbAdaptor(dba);
+		instance.setSchemaClass(schemaClass);
+		return instance;
+	}
+
+	// Drops the database from the embedded server
+	void drop(DB server) throws ManagedProcessException {
+		server.run("DROP DATABASE IF EXISTS " + this.name, USER, PASSWORD);
+	}
+}
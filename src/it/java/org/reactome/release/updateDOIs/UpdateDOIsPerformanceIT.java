@@ -0,0 +1,248 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import com.beust.jcommander.JCommander;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Runs Main (test mode, then for real) and the Verifier against synthetic Test Reactome and GK Central databases in
+ * an embedded MariaDB server, at each of the sizes in -Dit.sizes (default 100,1000,5000).
+ *
+ * Each run must assign every pathway its DOI in both databases and leave the Verifier with nothing to report.  The
+ * wall time and the database round-trips counted by Metrics are then compared with the baselines in
+ * src/it/resources/performance-baselines.properties: more round-trips than the baseline (plus -Dit.roundTripTolerance,
+ * default 0) or a wall time above the baseline times -Dit.timeTolerance (default 2) fails the run.  Sizes without a
+ * baseline are only recorded.  The measurements are written to target/it-performance.properties, and
+ * -Dit.updateBaselines=true writes them to the baselines file instead.
+ *
+ * The databases are created from the dump in -Dit.schemaDump: a Reactome database's tables without data plus its
+ * DataModel table with data, e.g. 'mysqldump --no-data gk_central &gt; schema.sql' followed by
+ * 'mysqldump gk_central DataModel &gt;&gt; schema.sql'.  The tests are skipped without one.
+ */
+@RunWith(Parameterized.class)
+public class UpdateDOIsPerformanceIT {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private static final int RELEASE_NUMBER = 999;
+	private static final String TEST_REACTOME = "it_release_current";
+	private static final String GK_CENTRAL = "it_gk_central";
+	private static final Path BASELINES_PATH = Paths.get("src", "it", "resources", "performance-baselines.properties");
+	private static final Path RESULTS_PATH = Paths.get("target", "it-performance.properties");
+
+	private static DB server;
+	private static final Properties results = new Properties();
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Parameterized.Parameter
+	public int pathwayCount;
+
+	private SyntheticReactomeDatabase testReactome;
+	private SyntheticReactomeDatabase gkCentral;
+
+	@Parameterized.Parameters(name = "{0} pathways")
+	public static Collection<Object[]> sizes() {
+		List<Object[]> sizes = new ArrayList<>();
+		for (String size : System.getProperty("it.sizes", "100,1000,5000").split(",")) {
+			sizes.add(new Object[] {Integer.parseInt(size.trim())});
+		}
+		return sizes;
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		Assume.assumeTrue("-Dit.schemaDump is not set to a Reactome schema dump", getSchemaDump() != null);
+
+		// Port 0 picks a free port
+		server = DB.newEmbeddedDB(DBConfigurationBuilder.newBuilder().setPort(0).build());
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopServer() throws Exception {
+		if (server != null) {
+			server.stop();
+			writeResults();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(getTestModeDOIList());
+		if (this.testReactome != null) {
+			this.testReactome.drop(server);
+		}
+		if (this.gkCentral != null) {
+			this.gkCentral.drop(server);
+		}
+		Metrics.reset();
+	}
+
+	@Test
+	public void testEveryDOIAssignedAndVerified() throws Exception {
+		this.testReactome =
+			SyntheticReactomeDatabase.create(server, TEST_REACTOME, getSchemaDump(), this.pathwayCount);
+		this.gkCentral = SyntheticReactomeDatabase.create(server, GK_CENTRAL, getSchemaDump(), this.pathwayCount);
+		assertEquals("Test Reactome and GK Central pathways must share their DB_IDs",
+			this.testReactome.getPathwayDbIds(), this.gkCentral.getPathwayDbIds());
+
+		Path config = writeConfig();
+		Path report = this.folder.getRoot().toPath().resolve("UpdateDOIs.report");
+		Files.write(report, SyntheticReactomeDatabase.reportLines(this.pathwayCount), StandardCharsets.UTF_8);
+
+		// Test mode lists the DOIs the Verifier expects
+		Main.main(new String[] {config.toString(), ""});
+		assertEquals(this.pathwayCount, Files.readAllLines(getTestModeDOIList(), StandardCharsets.UTF_8).size());
+
+		Metrics.reset();
+		long updateStart = System.nanoTime();
+		Main.main(new String[] {config.toString(), report.toString()});
+		record("update", System.nanoTime() - updateStart, Metrics.getRoundTripCount());
+
+		List<String> errors = new ArrayList<>(this.testReactome.getPathwaysWithoutTheirDOI());
+		errors.addAll(this.gkCentral.getPathwaysWithoutTheirDOI());
+		assertEquals(Collections.emptyList(), errors);
+
+		Metrics.reset();
+		long verifierStart = System.nanoTime();
+		List<String> verifierErrors = newVerifier().getErrorMessages();
+		record("verifier", System.nanoTime() - verifierStart, Metrics.getRoundTripCount());
+		assertEquals(Collections.emptyList(), verifierErrors);
+
+		checkBaseline("update");
+		checkBaseline("verifier");
+	}
+
+	private Path writeConfig() throws IOException {
+		Properties config = new Properties();
+		config.setProperty("release.database.user", SyntheticReactomeDatabase.USER);
+		config.setProperty("release.database.password", SyntheticReactomeDatabase.PASSWORD);
+		config.setProperty("release.database.host", "127.0.0.1");
+		config.setProperty("release.database.port", String.valueOf(this.testReactome.getPort()));
+		config.setProperty("release_current.name", this.testReactome.getName());
+		config.setProperty("curator.database.user", SyntheticReactomeDatabase.USER);
+		config.setProperty("curator.database.password", SyntheticReactomeDatabase.PASSWORD);
+		config.setProperty("curator.database.host", "127.0.0.1");
+		config.setProperty("curator.database.port", String.valueOf(this.gkCentral.getPort()));
+		config.setProperty("curator.database.name", this.gkCentral.getName());
+		config.setProperty("personId", String.valueOf(this.gkCentral.getPersonId()));
+		config.setProperty("releaseNumber", String.valueOf(RELEASE_NUMBER));
+		config.setProperty("progressIntervalSeconds", "0");
+
+		Path configPath = this.folder.getRoot().toPath().resolve("config.properties");
+		try (OutputStream output = Files.newOutputStream(configPath)) {
+			config.store(output, "Integration test databases");
+		}
+		return configPath;
+	}
+
+	private Verifier newVerifier() {
+		Verifier verifier = new Verifier();
+		JCommander.newBuilder()
+			.addObject(verifier)
+			.build()
+			.parse(
+				"--r", String.valueOf(RELEASE_NUMBER),
+				"--cu", SyntheticReactomeDatabase.USER, "--cp", SyntheticReactomeDatabase.PASSWORD,
+				"--ch", "127.0.0.1", "--cP", String.valueOf(this.gkCentral.getPort()), "--cd", this.gkCentral.getName(),
+				"--ru", SyntheticReactomeDatabase.USER, "--rp", SyntheticReactomeDatabase.PASSWORD,
+				"--rh", "127.0.0.1", "--rP", String.valueOf(this.testReactome.getPort()),
+				"--rd", this.testReactome.getName(),
+				"--o", "."
+			);
+		return verifier;
+	}
+
+	private void record(String flow, long elapsedNanos, long roundTrips) {
+		double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+		results.setProperty(key(flow, "seconds"), String.format(Locale.ROOT, "%.3f", seconds));
+		results.setProperty(key(flow, "roundTrips"), String.valueOf(roundTrips));
+		logger.info(String.format(Locale.ROOT, "%d pathways, %s: %.3f s, %d round-trips",
+			this.pathwayCount, flow, seconds, roundTrips));
+	}
+
+	private void checkBaseline(String flow) throws IOException {
+		Properties baselines = loadBaselines();
+		String baselineRoundTrips = baselines.getProperty(key(flow, "roundTrips"));
+		if (baselineRoundTrips != null) {
+			long actual = Long.parseLong(results.getProperty(key(flow, "roundTrips")));
+			double tolerance = Double.parseDouble(System.getProperty("it.roundTripTolerance", "0"));
+			long allowed = (long) Math.floor(Long.parseLong(baselineRoundTrips) * (1 + tolerance));
+			assertTrue(String.format("%s of %d pathways took %d round-trips; the baseline allows %d",
+				flow, this.pathwayCount, actual, allowed), actual <= allowed);
+		}
+		String baselineSeconds = baselines.getProperty(key(flow, "seconds"));
+		if (baselineSeconds != null) {
+			double actual = Double.parseDouble(results.getProperty(key(flow, "seconds")));
+			double allowed = Double.parseDouble(baselineSeconds) *
+				Double.parseDouble(System.getProperty("it.timeTolerance", "2"));
+			assertTrue(String.format("%s of %d pathways took %.3f s; the baseline allows %.3f s",
+				flow, this.pathwayCount, actual, allowed), actual <= allowed);
+		}
+	}
+
+	private String key(String flow, String measure) {
+		return this.pathwayCount + "." + flow + "." + measure;
+	}
+
+	private static Properties loadBaselines() throws IOException {
+		Properties baselines = new Properties();
+		if (Files.exists(BASELINES_PATH)) {
+			try (InputStream input = Files.newInputStream(BASELINES_PATH)) {
+				baselines.load(input);
+			}
+		}
+		return baselines;
+	}
+
+	private static void writeResults() throws IOException {
+		Path resultsPath = Boolean.getBoolean("it.updateBaselines") ? BASELINES_PATH : RESULTS_PATH;
+		Properties written = Boolean.getBoolean("it.updateBaselines") ? loadBaselines() : new Properties();
+		written.putAll(results);
+		Files.createDirectories(resultsPath.toAbsolutePath().getParent());
+		try (OutputStream output = Files.newOutputStream(resultsPath)) {
+			written.store(output, "<pathways>.<update|verifier>.<seconds|roundTrips>");
+		}
+	}
+
+	private static Path getSchemaDump() {
+		String schemaDump = System.getProperty("it.schemaDump");
+		return schemaDump != null && !schemaDump.isEmpty() ? Paths.get(schemaDump) : null;
+	}
+
+	// Written by Main in test mode to the working directory, where the Verifier reads it with '--o .'
+	private static Path getTestModeDOIList() {
+		return Paths.get("doisToBeUpdated-v" + RELEASE_NUMBER + ".txt");
+	}
+}
@@ -0,0 +1,278 @@
+package org.reactome.release.updateDOIs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.InvalidAttributeException;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * In-memory stand-in for a Reactome database holding a synthetic set of pathways, for benchmarking the DOI update
+ * without a MySQL server.
+ *
+ * The adaptor, its JDBC connection and the instances are stub-only Mockito mocks whose answers read the in-memory
+ * data, so no invocations are recorded however many iterations run.  Every call that would be a round-trip to MySQL
+ * (queries, attribute loads, statements and transaction control) waits for the configured latency first and is
+ * counted.  Writes are not applied, so each benchmark iteration sees the same data.
+ */
+final class FakeReactomeDatabase {
+
+	static final String REACTOME_DOI_PREFIX = "10.3180";
+
+	private final String name;
+	private final long latencyNanos;
+	private final AtomicLong roundTrips = new AtomicLong();
+	private final Map<Long, GKInstance> pathwaysByDbId = new HashMap<>();
+	private final Map<String, List<GKInstance>> pathwaysByDOI = new HashMap<>();
+	private final SchemaClass pathwayClass;
+	private final SchemaClass instanceEditClass;
+	private final MySQLAdaptor adaptor;
+	private final Connection connection;
+
+	/**
+	 * @param name Database name returned by the adaptor
+	 * @param pathwayCount Number of pathways: DB_IDs 1 to pathwayCount, with stable ids R-HSA-&lt;DB_ID&gt;.1
+	 * @param doisAssigned True if the pathways have their DOIs already, false if they are marked as needing one
+	 * @param latencyMicros Time each round-trip to the database takes
+	 * @throws InvalidAttributeException Thrown if the mocked Pathway schema class can not be set up
+	 */
+	FakeReactomeDatabase(String name, int pathwayCount, boolean doisAssigned, long latencyMicros) throws InvalidAttributeException {
+		this.name = name;
+		this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+		this.pathwayClass = mockPathwayClass();
+		this.instanceEditClass = mockSchemaClass("InstanceEdit");
+		this.adaptor = Mockito.mock(MySQLAdaptor.class,
+			Mockito.withSettings().stubOnly().defaultAnswer(this::answerAdaptor));
+		this.connection = Mockito.mock(Connection.class,
+			Mockito.withSettings().stubOnly().defaultAnswer(this::answerConnection));
+
+		GKInstance instanceEdit = newInstanceEdit(1L);
+		for (long dbId = 1; dbId <= pathwayCount; dbId++) {
+			String stableId = stableId(dbId);
+			String doi = doisAssigned ? REACTOME_DOI_PREFIX + "/" + stableId : CandidateSelector.NEEDS_DOI_SENTINEL;
+			GKInstance pathway = mockPathway(dbId, pathwayName(dbId), mockStableIdentifier(stableId), doi, instanceEdit);
+			this.pathwaysByDbId.put(dbId, pathway);
+			this.pathwaysByDOI.computeIfAbsent(normalizeDOI(doi), k -> new ArrayList<>()).add(pathway);
+		}
+	}
+
+	static String stableId(long dbId) {
+		return "R-HSA-" + dbId + ".1";
+	}
+
+	static String pathwayName(long dbId) {
+		return "Pathway " + dbId;
+	}
+
+	// Lines of an UpdateDOIs.report listing the first pathwayCount pathways
+	static List<String> reportLines(int pathwayCount) {
+		List<String> lines = new ArrayList<>();
+		for (long dbId = 1; dbId <= pathwayCount; dbId++) {
+			lines.add(REACTOME_DOI_PREFIX + "/" + stableId(dbId) + "," + pathwayName(dbId));
+		}
+		return lines;
+	}
+
+	MySQLAdaptor getAdaptor() {
+		return this.adaptor;
+	}
+
+	// Number of calls that would have been round-trips to MySQL so far
+	long getRoundTrips() {
+		return this.roundTrips.get();
+	}
+
+	GKInstance newInstanceEdit(long dbId) {
+		return mockInstance(invocation -> {
+			switch (invocation.getMethod().getName()) {
+				case "getDBID":
+					return dbId;
+				case "getSchemClass":
+					return this.instanceEditClass;
+				default:
+					return Mockito.RETURNS_DEFAULTS.answer(invocation);
+			}
+		});
+	}
+
+	private Object answerAdaptor(InvocationOnMock invocation) throws Throwable {
+		Object[] arguments = invocation.getArguments();
+		switch (invocation.getMethod().getName()) {
+			case "fetchInstanceByAttribute":
+				roundTrip();
+				return fetchPathways((String) arguments[1], (String) arguments[2], arguments[3]);
+			case "loadInstanceAttributeValues":
+				// The attribute values are in memory already
+				roundTrip();
+				return null;
+			case "startTransaction":
+			case "commit":
+			case "rollback":
+				roundTrip();
+				return null;
+			case "supportsTransactions":
+				return true;
+			case "getConnection":
+				return this.connection;
+			case "getDBName":
+				return this.name;
+			default:
+				return Mockito.RETURNS_DEFAULTS.answer(invocation);
+		}
+	}
+
+	private Object answerConnection(InvocationOnMock invocation) throws Throwable {
+		switch (invocation.getMethod().getName()) {
+			case "prepareStatement":
+				return Mockito.mock(PreparedStatement.class,
+					Mockito.withSettings().stubOnly().defaultAnswer(this::answerStatement));
+			case "createStatement":
+				return Mockito.mock(Statement.class,
+					Mockito.withSettings().stubOnly().defaultAnswer(this::answerStatement));
+			default:
+				return Mockito.RETURNS_DEFAULTS.answer(invocation);
+		}
+	}
+
+	private Object answerStatement(InvocationOnMock invocation) throws Throwable {
+		switch (invocation.getMethod().getName()) {
+			case "executeUpdate":
+				roundTrip();
+				return 1;
+			case "execute":
+				roundTrip();
+				return false;
+			case "executeQuery":
+				// Only display names are queried directly, and the fake instances have theirs already
+				roundTrip();
+				return Mockito.mock(ResultSet.class, Mockito.withSettings().stubOnly());
+			default:
+				return Mockito.RETURNS_DEFAULTS.answer(invocation);
+		}
+	}
+
+	private Collection<GKInstance> fetchPathways(String attributeName, String operator, Object value) {
+		List<GKInstance> fetched = new ArrayList<>();
+		if (attributeName.equals("DB_ID")) {
+			for (Object dbId : values(value)) {
+				GKInstance pathway = this.pathwaysByDbId.get(((Number) dbId).longValue());
+				if (pathway != null) {
+					fetched.add(pathway);
+				}
+			}
+		} else if (attributeName.equals("doi") && operator.equals("=")) {
+			for (Object doi : values(value)) {
+				fetched.addAll(this.pathwaysByDOI.getOrDefault(normalizeDOI((String) doi), Collections.emptyList()));
+			}
+		} else if (attributeName.equals("doi") && operator.equals("NOT REGEXP")) {
+			for (Map.Entry<String, List<GKInstance>> pathwaysWithDOI : this.pathwaysByDOI.entrySet()) {
+				if (!pathwaysWithDOI.getKey().startsWith(REACTOME_DOI_PREFIX)) {
+					fetched.addAll(pathwaysWithDOI.getValue());
+				}
+			}
+		} else {
+			throw new UnsupportedOperationException(
+				"Query not supported by the fake database: " + attributeName + " " + operator + " " + value);
+		}
+		return fetched;
+	}
+
+	private void roundTrip() {
+		this.roundTrips.incrementAndGet();
+		if (this.latencyNanos > 0) {
+			LockSupport.parkNanos(this.latencyNanos);
+		}
+	}
+
+	private GKInstance mockPathway(long dbId, String displayName, GKInstance stableIdentifier, String doi,
+		GKInstance instanceEdit) {
+		List<Object> modified = Collections.singletonList(instanceEdit);
+		String description = "[Pathway:" + dbId + "] " + displayName;
+		return mockInstance(invocation -> {
+			Object[] arguments = invocation.getArguments();
+			switch (invocation.getMethod().getName()) {
+				case "getDBID":
+					return dbId;
+				case "getDisplayName":
+					return displayName;
+				case "getSchemClass":
+					return this.pathwayClass;
+				case "getAttributeValue":
+					switch ((String) arguments[0]) {
+						case "stableIdentifier":
+							return stableIdentifier;
+						case "name":
+							return displayName;
+						case "doi":
+							return doi;
+						default:
+							return null;
+					}
+				case "getAttributeValuesList":
+					return arguments[0].equals("modified") ? modified : Collections.emptyList();
+				case "toString":
+					return description;
+				default:
+					return Mockito.RETURNS_DEFAULTS.answer(invocation);
+			}
+		});
+	}
+
+	private GKInstance mockStableIdentifier(String stableId) {
+		return mockInstance(invocation -> invocation.getMethod().getName().equals("getDisplayName") ?
+			stableId : Mockito.RETURNS_DEFAULTS.answer(invocation));
+	}
+
+	private static GKInstance mockInstance(Answer<Object> answer) {
+		return Mockito.mock(GKInstance.class, Mockito.withSettings().stubOnly().defaultAnswer(answer));
+	}
+
+	private static SchemaClass mockPathwayClass() throws InvalidAttributeException {
+		SchemaClass pathwayClass = mockSchemaClass("Pathway");
+		SchemaAttribute modified = mockAttribute(mockSchemaClass("DatabaseObject"), true);
+		SchemaAttribute doi = mockAttribute(pathwayClass, false);
+		Mockito.when(pathwayClass.getAttribute("modified")).thenReturn(modified);
+		Mockito.when(pathwayClass.getAttribute("doi")).thenReturn(doi);
+		return pathwayClass;
+	}
+
+	private static SchemaClass mockSchemaClass(String name) {
+		SchemaClass schemaClass = Mockito.mock(SchemaClass.class, Mockito.withSettings().stubOnly());
+		Mockito.when(schemaClass.getName()).thenReturn(name);
+		return schemaClass;
+	}
+
+	private static SchemaAttribute mockAttribute(SchemaClass origin, boolean multiple) {
+		SchemaAttribute attribute = Mockito.mock(SchemaAttribute.class, Mockito.withSettings().stubOnly());
+		Mockito.when(attribute.getOrigin()).thenReturn(origin);
+		Mockito.when(attribute.isMultiple()).thenReturn(multiple);
+		return attribute;
+	}
+
+	private static Collection<?> values(Object value) {
+		return value instanceof Collection ? (Collection<?>) value : Collections.singletonList(value);
+	}
+
+	// MySQL compares the doi column case-insensitively and ignoring trailing spaces
+	private static String normalizeDOI(String doi) {
+		return doi.toLowerCase(Locale.ROOT).replaceAll("\\s+$", "");
+	}
+}
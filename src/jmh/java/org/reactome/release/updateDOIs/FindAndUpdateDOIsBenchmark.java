@@ -0,0 +1,96 @@
+package org.reactome.release.updateDOIs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.gk.model.GKInstance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The full instance-by-instance DOI update (selection, preloading, GK Central resolution and verification, batched
+ * writes and the GK Central commit) against two fake databases in which every pathway needs a DOI and is listed in
+ * the report.
+ *
+ * Each iteration is one whole run, timed once.  The round-trip latency and the batching and parallelism settings are
+ * parameters, e.g. '-p latencyMicros=200 -p lookupChunkSize=1,500 -p writeBatchSize=1,200' compares per-pathway
+ * round-trips with the batched ones.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+public class FindAndUpdateDOIsBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	private int pathways;
+
+	@Param({"0", "200"})
+	private long latencyMicros;
+
+	@Param({"500"})
+	private int lookupChunkSize;
+
+	@Param({"200"})
+	private int writeBatchSize;
+
+	@Param({"0", "4"})
+	private int resolverThreads;
+
+	private FakeReactomeDatabase testReactome;
+	private FakeReactomeDatabase gkCentral;
+	private Map<String, ExpectedDOI> expectedUpdatedDOIs;
+	private GKInstance instanceEditTR;
+	private GKInstance instanceEditGK;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		this.testReactome = new FakeReactomeDatabase("test_reactome", this.pathways, false, this.latencyMicros);
+		this.gkCentral = new FakeReactomeDatabase("gk_central", this.pathways, false, this.latencyMicros);
+		this.instanceEditTR = this.testReactome.newInstanceEdit(this.pathways + 1L);
+		this.instanceEditGK = this.gkCentral.newInstanceEdit(this.pathways + 1L);
+		Path reportPath = Files.createTempFile("UpdateDOIs", ".report");
+		try {
+			Files.write(reportPath, FakeReactomeDatabase.reportLines(this.pathways));
+			this.expectedUpdatedDOIs = UpdateDOIs.getExpectedUpdatedDOIs(reportPath.toString());
+		} finally {
+			Files.delete(reportPath);
+		}
+
+		UpdateDOIs.setAdaptors(this.testReactome.getAdaptor(), this.gkCentral.getAdaptor());
+		UpdateDOIs.setLookupChunkSize(this.lookupChunkSize);
+		UpdateDOIs.setWriteBatchSize(this.writeBatchSize);
+		UpdateDOIs.setResolverWorkers(this.resolverThreads, this.gkCentral::getAdaptor);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		System.out.println("Round-trips: " + this.testReactome.getRoundTrips() + " to Test Reactome, " +
+			this.gkCentral.getRoundTrips() + " to GK Central");
+		UpdateDOIs.setResolverWorkers(0, null);
+	}
+
+	@Benchmark
+	public List<String> findAndUpdateDOIs() throws Exception {
+		List<String> assignedDOIs = UpdateDOIs.updateDOIsByInstance(
+			this.instanceEditTR, this.instanceEditGK, this.expectedUpdatedDOIs, false, null, null);
+		this.gkCentral.getAdaptor().commit();
+		return assignedDOIs;
+	}
+}
@@ -0,0 +1,82 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of UpdateDOIs.report and reconciliation of the DOIs (not) updated against it.
+ *
+ * One in ten pathways is reported as not updated, split between a stable id version drift and a rename, so the
+ * reconciliation has mismatches to classify.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+public class ReportBenchmark {
+
+	@Param({"1000", "10000", "100000"})
+	private int pathways;
+
+	private Path reportPath;
+	private Map<String, ExpectedDOI> expectedUpdatedDOIs;
+	private List<String> updated;
+	private List<String> notUpdated;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.reportPath = Files.createTempFile("UpdateDOIs", ".report");
+		Files.write(this.reportPath, FakeReactomeDatabase.reportLines(this.pathways));
+		this.expectedUpdatedDOIs = UpdateDOIs.getExpectedUpdatedDOIs(this.reportPath.toString());
+
+		this.updated = new ArrayList<>();
+		this.notUpdated = new ArrayList<>();
+		for (long dbId = 1; dbId <= this.pathways; dbId++) {
+			String doi = FakeReactomeDatabase.REACTOME_DOI_PREFIX + "/" + FakeReactomeDatabase.stableId(dbId);
+			String name = FakeReactomeDatabase.pathwayName(dbId);
+			if (dbId % 20 == 0) {
+				this.notUpdated.add(doi.replaceAll("\\.1$", ".2") + ":" + name);
+			} else if (dbId % 20 == 10) {
+				this.notUpdated.add(doi + ":" + name + " (new)");
+			} else {
+				this.updated.add(doi);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.reportPath);
+	}
+
+	@Benchmark
+	public Map<String, ExpectedDOI> parseReport() {
+		return UpdateDOIs.getExpectedUpdatedDOIs(this.reportPath.toString());
+	}
+
+	@Benchmark
+	public ReconciliationResult reconcileReport() {
+		return ReportTests.expectedUpdatesTests(this.expectedUpdatedDOIs, this.updated, this.notUpdated,
+			this.pathways, FakeReactomeDatabase.REACTOME_DOI_PREFIX);
+	}
+}
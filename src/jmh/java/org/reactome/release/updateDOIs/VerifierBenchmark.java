@@ -0,0 +1,85 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.beust.jcommander.JCommander;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The Verifier's matching of the expected DOIs (all pathways) against a release database where every pathway has its
+ * DOI and against a curator database where every pathway is still marked as needing one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j.configurationFile=log4j2-benchmark.xml")
+public class VerifierBenchmark {
+
+	private static final int RELEASE_NUMBER = 70;
+
+	@Param({"1000", "10000", "100000"})
+	private int pathways;
+
+	@Param({"0"})
+	private long latencyMicros;
+
+	private Path outputFolder;
+	private Verifier verifier;
+	private FakeReactomeDatabase releaseDatabase;
+	private FakeReactomeDatabase curatorDatabase;
+
+	@Setup
+	public void setUp() throws Exception {
+		this.outputFolder = Files.createTempDirectory("update-dois-verifier");
+		Files.write(this.outputFolder.resolve("doisToBeUpdated-v" + RELEASE_NUMBER + ".txt"),
+			FakeReactomeDatabase.reportLines(this.pathways));
+
+		this.verifier = new Verifier();
+		JCommander.newBuilder()
+			.addObject(this.verifier)
+			.build()
+			.parse("--r", String.valueOf(RELEASE_NUMBER), "--cu", "benchmark", "--cp", "benchmark",
+				"--ru", "benchmark", "--rp", "benchmark", "--o", this.outputFolder.toString());
+
+		this.releaseDatabase = new FakeReactomeDatabase("release", this.pathways, true, this.latencyMicros);
+		this.curatorDatabase = new FakeReactomeDatabase("gk_central", this.pathways, false, this.latencyMicros);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.list(this.outputFolder)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(this.outputFolder);
+	}
+
+	@Benchmark
+	public List<String> checkReleasedDOIs() throws Exception {
+		return this.verifier.checkDBAForPathwaysWithUnexpectedDOIs(this.releaseDatabase.getAdaptor());
+	}
+
+	@Benchmark
+	public List<String> checkCuratedPathwaysNeedingDOIs() throws Exception {
+		return this.verifier.checkCuratorDBAForPathwaysRequiringDOIs(this.curatorDatabase.getAdaptor());
+	}
+}
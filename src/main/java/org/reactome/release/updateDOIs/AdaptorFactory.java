@@ -0,0 +1,268 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.Schema;
+
+/**
+ * Opens MySQLAdaptors to one database.  Opening an adaptor connects and loads the Reactome schema from the database's
+ * DataModel table; connect opens several adaptors at once so their startup overlaps.
+ *
+ * With a schema cache directory, the loaded schema is also serialized to a file named after the database, the
+ * schema version (the checksum of the DataModel table) and the version of release-common-lib, whose classes are
+ * serialized, and later adaptors to a database with the same schema read that file instead of loading the schema
+ * again.  If the library version can not be told, or the cached schema can not be read or installed, the schema is
+ * loaded from the database as usual.
+ */
+public class AdaptorFactory implements Callable<MySQLAdaptor> {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final Logger warningsLog = LogManager.getLogger("warningsLog");
+	private static final String SCHEMA_EXTENSION = ".schema";
+	// MySQLAdaptor loads its schema from its constructor, before a subclass's own fields are set, so the cache
+	// directory is passed to the adaptor being opened on this thread here
+	private static final ThreadLocal<Path> openingSchemaCacheDirectory = new ThreadLocal<>();
+
+	private final String host;
+	private final String database;
+	private final String user;
+	private final String password;
+	private final int port;
+	private final Path schemaCacheDirectory;
+
+	/**
+	 * @param schemaCacheDirectory Directory of the cached schemas; null always loads the schema from the database
+	 */
+	public AdaptorFactory(String host, String database, String user, String password, int port,
+		Path schemaCacheDirectory) {
+		this.host = host;
+		this.database = database;
+		this.user = user;
+		this.password = password;
+		this.port = port;
+		this.schemaCacheDirectory = schemaCacheDirectory;
+	}
+
+	@Override
+	public MySQLAdaptor call() throws SQLException {
+		if (this.schemaCacheDirectory == null) {
+			return new MySQLAdaptor(this.host, this.database, this.user, this.password, this.port);
+		}
+		openingSchemaCacheDirectory.set(this.schemaCacheDirectory);
+		try {
+			return new SchemaCachingAdaptor(this.host, this.database, this.user, this.password, this.port);
+		} finally {
+			openingSchemaCacheDirectory.remove();
+		}
+	}
+
+	/**
+	 * Opens the adaptors of all the factories at the same time, each on its own thread.
+	 *
+	 * @param factories Factories of the adaptors to open
+	 * @return The adaptors, in the order of the factories
+	 * @throws Exception Thrown if an adaptor can not be opened; the adaptors that were opened are closed
+	 */
+	public static List<MySQLAdaptor> connect(List<? extends Callable<MySQLAdaptor>> factories) throws Exception {
+		List<MySQLAdaptor> adaptors = new ArrayList<>();
+		if (factories.size() < 2) {
+			for (Callable<MySQLAdaptor> factory : factories) {
+				adaptors.add(factory.call());
+			}
+			return adaptors;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(factories.size());
+		Exception failure = null;
+		try {
+			for (Future<MySQLAdaptor> adaptor : executor.invokeAll(factories)) {
+				try {
+					adaptors.add(adaptor.get());
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+					}
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		if (failure != null) {
+			for (MySQLAdaptor adaptor : adaptors) {
+				if (adaptor != null) {
+					adaptor.cleanUp();
+				}
+			}
+			throw failure;
+		}
+		return adaptors;
+	}
+
+	// The version of a database's schema: the checksum of its DataModel table, or null if it has none
+	static String fetchSchemaVersion(MySQLAdaptor dba) throws SQLException {
+		Connection connection = dba.getConnection();
+		try (Statement statement = connection.createStatement();
+			ResultSet resultSet = statement.executeQuery("CHECKSUM TABLE DataModel")) {
+			if (!resultSet.next()) {
+				return null;
+			}
+			long checksum = resultSet.getLong("Checksum");
+			return resultSet.wasNull() ? null : Long.toHexString(checksum);
+		}
+	}
+
+	// The version of release-common-lib: the version in its manifest and the size and modification time of the jar it
+	// was loaded from, as far as they are known, or null if neither is
+	static String getLibraryVersion() {
+		List<String> parts = new ArrayList<>();
+		Package adaptorPackage = MySQLAdaptor.class.getPackage();
+		if (adaptorPackage != null && adaptorPackage.getImplementationVersion() != null) {
+			parts.add(adaptorPackage.getImplementationVersion().replaceAll("[^A-Za-z0-9.]", "_"));
+		}
+		try {
+			CodeSource codeSource = MySQLAdaptor.class.getProtectionDomain().getCodeSource();
+			if (codeSource != null && codeSource.getLocation() != null) {
+				Path libraryPath = Paths.get(codeSource.getLocation().toURI());
+				if (Files.isRegularFile(libraryPath)) {
+					parts.add(Long.toHexString(Files.size(libraryPath)) + "." +
+						Long.toHexString(Files.getLastModifiedTime(libraryPath).toMillis()));
+				}
+			}
+		} catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException e) {
+			logger.debug("Unable to find the jar of " + MySQLAdaptor.class.getName(), e);
+		}
+		return parts.isEmpty() ? null : String.join("-", parts);
+	}
+
+	static Path getSchemaCachePath(Path schemaCacheDirectory, String database, String schemaVersion,
+		String libraryVersion) {
+		return schemaCacheDirectory.resolve(database + "-" + schemaVersion + "-" + libraryVersion + SCHEMA_EXTENSION);
+	}
+
+	static Schema readSchema(Path schemaPath) throws IOException, ClassNotFoundException {
+		try (InputStream input = Files.newInputStream(schemaPath);
+			ObjectInputStream objectInput = new ObjectInputStream(input)) {
+			return (Schema) objectInput.readObject();
+		}
+	}
+
+	// Written to a temporary file that is moved into place, so adaptors opened at the same time never read half of it
+	static void writeSchema(Schema schema, Path schemaPath) throws IOException {
+		Path absoluteSchemaPath = schemaPath.toAbsolutePath();
+		Files.createDirectories(absoluteSchemaPath.getParent());
+		Path temporarySchemaPath = Files.createTempFile(
+			absoluteSchemaPath.getParent(), absoluteSchemaPath.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream output = Files.newOutputStream(temporarySchemaPath);
+				ObjectOutputStream objectOutput = new ObjectOutputStream(output)) {
+				objectOutput.writeObject(schema);
+			}
+			Files.move(temporarySchemaPath, absoluteSchemaPath, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporarySchemaPath);
+		}
+	}
+
+	/**
+	 * Sets the schema of an adaptor.  MySQLAdaptor has no setter for its schema, so the schema is set on its only
+	 * field that can hold one.
+	 *
+	 * @throws NoSuchFieldException Thrown if MySQLAdaptor has no such field or several, or the schema was not set
+	 */
+	static void installSchema(MySQLAdaptor dba, Schema schema) throws ReflectiveOperationException {
+		List<Field> schemaFields = new ArrayList<>();
+		for (Field field : MySQLAdaptor.class.getDeclaredFields()) {
+			if (!Modifier.isStatic(field.getModifiers()) && Schema.class.isAssignableFrom(field.getType())) {
+				schemaFields.add(field);
+			}
+		}
+		if (schemaFields.size() != 1) {
+			throw new NoSuchFieldException(MySQLAdaptor.class.getName() + " has " + schemaFields.size() +
+				" schema fields instead of one");
+		}
+		Field schemaField = schemaFields.get(0);
+		if (!schemaField.getType().isInstance(schema)) {
+			throw new NoSuchFieldException("The schema field " + schemaField.getName() + " of " +
+				MySQLAdaptor.class.getName() + " can not hold a " + schema.getClass().getName());
+		}
+		schemaField.setAccessible(true);
+		schemaField.set(dba, schema);
+		if (dba.getSchema() != schema) {
+			throw new NoSuchFieldException("The schema field " + schemaField.getName() + " of " +
+				MySQLAdaptor.class.getName() + " is not the adaptor's schema");
+		}
+	}
+
+	/**
+	 * An adaptor that reads its schema from the cache directory of the factory opening it when the cache has the
+	 * database's schema version for this version of release-common-lib, and otherwise loads it from the database and
+	 * adds it to the cache.
+	 */
+	static final class SchemaCachingAdaptor extends MySQLAdaptor {
+
+		SchemaCachingAdaptor(String host, String database, String user, String password, int port)
+			throws SQLException {
+			super(host, database, user, password, port);
+		}
+
+		@Override
+		public void fetchSchema() throws Exception {
+			Path schemaCacheDirectory = openingSchemaCacheDirectory.get();
+			String schemaVersion = schemaCacheDirectory != null ? fetchSchemaVersion(this) : null;
+			String libraryVersion = schemaVersion != null ? getLibraryVersion() : null;
+			if (schemaVersion != null && libraryVersion == null) {
+				warningsLog.warn("Unable to tell the version of release-common-lib; the schema of " + getDBName() +
+					" is not cached");
+			}
+			if (libraryVersion == null) {
+				super.fetchSchema();
+				return;
+			}
+
+			Path schemaPath = getSchemaCachePath(schemaCacheDirectory, getDBName(), schemaVersion, libraryVersion);
+			if (Files.exists(schemaPath)) {
+				try {
+					installSchema(this, readSchema(schemaPath));
+					logger.info("Read the schema of " + getDBName() + " from " + schemaPath);
+					return;
+				} catch (IOException | ReflectiveOperationException | ClassCastException e) {
+					warningsLog.warn("Unable to use the cached schema " + schemaPath + "; loading it from the database",
+						e);
+				}
+			}
+			super.fetchSchema();
+			try {
+				writeSchema(getSchema(), schemaPath);
+				logger.info("Cached the schema of " + getDBName() + " in " + schemaPath);
+			} catch (IOException e) {
+				logger.warn("Unable to cache the schema of " + getDBName() + " in " + schemaPath, e);
+			}
+		}
+	}
+}
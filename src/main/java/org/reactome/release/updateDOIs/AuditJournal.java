@@ -0,0 +1,317 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Records every DOI decision of a run as one JSON object per line: pathways updated, left out because they are not in
+ * the report, failing the Test Reactome/GK Central verification or missing from GK Central, and the mismatches found
+ * when reconciling the report.
+ *
+ * Events are handed to a bounded queue and written by a background thread, so the update loop never waits on the
+ * disk; when the queue is full the event is dropped and counted rather than blocking.  Events recorded while the
+ * journal is closing are dropped and counted too, never queued behind the end of the journal.  Nothing is allocated
+ * while no journal is open, and the JSON of an event is only built on the writer thread.
+ */
+public final class AuditJournal implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger();
+	public static final int DEFAULT_CAPACITY = 10000;
+	// Tells the writer thread that no more events follow
+	private static final Event END = new Event(null, 0, null, 0, null, 0, null, null, null);
+
+	private static volatile AuditJournal current;
+
+	public enum Decision {
+		// The DOI was assigned to the pathway (in test mode: listed as one that can be updated)
+		UPDATED,
+		WOULD_UPDATE,
+		// Not updated as the DOI and name are not in the report
+		NOT_IN_REPORT,
+		// Not updated as the GK Central pathway with the same DB_ID has another display name
+		DISPLAY_NAME_MISMATCH,
+		// Not updated as the GK Central pathway with the same display name has another DB_ID
+		DB_ID_MISMATCH,
+		DB_ID_AND_DISPLAY_NAME_MISMATCH,
+		// Updated in Test Reactome only, as there is no GK Central pathway with the same DB_ID
+		MISSING_IN_GK_CENTRAL,
+		// A DOI of the report was not updated: the pathway has another stable identifier version, another name or
+		// another stable identifier; or no reason was found
+		REPORT_VERSION_DRIFT,
+		REPORT_RENAMED,
+		REPORT_DB_ID_DRIFT,
+		REPORT_UNRESOLVED,
+		// Updated though not in the report
+		UNEXPECTEDLY_UPDATED;
+
+		// e.g. not-in-report
+		public String getName() {
+			return name().toLowerCase(Locale.ROOT).replace('_', '-');
+		}
+	}
+
+	private final Path journalPath;
+	private final BlockingQueue<Event> queue;
+	private final BufferedWriter writer;
+	private final Thread writerThread;
+	private final AtomicLong droppedCount = new AtomicLong();
+	// Held shared while an event is queued and exclusively while closing, so no event is queued after END
+	private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+	private volatile long writtenCount;
+	private volatile IOException writeFailure;
+	private boolean closed;
+
+	private AuditJournal(Path journalPath, int capacity) throws IOException {
+		this.journalPath = journalPath;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.writer = Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8);
+		this.writerThread = new Thread(this::writeEvents, "audit-journal");
+		this.writerThread.setDaemon(true);
+	}
+
+	/**
+	 * Opens a journal and makes it the one the record methods write to, until it is closed.
+	 *
+	 * @param journalPath File to write the events to (replaced if it exists)
+	 * @param capacity Number of events that can wait to be written before new ones are dropped
+	 * @return The journal
+	 * @throws IOException Thrown if the file can not be opened
+	 */
+	public static AuditJournal open(Path journalPath, int capacity) throws IOException {
+		return open(journalPath, capacity, true);
+	}
+
+	// Without starting the writer, events stay queued until startWriter or close is called
+	static synchronized AuditJournal open(Path journalPath, int capacity, boolean startWriter) throws IOException {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Audit journal capacity must be positive: " + capacity);
+		}
+		if (current != null) {
+			throw new IllegalStateException("An audit journal is already open: " + current.journalPath);
+		}
+		AuditJournal journal = new AuditJournal(journalPath, capacity);
+		if (startWriter) {
+			journal.startWriter();
+		}
+		current = journal;
+		logger.info("Recording DOI decisions in " + journalPath);
+		return journal;
+	}
+
+	// True if decisions are being recorded
+	public static boolean isEnabled() {
+		return current != null;
+	}
+
+	/**
+	 * Records a decision about a pathway.
+	 *
+	 * @param decision What was decided
+	 * @param doi New DOI of the pathway
+	 * @param dbId DB_ID of the pathway
+	 * @param displayName Name of the pathway
+	 */
+	public static void record(Decision decision, String doi, long dbId, String displayName) {
+		AuditJournal journal = current;
+		if (journal != null) {
+			journal.offer(new Event(decision, System.currentTimeMillis(), doi, dbId, displayName, 0, null, null, null));
+		}
+	}
+
+	/**
+	 * Records a Test Reactome pathway failing the comparison with its GK Central counterpart.
+	 */
+	public static void recordMismatch(Decision decision, String doi, long trDbId, String trDisplayName, long gkDbId,
+		String gkDisplayName) {
+		AuditJournal journal = current;
+		if (journal != null) {
+			journal.offer(new Event(decision, System.currentTimeMillis(), doi, trDbId, trDisplayName, gkDbId,
+				gkDisplayName, null, null));
+		}
+	}
+
+	/**
+	 * Records a mismatch between a DOI of the report and a DOI that was not updated.
+	 *
+	 * @param expectedDOI DOI listed in the report
+	 * @param expectedDisplayName Name listed in the report (may be null)
+	 * @param actualDOI DOI found in the database (may be null)
+	 * @param actualDisplayName Name found in the database (may be null)
+	 */
+	public static void recordReport(Decision decision, String expectedDOI, String expectedDisplayName,
+		String actualDOI, String actualDisplayName) {
+		AuditJournal journal = current;
+		if (journal != null) {
+			journal.offer(new Event(decision, System.currentTimeMillis(), actualDOI, 0, actualDisplayName, 0, null,
+				expectedDOI, expectedDisplayName));
+		}
+	}
+
+	public Path getJournalPath() {
+		return this.journalPath;
+	}
+
+	// Events written so far
+	public long getWrittenCount() {
+		return this.writtenCount;
+	}
+
+	// Events dropped as the queue was full or the journal was closing
+	public long getDroppedCount() {
+		return this.droppedCount.get();
+	}
+
+	/**
+	 * Stops recording, waits for the queued events to be written and closes the file.
+	 *
+	 * @throws IOException Thrown if writing the events failed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (AuditJournal.class) {
+			this.closeLock.writeLock().lock();
+			try {
+				if (this.closed) {
+					return;
+				}
+				this.closed = true;
+			} finally {
+				this.closeLock.writeLock().unlock();
+			}
+			if (current == this) {
+				current = null;
+			}
+		}
+		try {
+			startWriter();
+			this.queue.put(END);
+			this.writerThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing the audit journal " + this.journalPath, e);
+		} finally {
+			this.writer.close();
+		}
+		if (this.droppedCount.get() > 0) {
+			logger.warn("Dropped " + this.droppedCount.get() + " DOI decisions as the audit journal queue was full; " +
+				"raise auditQueueCapacity to keep them");
+		}
+		logger.info("Recorded " + this.writtenCount + " DOI decisions in " + this.journalPath);
+		if (this.writeFailure != null) {
+			throw this.writeFailure;
+		}
+	}
+
+	synchronized void startWriter() {
+		if (this.writerThread.getState() == Thread.State.NEW) {
+			this.writerThread.start();
+		}
+	}
+
+	private void offer(Event event) {
+		this.closeLock.readLock().lock();
+		try {
+			if (this.closed || !this.queue.offer(event)) {
+				this.droppedCount.incrementAndGet();
+			}
+		} finally {
+			this.closeLock.readLock().unlock();
+		}
+	}
+
+	// Runs on the writer thread until the END event
+	private void writeEvents() {
+		try {
+			Event event;
+			while ((event = this.queue.take()) != END) {
+				if (this.writeFailure != null) {
+					continue;
+				}
+				try {
+					this.writer.write(JsonLines.toJson(event.toFields()));
+					this.writer.newLine();
+					this.writtenCount++;
+					// Only flushes once the queue is drained, so bursts of events are written together
+					if (this.queue.isEmpty()) {
+						this.writer.flush();
+					}
+				} catch (IOException e) {
+					logger.error("Unable to write the audit journal " + this.journalPath + "; no more decisions will " +
+						"be recorded", e);
+					this.writeFailure = e;
+				}
+			}
+			this.writer.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			this.writeFailure = e;
+		}
+	}
+
+	// A decision as recorded; a DB_ID of 0 and null values are left out of the JSON
+	private static final class Event {
+		private final Decision decision;
+		private final long timeMillis;
+		private final String doi;
+		private final long dbId;
+		private final String displayName;
+		private final long gkDbId;
+		private final String gkDisplayName;
+		private final String expectedDOI;
+		private final String expectedDisplayName;
+
+		Event(Decision decision, long timeMillis, String doi, long dbId, String displayName, long gkDbId,
+			String gkDisplayName, String expectedDOI, String expectedDisplayName) {
+			this.decision = decision;
+			this.timeMillis = timeMillis;
+			this.doi = doi;
+			this.dbId = dbId;
+			this.displayName = displayName;
+			this.gkDbId = gkDbId;
+			this.gkDisplayName = gkDisplayName;
+			this.expectedDOI = expectedDOI;
+			this.expectedDisplayName = expectedDisplayName;
+		}
+
+		Map<String, Object> toFields() {
+			Map<String, Object> fields = new LinkedHashMap<>();
+			fields.put("time", Instant.ofEpochMilli(this.timeMillis).toString());
+			fields.put("decision", this.decision.getName());
+			putIfPresent(fields, "doi", this.doi);
+			if (this.dbId != 0) {
+				fields.put("dbId", this.dbId);
+			}
+			putIfPresent(fields, "displayName", this.displayName);
+			if (this.gkDbId != 0) {
+				fields.put("gkDbId", this.gkDbId);
+			}
+			putIfPresent(fields, "gkDisplayName", this.gkDisplayName);
+			putIfPresent(fields, "expectedDoi", this.expectedDOI);
+			putIfPresent(fields, "expectedDisplayName", this.expectedDisplayName);
+			return fields;
+		}
+
+		private static void putIfPresent(Map<String, Object> fields, String name, String value) {
+			if (value != null) {
+				fields.put(name, value);
+			}
+		}
+	}
+}
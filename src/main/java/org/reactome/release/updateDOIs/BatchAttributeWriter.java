@@ -0,0 +1,188 @@
+package org.reactome.release.updateDOIs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+
+/**
+ * Queues attribute changes for instances and writes them as multi-row statements, so that updating N instances costs
+ * a number of round-trips proportional to N / batchSize rather than one per attribute per instance.
+ *
+ * Statements are executed on the adaptor's own connection, so writes to a database with an open transaction
+ * (i.e. GK Central) are still committed or rolled back through the adaptor.
+ */
+public class BatchAttributeWriter {
+
+	private static final Logger logger = LogManager.getLogger();
+	public static final int DEFAULT_BATCH_SIZE = 200;
+
+	private final MySQLAdaptor dba;
+	private final int batchSize;
+
+	// Single-valued attribute changes: table -> column -> (DB_ID -> new value)
+	private final Map<String, Map<String, Map<Long, Object>>> pendingUpdates = new LinkedHashMap<>();
+	// Values appended to multi-valued attributes: table -> attribute name -> rows of (DB_ID, rank, value, class)
+	private final Map<String, Map<String, List<Object[]>>> pendingInserts = new LinkedHashMap<>();
+	private int pendingCount;
+	private int writtenCount;
+	private int statementCount;
+
+	public BatchAttributeWriter(MySQLAdaptor dba, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Write batch size must be positive: " + batchSize);
+		}
+		this.dba = dba;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Queues the in-memory value of an attribute to be written to the database.  A single-valued attribute has its
+	 * column overwritten; for a multi-valued attribute the last value in the list is appended (i.e. the caller is
+	 * expected to have just added it with addAttributeValue).
+	 *
+	 * @param instance Instance whose attribute was changed
+	 * @param attributeName Name of the changed attribute
+	 * @throws Exception Thrown if the attribute is not valid for the instance or a flush of the queue fails
+	 */
+	@SuppressWarnings("unchecked")
+	public void queue(GKInstance instance, String attributeName) throws Exception {
+		SchemaAttribute attribute = instance.getSchemClass().getAttribute(attributeName);
+		String originTable = attribute.getOrigin().getName();
+
+		if (attribute.isMultiple()) {
+			List<Object> values = instance.getAttributeValuesList(attributeName);
+			Object appendedValue = values.get(values.size() - 1);
+			Object[] row;
+			if (appendedValue instanceof GKInstance) {
+				GKInstance appendedInstance = (GKInstance) appendedValue;
+				row = new Object[] {
+					instance.getDBID(), values.size() - 1, appendedInstance.getDBID(),
+					appendedInstance.getSchemClass().getName()
+				};
+			} else {
+				row = new Object[] {instance.getDBID(), values.size() - 1, appendedValue};
+			}
+			this.pendingInserts
+				.computeIfAbsent(originTable + "_2_" + attributeName, k -> new LinkedHashMap<>())
+				.computeIfAbsent(attributeName, k -> new ArrayList<>())
+				.add(row);
+		} else {
+			if (attribute.isInstanceTypeAttribute()) {
+				throw new IllegalArgumentException("Batched writes of single-valued instance attributes are not " +
+					"supported: " + attributeName);
+			}
+			this.pendingUpdates
+				.computeIfAbsent(originTable, k -> new LinkedHashMap<>())
+				.computeIfAbsent(attributeName, k -> new LinkedHashMap<>())
+				.put(instance.getDBID(), instance.getAttributeValue(attributeName));
+		}
+
+		this.pendingCount++;
+		if (this.pendingCount >= this.batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes all queued attribute changes to the database.
+	 *
+	 * @throws SQLException Thrown if any of the statements fail
+	 */
+	public void flush() throws SQLException {
+		if (this.pendingCount == 0) {
+			return;
+		}
+
+		Connection connection = this.dba.getConnection();
+		for (Map.Entry<String, Map<String, Map<Long, Object>>> tableUpdates : this.pendingUpdates.entrySet()) {
+			for (Map.Entry<String, Map<Long, Object>> columnUpdates : tableUpdates.getValue().entrySet()) {
+				executeUpdate(connection, tableUpdates.getKey(), columnUpdates.getKey(), columnUpdates.getValue());
+			}
+		}
+		for (Map.Entry<String, Map<String, List<Object[]>>> tableInserts : this.pendingInserts.entrySet()) {
+			for (Map.Entry<String, List<Object[]>> attributeInserts : tableInserts.getValue().entrySet()) {
+				executeInsert(connection, tableInserts.getKey(), attributeInserts.getKey(), attributeInserts.getValue());
+			}
+		}
+		logger.debug("Wrote " + this.pendingCount + " attribute changes to " + this.dba.getDBName());
+
+		this.writtenCount += this.pendingCount;
+		this.pendingCount = 0;
+		this.pendingUpdates.clear();
+		this.pendingInserts.clear();
+	}
+
+	public int getWrittenCount() {
+		return this.writtenCount;
+	}
+
+	public int getStatementCount() {
+		return this.statementCount;
+	}
+
+	// UPDATE table SET column = CASE DB_ID WHEN ? THEN ? ... END WHERE DB_ID IN (?, ...)
+	private void executeUpdate(Connection connection, String table, String column, Map<Long, Object> valuesByDbId)
+		throws SQLException {
+
+		StringBuilder sql = new StringBuilder("UPDATE " + table + " SET " + column + " = CASE DB_ID");
+		sql.append(String.join("", Collections.nCopies(valuesByDbId.size(), " WHEN ? THEN ?")));
+		sql.append(" END WHERE DB_ID IN (");
+		sql.append(String.join(", ", Collections.nCopies(valuesByDbId.size(), "?")));
+		sql.append(")");
+
+		try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+			int index = 1;
+			for (Map.Entry<Long, Object> valueByDbId : valuesByDbId.entrySet()) {
+				statement.setLong(index++, valueByDbId.getKey());
+				statement.setObject(index++, valueByDbId.getValue());
+			}
+			for (Long dbId : valuesByDbId.keySet()) {
+				statement.setLong(index++, dbId);
+			}
+			executeStatement(statement);
+		}
+		this.statementCount++;
+	}
+
+	private void executeStatement(PreparedStatement statement) throws SQLException {
+		int rowCount;
+		try (Metrics.Timer timer = Metrics.roundTrip(this.dba, Metrics.UPDATE)) {
+			rowCount = statement.executeUpdate();
+		}
+		Metrics.rowsWritten(this.dba, rowCount);
+	}
+
+	// INSERT INTO table (DB_ID, attribute_rank, attribute[, attribute_class]) VALUES (?, ?, ?[, ?]), ...
+	private void executeInsert(Connection connection, String table, String attributeName, List<Object[]> rows)
+		throws SQLException {
+
+		int columnCount = rows.get(0).length;
+		String columns = "DB_ID, " + attributeName + "_rank, " + attributeName +
+			(columnCount == 4 ? ", " + attributeName + "_class" : "");
+		String placeholders = "(" + String.join(", ", Collections.nCopies(columnCount, "?")) + ")";
+		String sql = "INSERT INTO " + table + " (" + columns + ") VALUES " +
+			String.join(", ", Collections.nCopies(rows.size(), placeholders));
+
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int index = 1;
+			for (Object[] row : rows) {
+				for (Object value : row) {
+					statement.setObject(index++, value);
+				}
+			}
+			executeStatement(statement);
+		}
+		this.statementCount++;
+	}
+}
@@ -0,0 +1,25 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for splitting work into fixed-size chunks, e.g. the values of an IN-list query.
+ */
+final class Batches {
+
+	private Batches() {}
+
+	// Splits the values into consecutive sub-lists holding at most 'chunkSize' values each
+	public static <T> List<List<T>> partition(List<T> values, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+
+		List<List<T>> chunks = new ArrayList<>();
+		for (int start = 0; start < values.size(); start += chunkSize) {
+			chunks.add(values.subList(start, Math.min(start + chunkSize, values.size())));
+		}
+		return chunks;
+	}
+}
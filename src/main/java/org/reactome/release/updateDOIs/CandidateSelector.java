@@ -0,0 +1,243 @@
+package org.reactome.release.updateDOIs;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Selects the Pathways that need a DOI.  The original 'NOT REGEXP' query has to evaluate the regular expression for
+ * every Pathway row, so two index-friendly alternatives are offered:
+ *
+ * - SENTINEL: pathways whose doi equals the "needs DOI" marker set by curators (an equality lookup)
+ * - PREFIX_RANGE: pathways whose doi sorts before or after the range of values starting with the Reactome DOI
+ *   prefix (two range scans)
+ *
+ * When comparing is enabled, the regular expression query is also run and any difference in the selected pathways
+ * is logged, so a switch of strategy can be checked against the current behaviour first.
+ */
+public class CandidateSelector {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final Logger warningsLog = LogManager.getLogger("warningsLog");
+
+	public static final String NEEDS_DOI_SENTINEL = "needs DOI";
+
+	public enum Strategy {
+		REGEX,
+		SENTINEL,
+		PREFIX_RANGE;
+
+		// Accepts the property values 'regex', 'sentinel' and 'prefixRange' (case and separators are ignored)
+		public static Strategy fromProperty(String value) {
+			String normalized = value.replaceAll("[_\\-\\s]", "");
+			for (Strategy strategy : values()) {
+				if (strategy.name().replace("_", "").equalsIgnoreCase(normalized)) {
+					return strategy;
+				}
+			}
+			throw new IllegalArgumentException("Unknown candidate selection strategy: " + value);
+		}
+	}
+
+	private final Strategy strategy;
+	private final boolean compareWithRegex;
+
+	public CandidateSelector(Strategy strategy, boolean compareWithRegex) {
+		this.strategy = strategy;
+		this.compareWithRegex = compareWithRegex && strategy != Strategy.REGEX;
+	}
+
+	public Strategy getStrategy() {
+		return this.strategy;
+	}
+
+	/**
+	 * Fetches the candidate Pathway instances using the selection strategy.
+	 *
+	 * @param dba Adaptor of the database to select the pathways from
+	 * @return Pathway instances needing a DOI
+	 * @throws Exception Thrown if a query fails
+	 */
+	public Collection<GKInstance> selectInstances(MySQLAdaptor dba) throws Exception {
+		Collection<GKInstance> candidates = selectInstances(dba, this.strategy);
+		if (this.compareWithRegex) {
+			compare(toDisplayNamesByDbId(candidates), toDisplayNamesByDbId(selectInstances(dba, Strategy.REGEX)));
+		}
+		return candidates;
+	}
+
+	/**
+	 * Fetches the candidate Pathways as plain records using the selection strategy.
+	 *
+	 * @param dba Adaptor of the database to select the pathways from
+	 * @return Records of the pathways needing a DOI, ordered by DB_ID
+	 * @throws Exception Thrown if the query fails
+	 */
+	public List<PathwayDOIRecord> selectRecords(MySQLAdaptor dba) throws Exception {
+		List<PathwayDOIRecord> candidates = selectRecords(dba, this.strategy);
+		if (this.compareWithRegex) {
+			compare(recordDisplayNamesByDbId(candidates), recordDisplayNamesByDbId(selectRecords(dba, Strategy.REGEX)));
+		}
+		return candidates;
+	}
+
+	/**
+	 * Selects the candidate Pathways of a snapshot using the selection strategy.  The conditions are evaluated as
+	 * MySQL evaluates them with a case-insensitive collation: a null doi is never selected.
+	 *
+	 * @param section Pathways of the database in the snapshot
+	 * @return Records of the pathways needing a DOI, ordered by DB_ID
+	 */
+	public List<PathwayDOIRecord> selectRecords(PathwaySnapshot.Section section) {
+		Pattern regex = Pattern.compile("^" + UpdateDOIs.REACTOME_DOI_PREFIX, Pattern.CASE_INSENSITIVE);
+		List<PathwayDOIRecord> candidates = new ArrayList<>();
+		for (int row = 0; row < section.size(); row++) {
+			String doi = section.getDoi(row);
+			if (doi == null) {
+				continue;
+			}
+			boolean selected;
+			switch (this.strategy) {
+				case SENTINEL:
+					selected = PathwayScanChecks.normalizeDOI(doi).equals(PathwayScanChecks.normalizeDOI(NEEDS_DOI_SENTINEL));
+					break;
+				case PREFIX_RANGE:
+					selected = doi.compareToIgnoreCase(prefixLowerBound()) < 0 || doi.compareToIgnoreCase(prefixUpperBound()) >= 0;
+					break;
+				case REGEX:
+				default:
+					selected = !regex.matcher(doi).find();
+			}
+			if (selected) {
+				candidates.add(section.getRecord(row));
+			}
+		}
+		return candidates;
+	}
+
+	private static Collection<GKInstance> selectInstances(MySQLAdaptor dba, Strategy strategy) throws Exception {
+		switch (strategy) {
+			case SENTINEL:
+				return fetchPathways(dba, ReactomeJavaConstants.doi, "=", NEEDS_DOI_SENTINEL);
+			case PREFIX_RANGE:
+				Map<Long, GKInstance> candidates = new LinkedHashMap<>();
+				for (GKInstance pathway : fetchPathways(dba, ReactomeJavaConstants.doi, "<", prefixLowerBound())) {
+					candidates.put(pathway.getDBID(), pathway);
+				}
+				for (GKInstance pathway : fetchPathways(dba, ReactomeJavaConstants.doi, ">=", prefixUpperBound())) {
+					candidates.put(pathway.getDBID(), pathway);
+				}
+				return candidates.values();
+			case REGEX:
+			default:
+				return fetchPathways(dba, "doi", "NOT REGEXP", "^" + UpdateDOIs.REACTOME_DOI_PREFIX);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Collection<GKInstance> fetchPathways(MySQLAdaptor dba, String attributeName, String operator,
+		String value) throws Exception {
+
+		Collection<GKInstance> pathways;
+		try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT)) {
+			pathways = dba.fetchInstanceByAttribute(ReactomeJavaConstants.Pathway, attributeName, operator, value);
+		}
+		Metrics.rowsRead(dba, pathways.size());
+		return pathways;
+	}
+
+	private static List<PathwayDOIRecord> selectRecords(MySQLAdaptor dba, Strategy strategy) throws Exception {
+		String condition;
+		List<String> parameters = new ArrayList<>();
+		switch (strategy) {
+			case SENTINEL:
+				condition = "p.doi = ?";
+				parameters.add(NEEDS_DOI_SENTINEL);
+				break;
+			case PREFIX_RANGE:
+				condition = "(p.doi < ? OR p.doi >= ?)";
+				parameters.add(prefixLowerBound());
+				parameters.add(prefixUpperBound());
+				break;
+			case REGEX:
+			default:
+				condition = "p.doi NOT REGEXP ?";
+				parameters.add("^" + UpdateDOIs.REACTOME_DOI_PREFIX);
+		}
+
+		List<PathwayDOIRecord> candidates = new ArrayList<>();
+		String sql = PathwayDOIRecord.selectSql(dba, condition);
+		try (PreparedStatement statement = dba.getConnection().prepareStatement(sql)) {
+			for (int i = 0; i < parameters.size(); i++) {
+				statement.setString(i + 1, parameters.get(i));
+			}
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT);
+				ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					candidates.add(PathwayDOIRecord.fromRow(resultSet));
+				}
+			}
+		}
+		Metrics.rowsRead(dba, candidates.size());
+		return candidates;
+	}
+
+	// Every doi starting with the prefix sorts in [prefix, prefix with its last character incremented)
+	static String prefixLowerBound() {
+		return UpdateDOIs.REACTOME_DOI_PREFIX;
+	}
+
+	static String prefixUpperBound() {
+		String prefix = UpdateDOIs.REACTOME_DOI_PREFIX;
+		char lastCharacter = prefix.charAt(prefix.length() - 1);
+		return prefix.substring(0, prefix.length() - 1) + (char) (lastCharacter + 1);
+	}
+
+	private void compare(Map<Long, String> selected, Map<Long, String> selectedByRegex) {
+		logger.info("Candidate selection '" + this.strategy + "' selected " + selected.size() +
+			" pathways; the regular expression selects " + selectedByRegex.size());
+		for (Map.Entry<Long, String> candidate : selected.entrySet()) {
+			logger.debug("Selected by " + this.strategy + ": [" + candidate.getKey() + "] " + candidate.getValue());
+		}
+
+		TreeSet<Long> allDbIds = new TreeSet<>(selected.keySet());
+		allDbIds.addAll(selectedByRegex.keySet());
+		for (Long dbId : allDbIds) {
+			if (!selected.containsKey(dbId)) {
+				warningsLog.warn("Pathway [" + dbId + "] " + selectedByRegex.get(dbId) + " is selected by the " +
+					"regular expression but not by " + this.strategy);
+			} else if (!selectedByRegex.containsKey(dbId)) {
+				warningsLog.warn("Pathway [" + dbId + "] " + selected.get(dbId) + " is selected by " +
+					this.strategy + " but not by the regular expression");
+			}
+		}
+	}
+
+	private static Map<Long, String> toDisplayNamesByDbId(Collection<GKInstance> pathways) {
+		Map<Long, String> displayNamesByDbId = new LinkedHashMap<>();
+		for (GKInstance pathway : pathways) {
+			displayNamesByDbId.put(pathway.getDBID(), pathway.getDisplayName());
+		}
+		return displayNamesByDbId;
+	}
+
+	private static Map<Long, String> recordDisplayNamesByDbId(List<PathwayDOIRecord> pathways) {
+		Map<Long, String> displayNamesByDbId = new LinkedHashMap<>();
+		for (PathwayDOIRecord pathway : pathways) {
+			displayNamesByDbId.put(pathway.getDbId(), pathway.getDisplayName());
+		}
+		return displayNamesByDbId;
+	}
+}
@@ -0,0 +1,145 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Append-only record of the pathways whose DOI updates have been committed, used to resume a run that committed in
+ * chunks (see ChunkedCommitter) after it failed part way through.
+ *
+ * Each line is "STAGE&lt;tab&gt;DB_ID&lt;tab&gt;DOI", where the stage is GK once the pathway's GK Central changes
+ * are committed and TR once its Test Reactome changes have also been written.  Lines are forced to disk before
+ * record returns; a line cut short by a crash is ignored when the journal is read back.
+ */
+public class CheckpointJournal implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	public enum Stage {
+		// The GK Central changes are committed
+		GK,
+		// The Test Reactome changes are written as well, i.e. the pathway is consistent in both databases
+		TR
+	}
+
+	private final Path journalPath;
+	private final FileChannel channel;
+	private final Map<Long, Stage> stagesByDbId = new HashMap<>();
+
+	private CheckpointJournal(Path journalPath, FileChannel channel) {
+		this.journalPath = journalPath;
+		this.channel = channel;
+	}
+
+	/**
+	 * Opens the journal for appending, reading back what an earlier run recorded in it.
+	 *
+	 * @param journalPath Journal file, created if it does not exist
+	 * @return Journal holding the stages recorded so far
+	 * @throws IOException Thrown if the journal can not be read or opened
+	 */
+	public static CheckpointJournal open(Path journalPath) throws IOException {
+		CheckpointJournal journal = new CheckpointJournal(journalPath, FileChannel.open(journalPath,
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+
+		String contents = new String(Files.readAllBytes(journalPath), StandardCharsets.UTF_8);
+		if (!contents.isEmpty() && !contents.endsWith("\n")) {
+			// Starts the next record on a line of its own after a line cut short
+			journal.channel.write(ByteBuffer.wrap(new byte[] {'\n'}));
+		}
+		for (String line : contents.split("\n")) {
+			if (!line.isEmpty() && !journal.readLine(line)) {
+				logger.warn("Ignoring incomplete line in checkpoint journal " + journalPath + ": " + line);
+			}
+		}
+		if (!journal.stagesByDbId.isEmpty()) {
+			logger.info("Resuming from checkpoint journal " + journalPath + ": " + journal.getCount(Stage.TR) +
+				" pathways completed, " + journal.getCount(Stage.GK) + " committed to GK Central only");
+		}
+		return journal;
+	}
+
+	public Path getJournalPath() {
+		return this.journalPath;
+	}
+
+	// True if the pathway's changes are committed to GK Central (whether or not Test Reactome is written as well)
+	public boolean isGkCentralCommitted(long dbId) {
+		return this.stagesByDbId.containsKey(dbId);
+	}
+
+	// True if the pathway's changes are written to both databases
+	public boolean isCompleted(long dbId) {
+		return this.stagesByDbId.get(dbId) == Stage.TR;
+	}
+
+	public int getCount(Stage stage) {
+		int count = 0;
+		for (Stage recordedStage : this.stagesByDbId.values()) {
+			if (recordedStage == stage) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Appends the pathways that reached a stage and forces them to disk.
+	 *
+	 * @param stage Stage the pathways reached
+	 * @param doisByDbId New DOIs of the pathways by DB_ID
+	 * @throws IOException Thrown if the journal can not be written
+	 */
+	public void record(Stage stage, Map<Long, String> doisByDbId) throws IOException {
+		if (doisByDbId.isEmpty()) {
+			return;
+		}
+		StringBuilder lines = new StringBuilder();
+		for (Map.Entry<Long, String> doiByDbId : doisByDbId.entrySet()) {
+			lines.append(stage).append('\t').append(doiByDbId.getKey()).append('\t').append(doiByDbId.getValue())
+				.append('\n');
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			this.channel.write(buffer);
+		}
+		this.channel.force(false);
+
+		for (Long dbId : doisByDbId.keySet()) {
+			this.stagesByDbId.put(dbId, stage);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	private boolean readLine(String line) {
+		String[] fields = line.split("\t");
+		if (fields.length != 3) {
+			return false;
+		}
+		try {
+			Stage stage = Stage.valueOf(fields[0]);
+			long dbId = Long.parseLong(fields[1]);
+			if (this.stagesByDbId.get(dbId) != Stage.TR) {
+				this.stagesByDbId.put(dbId, stage);
+			}
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Commits the DOI updates in chunks of pathways rather than in one GK Central transaction, recording each committed
+ * chunk in a CheckpointJournal so a failed run can be resumed.
+ *
+ * For each chunk the GK Central changes are written and committed first and only then are the Test Reactome changes
+ * (which are not transactional) written.  A failure therefore never leaves a Test Reactome pathway updated without
+ * its GK Central counterpart, and a pathway committed to GK Central only is finished on the next run.
+ */
+public class ChunkedCommitter {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private final MySQLAdaptor dbaGkCentral;
+	private final BatchAttributeWriter writerTR;
+	private final BatchAttributeWriter writerGK;
+	private final CheckpointJournal journal;
+	private final int chunkSize;
+	private final Map<Long, String> pendingGkCentralDOIs = new LinkedHashMap<>();
+	private final Map<Long, String> pendingTestReactomeDOIs = new LinkedHashMap<>();
+	private int pendingPathwayCount;
+	private int committedChunkCount;
+
+	/**
+	 * @param dbaGkCentral GK Central adaptor, with a transaction open
+	 * @param writerTR Writer of the Test Reactome changes; its batch size must hold a whole chunk of changes so that
+	 * nothing is written to Test Reactome before the chunk is committed to GK Central
+	 * @param writerGK Writer of the GK Central changes
+	 * @param journal Journal the committed pathways are recorded in
+	 * @param chunkSize Number of pathways per commit
+	 */
+	public ChunkedCommitter(MySQLAdaptor dbaGkCentral, BatchAttributeWriter writerTR, BatchAttributeWriter writerGK,
+		CheckpointJournal journal, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Commit chunk size must be positive: " + chunkSize);
+		}
+		this.dbaGkCentral = dbaGkCentral;
+		this.writerTR = writerTR;
+		this.writerGK = writerGK;
+		this.journal = journal;
+		this.chunkSize = chunkSize;
+	}
+
+	public CheckpointJournal getJournal() {
+		return this.journal;
+	}
+
+	// Batch size for the Test Reactome writer that never flushes by itself within a chunk: each pathway queues two
+	// changes ('doi' and 'modified') and the writer flushes once its pending changes reach the batch size
+	static int testReactomeBatchSize(int writeBatchSize, int commitChunkSize) {
+		return Math.max(writeBatchSize, 2 * commitChunkSize + 1);
+	}
+
+	/**
+	 * @param gkPathway GK Central pathway with its 'doi' attribute loaded
+	 * @param doi New DOI of the pathway
+	 * @return True if the journal has the pathway as committed to GK Central or it already has the new DOI there
+	 * @throws Exception Thrown if the 'doi' attribute can not be read
+	 */
+	public boolean isGkCentralUpToDate(GKInstance gkPathway, String doi) throws Exception {
+		return this.journal.isGkCentralCommitted(gkPathway.getDBID()) || doi.equals(gkPathway.getAttributeValue("doi"));
+	}
+
+	// The pathway's GK Central changes were queued on the GK Central writer
+	public void gkCentralQueued(long dbId, String doi) {
+		this.pendingGkCentralDOIs.put(dbId, doi);
+	}
+
+	/**
+	 * The pathway's Test Reactome changes, if it needed any, were queued on the Test Reactome writer, which ends the
+	 * pathway; the chunk is committed once it holds chunkSize pathways.
+	 *
+	 * @throws Exception Thrown if committing the chunk fails
+	 */
+	public void pathwayFinished(long dbId, String doi) throws Exception {
+		this.pendingTestReactomeDOIs.put(dbId, doi);
+		this.pendingPathwayCount++;
+		if (this.pendingPathwayCount >= this.chunkSize) {
+			commitChunk();
+		}
+	}
+
+	/**
+	 * Commits the pathways queued so far: GK Central first, then Test Reactome, journaling each, and opens the next
+	 * GK Central transaction.
+	 *
+	 * @throws Exception Thrown if a write, the commit or the journal fails
+	 */
+	public void commitChunk() throws Exception {
+		if (this.pendingPathwayCount == 0 && this.pendingGkCentralDOIs.isEmpty()) {
+			return;
+		}
+		try (Metrics.Timer phaseTimer = Metrics.phase(Metrics.COMMIT)) {
+			this.writerGK.flush();
+			try (Metrics.Timer timer = Metrics.roundTrip(this.dbaGkCentral, Metrics.TRANSACTION)) {
+				this.dbaGkCentral.commit();
+			}
+			this.journal.record(CheckpointJournal.Stage.GK, this.pendingGkCentralDOIs);
+
+			this.writerTR.flush();
+			this.journal.record(CheckpointJournal.Stage.TR, this.pendingTestReactomeDOIs);
+			try (Metrics.Timer timer = Metrics.roundTrip(this.dbaGkCentral, Metrics.TRANSACTION)) {
+				this.dbaGkCentral.startTransaction();
+			}
+		}
+
+		this.committedChunkCount++;
+		logger.info("Committed chunk " + this.committedChunkCount + " of " + this.pendingPathwayCount + " pathways");
+		this.pendingGkCentralDOIs.clear();
+		this.pendingTestReactomeDOIs.clear();
+		this.pendingPathwayCount = 0;
+	}
+}
@@ -0,0 +1,286 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The DOI changes decided by a plan run (see UpdateDOIs.planDOIs), to be written later by an apply run without
+ * selecting, matching or verifying the pathways again.
+ *
+ * Each entry holds a pathway's DB_ID and new DOI and, for Test Reactome and (if the pathway was found there) GK
+ * Central, the doi and display name it had when planned along with a checksum of its DOI-related columns.  Before
+ * writing anything, an apply run compares the checksums with the pathways as they are then, so a pathway changed
+ * since the plan was made is caught rather than overwritten.
+ *
+ * The file is JSON lines: a header with the release and databases, one line per entry and a trailer with the number
+ * of entries and a checksum of the entry lines, so a truncated or edited plan is rejected when read.
+ */
+public final class DOIChangePlan {
+
+	private static final String FORMAT = "doi-change-plan";
+	private static final int VERSION = 1;
+
+	private final int releaseNumber;
+	private final String testReactomeName;
+	private final String gkCentralName;
+	private final List<Entry> entries;
+
+	public DOIChangePlan(int releaseNumber, String testReactomeName, String gkCentralName, List<Entry> entries) {
+		this.releaseNumber = releaseNumber;
+		this.testReactomeName = testReactomeName;
+		this.gkCentralName = gkCentralName;
+		this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+	}
+
+	/**
+	 * A planned DOI change of one pathway.
+	 */
+	public static final class Entry {
+		private final long dbId;
+		private final String doi;
+		private final PathwayState testReactome;
+		private final PathwayState gkCentral;
+
+		/**
+		 * @param dbId DB_ID of the pathway (the same in both databases)
+		 * @param doi New DOI of the pathway
+		 * @param testReactome The pathway in Test Reactome when planned
+		 * @param gkCentral The pathway in GK Central when planned, or null if it was not found there
+		 */
+		public Entry(long dbId, String doi, PathwayState testReactome, PathwayState gkCentral) {
+			this.dbId = dbId;
+			this.doi = doi;
+			this.testReactome = testReactome;
+			this.gkCentral = gkCentral;
+		}
+
+		public long getDbId() {
+			return this.dbId;
+		}
+
+		public String getDoi() {
+			return this.doi;
+		}
+
+		public PathwayState getTestReactome() {
+			return this.testReactome;
+		}
+
+		// Null if the pathway was not found in GK Central
+		public PathwayState getGkCentral() {
+			return this.gkCentral;
+		}
+	}
+
+	/**
+	 * The doi and display name of a pathway in one database when the plan was made, and the checksum of its
+	 * DOI-related columns.
+	 */
+	public static final class PathwayState {
+		private final String doi;
+		private final String displayName;
+		private final String checksum;
+
+		public PathwayState(String doi, String displayName, String checksum) {
+			this.doi = doi;
+			this.displayName = displayName;
+			this.checksum = checksum;
+		}
+
+		public static PathwayState of(PathwayDOIRecord pathway) {
+			return new PathwayState(pathway.getDoi(), pathway.getDisplayName(), checksum(pathway));
+		}
+
+		// The doi before the change (may be null)
+		public String getDoi() {
+			return this.doi;
+		}
+
+		public String getDisplayName() {
+			return this.displayName;
+		}
+
+		public String getChecksum() {
+			return this.checksum;
+		}
+
+		// True if the pathway's DOI-related columns are as they were when planned
+		public boolean matches(PathwayDOIRecord pathway) {
+			return this.checksum.equals(checksum(pathway));
+		}
+	}
+
+	/**
+	 * @param pathway A pathway as read from the database
+	 * @return CRC32 (in hex) of the pathway's DB_ID, doi, display name, name and stable identifier
+	 */
+	public static String checksum(PathwayDOIRecord pathway) {
+		CRC32 crc = new CRC32();
+		for (String value : new String[] {
+			String.valueOf(pathway.getDbId()), pathway.getDoi(), pathway.getDisplayName(), pathway.getName(),
+			pathway.getStableId()
+		}) {
+			// A null is distinguished from an empty string by its length marker
+			String field = value == null ? "-1:" : value.length() + ":" + value;
+			crc.update(field.getBytes(StandardCharsets.UTF_8));
+		}
+		return Long.toHexString(crc.getValue());
+	}
+
+	public int getReleaseNumber() {
+		return this.releaseNumber;
+	}
+
+	public String getTestReactomeName() {
+		return this.testReactomeName;
+	}
+
+	public String getGkCentralName() {
+		return this.gkCentralName;
+	}
+
+	public List<Entry> getEntries() {
+		return this.entries;
+	}
+
+	// The new DOIs, in the order of the entries
+	public List<String> getDOIs() {
+		List<String> dois = new ArrayList<>();
+		for (Entry entry : this.entries) {
+			dois.add(entry.getDoi());
+		}
+		return dois;
+	}
+
+	/**
+	 * Writes the plan to a temporary file next to the given path and moves it into place, so a plan file is never
+	 * seen half-written.
+	 *
+	 * @param planPath File to write the plan to (replaced if it exists)
+	 * @throws IOException Thrown if the plan can not be written
+	 */
+	public void write(Path planPath) throws IOException {
+		Path absolutePlanPath = planPath.toAbsolutePath();
+		Path temporaryPlanPath = Files.createTempFile(
+			absolutePlanPath.getParent(), absolutePlanPath.getFileName().toString(), ".tmp");
+		try {
+			CRC32 crc = new CRC32();
+			try (BufferedWriter writer = Files.newBufferedWriter(temporaryPlanPath, StandardCharsets.UTF_8)) {
+				Map<String, Object> header = new LinkedHashMap<>();
+				header.put("format", FORMAT);
+				header.put("version", VERSION);
+				header.put("release", this.releaseNumber);
+				header.put("testReactome", this.testReactomeName);
+				header.put("gkCentral", this.gkCentralName);
+				writeLine(writer, JsonLines.toJson(header));
+
+				for (Entry entry : this.entries) {
+					String line = JsonLines.toJson(toFields(entry));
+					crc.update(line.getBytes(StandardCharsets.UTF_8));
+					writeLine(writer, line);
+				}
+
+				Map<String, Object> trailer = new LinkedHashMap<>();
+				trailer.put("entries", this.entries.size());
+				trailer.put("checksum", Long.toHexString(crc.getValue()));
+				writeLine(writer, JsonLines.toJson(trailer));
+			}
+			Files.move(temporaryPlanPath, absolutePlanPath, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporaryPlanPath);
+		}
+	}
+
+	/**
+	 * @param planPath File written by write
+	 * @return The plan
+	 * @throws IOException Thrown if the plan can not be read
+	 * @throws IllegalArgumentException Thrown if the file is not a complete plan, e.g. it was cut short or edited
+	 */
+	public static DOIChangePlan read(Path planPath) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(planPath, StandardCharsets.UTF_8)) {
+			String headerLine = reader.readLine();
+			if (headerLine == null) {
+				throw new IllegalArgumentException(planPath + " is empty");
+			}
+			Map<String, String> header = JsonLines.parse(headerLine);
+			if (!FORMAT.equals(header.get("format")) || !String.valueOf(VERSION).equals(header.get("version"))) {
+				throw new IllegalArgumentException(planPath + " is not a version " + VERSION + " DOI change plan");
+			}
+
+			List<Entry> entries = new ArrayList<>();
+			CRC32 crc = new CRC32();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Map<String, String> fields = JsonLines.parse(line);
+				if (fields.containsKey("entries")) {
+					checkTrailer(planPath, fields, entries.size(), Long.toHexString(crc.getValue()));
+					if (reader.readLine() != null) {
+						throw new IllegalArgumentException(planPath + " has lines after its trailer");
+					}
+					return new DOIChangePlan(Integer.parseInt(header.get("release")), header.get("testReactome"),
+						header.get("gkCentral"), entries);
+				}
+				crc.update(line.getBytes(StandardCharsets.UTF_8));
+				entries.add(fromFields(fields));
+			}
+			throw new IllegalArgumentException(planPath + " has no trailer; it was not completely written");
+		}
+	}
+
+	private static void checkTrailer(Path planPath, Map<String, String> trailer, int entryCount, String checksum) {
+		if (!String.valueOf(entryCount).equals(trailer.get("entries"))) {
+			throw new IllegalArgumentException(planPath + " has " + entryCount + " entries; its trailer lists " +
+				trailer.get("entries"));
+		}
+		if (!checksum.equals(trailer.get("checksum"))) {
+			throw new IllegalArgumentException(planPath + " does not match its checksum; it was changed after it " +
+				"was written");
+		}
+	}
+
+	private static Map<String, Object> toFields(Entry entry) {
+		Map<String, Object> fields = new LinkedHashMap<>();
+		fields.put("dbId", entry.getDbId());
+		fields.put("doi", entry.getDoi());
+		putState(fields, "tr", entry.getTestReactome());
+		if (entry.getGkCentral() != null) {
+			putState(fields, "gk", entry.getGkCentral());
+		}
+		return fields;
+	}
+
+	private static void putState(Map<String, Object> fields, String prefix, PathwayState state) {
+		fields.put(prefix + "Doi", state.getDoi());
+		fields.put(prefix + "DisplayName", state.getDisplayName());
+		fields.put(prefix + "Checksum", state.getChecksum());
+	}
+
+	private static Entry fromFields(Map<String, String> fields) {
+		String dbId = fields.get("dbId");
+		if (dbId == null || fields.get("doi") == null || fields.get("trChecksum") == null) {
+			throw new IllegalArgumentException("Incomplete DOI change plan entry: " + JsonLines.toJson(fields));
+		}
+		PathwayState gkCentral = fields.containsKey("gkChecksum") ?
+			new PathwayState(fields.get("gkDoi"), fields.get("gkDisplayName"), fields.get("gkChecksum")) :
+			null;
+		return new Entry(Long.parseLong(dbId), fields.get("doi"),
+			new PathwayState(fields.get("trDoi"), fields.get("trDisplayName"), fields.get("trChecksum")), gkCentral);
+	}
+
+	private static void writeLine(BufferedWriter writer, String line) throws IOException {
+		writer.write(line);
+		writer.newLine();
+	}
+}
@@ -0,0 +1,298 @@
+package org.reactome.release.updateDOIs;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.InvalidAttributeException;
+import org.gk.schema.SchemaClass;
+
+/**
+ * Compares the Pathways of Test Reactome and GK Central without loading them, Merkle-style: the DB_ID space is split
+ * into ranges, and each database computes a digest of (DB_ID, display name, doi) for every range in one aggregate
+ * query.  Only the ranges whose digests differ are split further and digested again, until they are narrow enough to
+ * compare row by row.  Only Test Reactome's DB_ID range is digested: the GK Central pathways outside it (created
+ * since the release) are counted in one query instead.  Databases that agree cost two queries each: Test Reactome's
+ * DB_ID bounds or GK Central's count outside them, and one digest query.
+ *
+ * A pathway in both databases with a different doi is reported as drift.  Pathways only in one of the databases
+ * (e.g. created in GK Central since the release) and renamed pathways are only counted, as they are expected.
+ *
+ * The digests are computed on the server from the column values, so both databases need the same character set.
+ */
+public class DOIConsistencyScan {
+
+	private static final Logger logger = LogManager.getLogger();
+	public static final int DEFAULT_FANOUT = 64;
+	public static final long DEFAULT_LEAF_WIDTH = 1000;
+
+	private final MySQLAdaptor dbaTestReactome;
+	private final MySQLAdaptor dbaGkCentral;
+	private final String testReactomeName;
+	private final String gkCentralName;
+	private final int fanout;
+	private final long leafWidth;
+	private int digestQueryCount;
+	private int leafRangeCount;
+	private int onlyInOneDatabaseCount;
+	private long outsideTestReactomeCount;
+	private int renamedCount;
+
+	/**
+	 * @param fanout Number of ranges each differing range is split into
+	 * @param leafWidth Width (in DB_IDs) up to which a differing range is compared row by row instead of split
+	 */
+	public DOIConsistencyScan(MySQLAdaptor dbaTestReactome, MySQLAdaptor dbaGkCentral, int fanout, long leafWidth) {
+		if (fanout < 2) {
+			throw new IllegalArgumentException("Fanout must be at least 2: " + fanout);
+		}
+		if (leafWidth < 1) {
+			throw new IllegalArgumentException("Leaf width must be positive: " + leafWidth);
+		}
+		this.dbaTestReactome = dbaTestReactome;
+		this.dbaGkCentral = dbaGkCentral;
+		this.testReactomeName = dbaTestReactome.getDBName();
+		this.gkCentralName = dbaGkCentral.getDBName();
+		this.fanout = fanout;
+		this.leafWidth = leafWidth;
+	}
+
+	// Compares pathways read elsewhere, e.g. from a snapshot
+	private DOIConsistencyScan(String testReactomeName, String gkCentralName) {
+		this.dbaTestReactome = null;
+		this.dbaGkCentral = null;
+		this.testReactomeName = testReactomeName;
+		this.gkCentralName = gkCentralName;
+		this.fanout = DEFAULT_FANOUT;
+		this.leafWidth = DEFAULT_LEAF_WIDTH;
+	}
+
+	/**
+	 * Compares the doi of every Pathway in both databases of a snapshot, without digests as the snapshot is local.
+	 *
+	 * @return Messages for the pathways whose doi differs between the databases (empty if none does)
+	 */
+	public static List<String> compare(PathwaySnapshot snapshot) {
+		DOIConsistencyScan scan = new DOIConsistencyScan(
+			snapshot.getTestReactome().getDatabaseName(), snapshot.getGkCentral().getDatabaseName());
+		List<String> driftMessages = new ArrayList<>();
+		scan.comparePathways(snapshot.getTestReactome().getRecordsByDbId(), snapshot.getGkCentral().getRecordsByDbId(),
+			driftMessages);
+		logger.info("Consistency check of the snapshot: " + driftMessages.size() + " pathways with a different doi, " +
+			scan.renamedCount + " renamed and " + scan.onlyInOneDatabaseCount + " only in one database");
+		return driftMessages;
+	}
+
+	/**
+	 * Aggregate of the pathways in a range: their number, and the XOR and sum of the CRC32 of each pathway's DB_ID,
+	 * display name and doi.
+	 */
+	static final class Digest {
+		private final long count;
+		private final long xor;
+		private final long sum;
+
+		Digest(long count, long xor, long sum) {
+			this.count = count;
+			this.xor = xor;
+			this.sum = sum;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Digest)) {
+				return false;
+			}
+			Digest digest = (Digest) other;
+			return this.count == digest.count && this.xor == digest.xor && this.sum == digest.sum;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.count, this.xor, this.sum);
+		}
+	}
+
+	/**
+	 * @return Messages for the pathways whose doi differs between the databases (empty if none does)
+	 * @throws Exception Thrown if a query fails
+	 */
+	public List<String> run() throws Exception {
+		List<String> driftMessages = new ArrayList<>();
+		long[] trBounds = getDbIdBounds(this.dbaTestReactome);
+		if (trBounds != null) {
+			compareRange(trBounds[0], trBounds[1] + 1, driftMessages);
+		}
+		this.outsideTestReactomeCount = countPathwaysOutside(this.dbaGkCentral, trBounds);
+		logger.info("Consistency scan: " + this.digestQueryCount + " digest queries, " + this.leafRangeCount +
+			" ranges compared row by row, " + driftMessages.size() + " pathways with a different doi, " +
+			this.renamedCount + " renamed, " + this.onlyInOneDatabaseCount + " only in one database and " +
+			this.outsideTestReactomeCount + " in " + this.gkCentralName + " outside the DB_IDs of " +
+			this.testReactomeName);
+		return driftMessages;
+	}
+
+	int getRenamedCount() {
+		return this.renamedCount;
+	}
+
+	int getOnlyInOneDatabaseCount() {
+		return this.onlyInOneDatabaseCount;
+	}
+
+	long getOutsideTestReactomeCount() {
+		return this.outsideTestReactomeCount;
+	}
+
+	int getDigestQueryCount() {
+		return this.digestQueryCount;
+	}
+
+	int getLeafRangeCount() {
+		return this.leafRangeCount;
+	}
+
+	// Splits [from, to) into up to fanout ranges and digs into those whose digests differ
+	private void compareRange(long from, long to, List<String> driftMessages) throws Exception {
+		if (to - from <= this.leafWidth) {
+			compareRows(from, to, driftMessages);
+			return;
+		}
+		long width = ceilDiv(to - from, this.fanout);
+		Map<Long, Digest> trDigests = getDigests(this.dbaTestReactome, from, to, width);
+		Map<Long, Digest> gkDigests = getDigests(this.dbaGkCentral, from, to, width);
+		this.digestQueryCount += 2;
+
+		TreeSet<Long> buckets = new TreeSet<>(trDigests.keySet());
+		buckets.addAll(gkDigests.keySet());
+		for (long bucket : buckets) {
+			if (!Objects.equals(trDigests.get(bucket), gkDigests.get(bucket))) {
+				long bucketFrom = from + bucket * width;
+				compareRange(bucketFrom, Math.min(bucketFrom + width, to), driftMessages);
+			}
+		}
+	}
+
+	private void compareRows(long from, long to, List<String> driftMessages) throws Exception {
+		this.leafRangeCount++;
+		Map<Long, PathwayDOIRecord> trPathways = fetchRange(this.dbaTestReactome, from, to);
+		Map<Long, PathwayDOIRecord> gkPathways = fetchRange(this.dbaGkCentral, from, to);
+		comparePathways(trPathways, gkPathways, driftMessages);
+	}
+
+	// Compares the pathways of a range in both databases by DB_ID
+	void comparePathways(Map<Long, PathwayDOIRecord> trPathways, Map<Long, PathwayDOIRecord> gkPathways,
+		List<String> driftMessages) {
+
+		TreeSet<Long> dbIds = new TreeSet<>(trPathways.keySet());
+		dbIds.addAll(gkPathways.keySet());
+		for (long dbId : dbIds) {
+			PathwayDOIRecord trPathway = trPathways.get(dbId);
+			PathwayDOIRecord gkPathway = gkPathways.get(dbId);
+			if (trPathway == null || gkPathway == null) {
+				this.onlyInOneDatabaseCount++;
+				logger.debug("Pathway " + (trPathway != null ? trPathway + " is only in " + this.testReactomeName :
+					gkPathway + " is only in " + this.gkCentralName));
+			} else if (!Objects.equals(trPathway.getDoi(), gkPathway.getDoi())) {
+				driftMessages.add(String.format("Pathway %s has '%s' as its doi in %s database and '%s' in %s database",
+					trPathway, trPathway.getDoi(), this.testReactomeName, gkPathway.getDoi(), this.gkCentralName));
+			} else if (!Objects.equals(trPathway.getDisplayName(), gkPathway.getDisplayName())) {
+				this.renamedCount++;
+				logger.debug("Pathway " + trPathway + " is named '" + gkPathway.getDisplayName() + "' in " +
+					this.gkCentralName);
+			}
+		}
+	}
+
+	// Smallest and largest Pathway DB_ID, or null if there are no Pathways
+	long[] getDbIdBounds(MySQLAdaptor dba) throws Exception {
+		String sql = "SELECT MIN(p.DB_ID), MAX(p.DB_ID) FROM " + getDOITable(dba) + " p";
+		try (PreparedStatement statement = dba.getConnection().prepareStatement(sql);
+			Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT);
+			ResultSet resultSet = statement.executeQuery()) {
+			resultSet.next();
+			long min = resultSet.getLong(1);
+			return resultSet.wasNull() ? null : new long[] {min, resultSet.getLong(2)};
+		}
+	}
+
+	// Number of Pathways outside [bounds[0], bounds[1]], or of all Pathways if bounds is null
+	long countPathwaysOutside(MySQLAdaptor dba, long[] bounds) throws Exception {
+		String sql = "SELECT COUNT(*) FROM " + getDOITable(dba) + " p" +
+			(bounds != null ? " WHERE p.DB_ID < ? OR p.DB_ID > ?" : "");
+		try (PreparedStatement statement = dba.getConnection().prepareStatement(sql)) {
+			if (bounds != null) {
+				statement.setLong(1, bounds[0]);
+				statement.setLong(2, bounds[1]);
+			}
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT);
+				ResultSet resultSet = statement.executeQuery()) {
+				resultSet.next();
+				return resultSet.getLong(1);
+			}
+		}
+	}
+
+	// Digests of [from, to) in buckets of the given width, by bucket number (empty buckets are left out)
+	Map<Long, Digest> getDigests(MySQLAdaptor dba, long from, long to, long width) throws Exception {
+		String rowChecksum = "CRC32(CONCAT_WS('#', p.DB_ID, ISNULL(d._displayName), d._displayName, ISNULL(p.doi), p.doi))";
+		String sql = "SELECT (p.DB_ID - ?) DIV ? AS bucket, COUNT(*), BIT_XOR(" + rowChecksum + "), SUM(" + rowChecksum + ")" +
+			" FROM " + getDOITable(dba) + " p" +
+			" JOIN DatabaseObject d ON d.DB_ID = p.DB_ID" +
+			" WHERE p.DB_ID >= ? AND p.DB_ID < ?" +
+			" GROUP BY bucket";
+
+		Map<Long, Digest> digests = new HashMap<>();
+		try (PreparedStatement statement = dba.getConnection().prepareStatement(sql)) {
+			statement.setLong(1, from);
+			statement.setLong(2, width);
+			statement.setLong(3, from);
+			statement.setLong(4, to);
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT);
+				ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					digests.put(resultSet.getLong(1),
+						new Digest(resultSet.getLong(2), resultSet.getLong(3), resultSet.getLong(4)));
+				}
+			}
+		}
+		return digests;
+	}
+
+	Map<Long, PathwayDOIRecord> fetchRange(MySQLAdaptor dba, long from, long to) throws Exception {
+		Map<Long, PathwayDOIRecord> pathways = new TreeMap<>();
+		String sql = PathwayDOIRecord.selectSql(dba, "p.DB_ID >= ? AND p.DB_ID < ?");
+		try (PreparedStatement statement = dba.getConnection().prepareStatement(sql)) {
+			statement.setLong(1, from);
+			statement.setLong(2, to);
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT);
+				ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					PathwayDOIRecord pathway = PathwayDOIRecord.fromRow(resultSet);
+					pathways.put(pathway.getDbId(), pathway);
+				}
+			}
+		}
+		Metrics.rowsRead(dba, pathways.size());
+		return pathways;
+	}
+
+	private static String getDOITable(MySQLAdaptor dba) throws InvalidAttributeException {
+		SchemaClass pathwayClass = dba.getSchema().getClassByName(ReactomeJavaConstants.Pathway);
+		return pathwayClass.getAttribute(ReactomeJavaConstants.doi).getOrigin().getName();
+	}
+
+	static long ceilDiv(long dividend, long divisor) {
+		return (dividend + divisor - 1) / divisor;
+	}
+}
@@ -0,0 +1,143 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes the list of DOIs that can be updated (produced in test mode) through one buffered UTF-8 writer for the
+ * whole run.  Lines go to a temporary file next to the report, which is only moved into place when the run commits,
+ * so the report is never seen half-written.
+ *
+ * Optionally a structured variant is written alongside, with one JSON object (doi, displayName, dbId) per line, in
+ * a file with the same name but a '.jsonl' extension.
+ */
+public class DOIReportWriter implements Closeable {
+
+	private final Path reportPath;
+	private final Path temporaryReportPath;
+	private final BufferedWriter reportWriter;
+	private final Path structuredReportPath;
+	private final Path temporaryStructuredReportPath;
+	private final BufferedWriter structuredReportWriter;
+	private int lineCount;
+	private boolean committed;
+	private boolean closed;
+
+	public DOIReportWriter(Path reportPath, boolean writeStructuredReport) throws IOException {
+		this.reportPath = reportPath.toAbsolutePath();
+		this.temporaryReportPath = createTemporaryFile(this.reportPath);
+		this.reportWriter = Files.newBufferedWriter(this.temporaryReportPath, StandardCharsets.UTF_8);
+
+		if (writeStructuredReport) {
+			this.structuredReportPath = getStructuredReportPath(this.reportPath);
+			this.temporaryStructuredReportPath = createTemporaryFile(this.structuredReportPath);
+			this.structuredReportWriter =
+				Files.newBufferedWriter(this.temporaryStructuredReportPath, StandardCharsets.UTF_8);
+		} else {
+			this.structuredReportPath = null;
+			this.temporaryStructuredReportPath = null;
+			this.structuredReportWriter = null;
+		}
+	}
+
+	// The structured variant of a report: 'doisToBeUpdated-v70.txt' becomes 'doisToBeUpdated-v70.jsonl'
+	public static Path getStructuredReportPath(Path reportPath) {
+		String fileName = reportPath.getFileName().toString();
+		int extensionIndex = fileName.lastIndexOf('.');
+		String baseName = extensionIndex > 0 ? fileName.substring(0, extensionIndex) : fileName;
+		return reportPath.resolveSibling(baseName + ".jsonl");
+	}
+
+	/**
+	 * Adds a DOI that can be updated to the report.
+	 *
+	 * @param doi New DOI of the pathway
+	 * @param displayName Name of the pathway
+	 * @param dbId DB_ID of the pathway
+	 * @throws IOException Thrown if writing to the temporary file fails
+	 */
+	public void write(String doi, String displayName, long dbId) throws IOException {
+		this.reportWriter.write(doi + "," + displayName);
+		this.reportWriter.newLine();
+
+		if (this.structuredReportWriter != null) {
+			Map<String, Object> fields = new LinkedHashMap<>();
+			fields.put("doi", doi);
+			fields.put("displayName", displayName);
+			fields.put("dbId", dbId);
+			this.structuredReportWriter.write(JsonLines.toJson(fields));
+			this.structuredReportWriter.newLine();
+		}
+		this.lineCount++;
+	}
+
+	public int getLineCount() {
+		return this.lineCount;
+	}
+
+	// Pushes the buffered lines to the temporary files, e.g. when the databases commit or roll back
+	public void flush() throws IOException {
+		this.reportWriter.flush();
+		if (this.structuredReportWriter != null) {
+			this.structuredReportWriter.flush();
+		}
+	}
+
+	/**
+	 * Closes the writers and atomically replaces the report (and structured report) with what was written.  Without a
+	 * structured report, one left by an earlier run is deleted, so it is never read as this run's.
+	 *
+	 * @throws IOException Thrown if the temporary files can not be moved into place
+	 */
+	public void commit() throws IOException {
+		closeWriters();
+		moveIntoPlace(this.temporaryReportPath, this.reportPath);
+		if (this.structuredReportPath != null) {
+			moveIntoPlace(this.temporaryStructuredReportPath, this.structuredReportPath);
+		} else {
+			Files.deleteIfExists(getStructuredReportPath(this.reportPath));
+		}
+		this.committed = true;
+	}
+
+	// Discards what was written unless the report was committed
+	@Override
+	public void close() throws IOException {
+		closeWriters();
+		if (!this.committed) {
+			Files.deleteIfExists(this.temporaryReportPath);
+			if (this.temporaryStructuredReportPath != null) {
+				Files.deleteIfExists(this.temporaryStructuredReportPath);
+			}
+		}
+	}
+
+	private void closeWriters() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		try {
+			this.reportWriter.close();
+		} finally {
+			if (this.structuredReportWriter != null) {
+				this.structuredReportWriter.close();
+			}
+		}
+	}
+
+	private static Path createTemporaryFile(Path path) throws IOException {
+		return Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+	}
+
+	private static void moveIntoPlace(Path temporaryPath, Path path) throws IOException {
+		Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
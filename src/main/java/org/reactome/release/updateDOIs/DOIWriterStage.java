@@ -0,0 +1,143 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+
+/**
+ * The single writer stage of the instance-by-instance update: for each resolved pathway, updates its 'doi' and
+ * 'modified' attributes in both databases (queued on the batch writers) or, in test mode, records it in the report.
+ *
+ * In delta mode, a GK Central pathway that already has the new DOI is left alone, so that reruns neither rewrite the
+ * DOI nor append another 'modified' InstanceEdit there.  Test Reactome pathways are only candidates while they do not
+ * have a Reactome DOI, so they are always written.
+ */
+class DOIWriterStage implements ResolverPipeline.ResolutionHandler {
+
+	private static final Logger logger = LogManager.getLogger();
+	// Attribute changes written per pathway and database: 'doi' and 'modified'
+	private static final int WRITES_PER_PATHWAY = 2;
+
+	private final GKInstance instanceEditTR;
+	private final GKInstance instanceEditGK;
+	private final boolean testMode;
+	private final boolean deltaMode;
+	private final DOIReportWriter testReport;
+	private final BatchAttributeWriter writerTR;
+	private final BatchAttributeWriter writerGK;
+	private final ChunkedCommitter committer;
+	private final List<String> updated;
+	private final List<String> notUpdated;
+	private final List<String> assignedDOIs;
+	private int upToDateGkCentralPathways;
+
+	/**
+	 * @param committer Commits the changes in chunks, or null if they are committed by the caller at the end
+	 * @param updated Receives the DOIs listed in the report
+	 * @param notUpdated Receives "doi:display name" of the DOIs not listed in the report
+	 * @param assignedDOIs Receives the DOIs assigned (or, in test mode, that would be assigned)
+	 */
+	DOIWriterStage(GKInstance instanceEditTR, GKInstance instanceEditGK, boolean testMode, boolean deltaMode,
+		DOIReportWriter testReport, BatchAttributeWriter writerTR, BatchAttributeWriter writerGK,
+		ChunkedCommitter committer, List<String> updated, List<String> notUpdated, List<String> assignedDOIs) {
+		this.instanceEditTR = instanceEditTR;
+		this.instanceEditGK = instanceEditGK;
+		this.testMode = testMode;
+		this.deltaMode = deltaMode;
+		this.testReport = testReport;
+		this.writerTR = writerTR;
+		this.writerGK = writerGK;
+		this.committer = committer;
+		this.updated = updated;
+		this.notUpdated = notUpdated;
+		this.assignedDOIs = assignedDOIs;
+	}
+
+	@Override
+	public void handle(PathwayResolution resolution) throws Exception {
+		GKInstance trDOI = resolution.getTrPathway();
+		String nameFromDb = resolution.getName();
+		String updatedDoi = resolution.getDoi();
+
+		// Used to verify that report contents are as expected, based on provided list from curators
+		if (resolution.isListedInReport())
+		{
+			this.updated.add(updatedDoi);
+		} else {
+			String doiWithName = updatedDoi + ":" + nameFromDb;
+			this.notUpdated.add(doiWithName);
+			if (!this.testMode) {
+				AuditJournal.record(AuditJournal.Decision.NOT_IN_REPORT, updatedDoi, trDOI.getDBID(), nameFromDb);
+				return;
+			}
+		}
+
+		// Updates the DOI of the GKCentral instance with the same DB_ID
+		GKInstance gkDOI = resolution.getGkPathway();
+		if (gkDOI != null)
+		{
+			if (!resolution.isVerified())
+			{
+				return;
+			}
+			if (this.deltaMode && resolution.isGkCentralUpToDate()) {
+				this.upToDateGkCentralPathways++;
+				logger.debug("GK Central already has DOI {} for {}", updatedDoi, nameFromDb);
+			} else if (this.committer != null && this.committer.isGkCentralUpToDate(gkDOI, updatedDoi)) {
+				// Committed by a previous run that failed before updating Test Reactome
+				logger.info("GK Central already has DOI " + updatedDoi + " for " + nameFromDb);
+			} else {
+				updateInstance(gkDOI, this.instanceEditGK, updatedDoi, this.writerGK);
+				if (this.committer != null && !this.testMode) {
+					this.committer.gkCentralQueued(gkDOI.getDBID(), updatedDoi);
+				}
+			}
+			if (!this.testMode) {
+				logger.info("Updated DOI: {} for {}", updatedDoi, nameFromDb);
+			} else {
+				logger.info("TEST DOI: {},{}", updatedDoi, nameFromDb);
+				this.testReport.write(updatedDoi, nameFromDb, trDOI.getDBID());
+			}
+		} else {
+			logger.error("Could not find attribute in gk_central");
+			AuditJournal.record(AuditJournal.Decision.MISSING_IN_GK_CENTRAL, updatedDoi, trDOI.getDBID(), nameFromDb);
+		}
+
+		updateInstance(trDOI, this.instanceEditTR, updatedDoi, this.writerTR);
+		this.assignedDOIs.add(updatedDoi);
+		AuditJournal.record(this.testMode ? AuditJournal.Decision.WOULD_UPDATE : AuditJournal.Decision.UPDATED,
+			updatedDoi, trDOI.getDBID(), nameFromDb);
+		if (this.committer != null && !this.testMode) {
+			this.committer.pathwayFinished(trDOI.getDBID(), updatedDoi);
+		}
+	}
+
+	// Logs how many attribute writes delta mode avoided
+	void logDeltaSummary() {
+		if (!this.deltaMode) {
+			return;
+		}
+		logger.info("Delta mode avoided " + this.upToDateGkCentralPathways * WRITES_PER_PATHWAY + " attribute writes: " +
+			this.upToDateGkCentralPathways + " GK Central pathways already had their DOI");
+	}
+
+	int getUpToDateGkCentralPathways() {
+		return this.upToDateGkCentralPathways;
+	}
+
+	// Sets the new DOI and appends the InstanceEdit to 'modified', keeping track of when changes happened for each
+	// instance, and queues both to be written outside of test mode
+	private void updateInstance(GKInstance pathway, GKInstance instanceEdit, String doi, BatchAttributeWriter writer)
+		throws Exception {
+		pathway.getAttributeValuesList(ReactomeJavaConstants.modified);
+		pathway.addAttributeValue(ReactomeJavaConstants.modified, instanceEdit);
+		pathway.setAttributeValue("doi", doi);
+		if (!this.testMode) {
+			writer.queue(pathway, ReactomeJavaConstants.modified);
+			writer.queue(pathway, "doi");
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.reactome.release.updateDOIs;
+
+/**
+ * A line of UpdateDOIs.report: a DOI expected to be updated ("&lt;prefix&gt;/&lt;stable id&gt;.&lt;version&gt;") and the
+ * display name of its pathway.
+ *
+ * Only the two strings are kept; the stable id and its version are substrings of the DOI taken when asked for, so a
+ * large report costs little more than its text.
+ */
+public final class ExpectedDOI {
+
+	private final String doi;
+	private final String displayName;
+	// Positions in the DOI of the first character of the stable id and of the period before the version
+	private final int stableIdStart;
+	private final int versionSeparator;
+
+	private ExpectedDOI(String doi, String displayName, int stableIdStart, int versionSeparator) {
+		this.doi = doi;
+		this.displayName = displayName;
+		this.stableIdStart = stableIdStart;
+		this.versionSeparator = versionSeparator;
+	}
+
+	/**
+	 * @param doi DOI expected to be updated, e.g. 10.3180/R-HSA-123.1
+	 * @param displayName Display name of its pathway
+	 * @param reactomeDOIPrefix Prefix every Reactome DOI starts with (i.e. 10.3180)
+	 * @return The expected DOI
+	 * @throws IllegalArgumentException Thrown if the DOI is not the prefix followed by a stable id and a numeric
+	 * version, or the display name is empty
+	 */
+	public static ExpectedDOI of(String doi, String displayName, String reactomeDOIPrefix) {
+		String prefix = reactomeDOIPrefix + "/";
+		if (!doi.startsWith(prefix)) {
+			throw new IllegalArgumentException("DOI '" + doi + "' does not start with " + prefix);
+		}
+		int versionSeparator = doi.lastIndexOf('.');
+		if (versionSeparator <= prefix.length()) {
+			throw new IllegalArgumentException("DOI '" + doi + "' has no stable id followed by a version");
+		}
+		if (versionSeparator == doi.length() - 1 || !isDigits(doi, versionSeparator + 1)) {
+			throw new IllegalArgumentException("DOI '" + doi + "' does not end with a numeric version");
+		}
+		if (displayName.isEmpty()) {
+			throw new IllegalArgumentException("DOI '" + doi + "' has no display name");
+		}
+		return new ExpectedDOI(doi, displayName, prefix.length(), versionSeparator);
+	}
+
+	/**
+	 * @param line "doi,display name" (the display name may itself contain commas)
+	 * @param reactomeDOIPrefix Prefix every Reactome DOI starts with (i.e. 10.3180)
+	 * @return The expected DOI
+	 * @throws IllegalArgumentException Thrown if the line has no comma or either part is invalid (see of)
+	 */
+	public static ExpectedDOI parse(String line, String reactomeDOIPrefix) {
+		int comma = line.indexOf(',');
+		if (comma < 0) {
+			throw new IllegalArgumentException("No comma between the DOI and the display name");
+		}
+		return of(line.substring(0, comma).trim(), line.substring(comma + 1), reactomeDOIPrefix);
+	}
+
+	public String getDoi() {
+		return this.doi;
+	}
+
+	public String getDisplayName() {
+		return this.displayName;
+	}
+
+	// e.g. R-HSA-123 for 10.3180/R-HSA-123.1
+	public String getStableId() {
+		return this.doi.substring(this.stableIdStart, this.versionSeparator);
+	}
+
+	// e.g. 1 for 10.3180/R-HSA-123.1
+	public String getStableIdVersion() {
+		return this.doi.substring(this.versionSeparator + 1);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof ExpectedDOI)) {
+			return false;
+		}
+		ExpectedDOI expectedDOI = (ExpectedDOI) other;
+		return this.doi.equals(expectedDOI.doi) && this.displayName.equals(expectedDOI.displayName);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * this.doi.hashCode() + this.displayName.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.doi + "," + this.displayName;
+	}
+
+	private static boolean isDigits(String text, int start) {
+		for (int i = start; i < text.length(); i++) {
+			if (!Character.isDigit(text.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
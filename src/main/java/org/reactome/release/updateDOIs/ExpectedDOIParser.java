@@ -0,0 +1,103 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads UpdateDOIs.report one line at a time into ExpectedDOI records.  A malformed line is reported with its line
+ * number and skipped rather than ending the parse; blank lines are ignored.
+ */
+public class ExpectedDOIParser {
+
+	private static final Logger warningsLog = LogManager.getLogger("warningsLog");
+	// Only the first of these are kept for getErrors (all of them are logged)
+	private static final int MAX_KEPT_ERRORS = 100;
+
+	private final String reactomeDOIPrefix;
+	private final List<String> errors = new ArrayList<>();
+	private int invalidLineCount;
+
+	public ExpectedDOIParser(String reactomeDOIPrefix) {
+		this.reactomeDOIPrefix = reactomeDOIPrefix;
+	}
+
+	/**
+	 * Reads the report into a map of DOI to expected DOI, in the order of the report.  A DOI listed more than once
+	 * keeps its last line, as before.
+	 *
+	 * @param report Path of the report
+	 * @return The valid lines of the report, by DOI
+	 * @throws IOException Thrown if the report can not be read
+	 */
+	public Map<String, ExpectedDOI> read(Path report) throws IOException {
+		Map<String, ExpectedDOI> expectedDOIs = new LinkedHashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(report, StandardCharsets.UTF_8)) {
+			parse(reader, report.getFileName().toString(), expectedDOI -> {
+				if (expectedDOIs.put(expectedDOI.getDoi(), expectedDOI) != null) {
+					warningsLog.warn(report.getFileName() + ": " + expectedDOI.getDoi() + " is listed more than " +
+						"once; using '" + expectedDOI.getDisplayName() + "'");
+				}
+			});
+		}
+		return expectedDOIs;
+	}
+
+	/**
+	 * Passes each valid line of the report to the consumer as it is read, without holding the report in memory.
+	 *
+	 * @param reader Reader of the report
+	 * @param source Name of the report used in the error messages
+	 * @param consumer Receives the expected DOI of each valid line
+	 * @throws IOException Thrown if the report can not be read
+	 */
+	public void parse(BufferedReader reader, String source, Consumer<ExpectedDOI> consumer) throws IOException {
+		String line;
+		int lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			lineNumber++;
+			if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+				line = line.substring(1);
+			}
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			try {
+				consumer.accept(ExpectedDOI.parse(line, this.reactomeDOIPrefix));
+			} catch (IllegalArgumentException e) {
+				invalidLine(source + " line " + lineNumber + ": " + e.getMessage() + " -- skipping '" + line + "'");
+			}
+		}
+		if (this.invalidLineCount > 0) {
+			warningsLog.warn(source + ": skipped " + this.invalidLineCount + " invalid lines");
+		}
+	}
+
+	public int getInvalidLineCount() {
+		return this.invalidLineCount;
+	}
+
+	// Messages for the first invalid lines, with their line numbers
+	public List<String> getErrors() {
+		return Collections.unmodifiableList(this.errors);
+	}
+
+	private void invalidLine(String message) {
+		this.invalidLineCount++;
+		if (this.errors.size() < MAX_KEPT_ERRORS) {
+			this.errors.add(message);
+		}
+		warningsLog.warn(message);
+	}
+}
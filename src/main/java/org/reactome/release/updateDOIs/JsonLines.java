@@ -0,0 +1,195 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Minimal reading and writing of flat JSON objects (string, number, boolean and null values) as used by the
+ * line-oriented JSON files this module produces.  Nested objects and arrays are not supported.
+ */
+public final class JsonLines {
+
+	private JsonLines() {}
+
+	/**
+	 * @param fields Field names and values, written in iteration order; Numbers and Booleans are written as JSON
+	 * numbers and booleans, null as null and anything else as a string
+	 * @return The fields as a single line JSON object
+	 */
+	public static String toJson(Map<String, ?> fields) {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, ?> field : fields.entrySet()) {
+			if (json.length() > 1) {
+				json.append(',');
+			}
+			appendString(json, field.getKey());
+			json.append(':');
+			Object value = field.getValue();
+			if (value == null) {
+				json.append("null");
+			} else if (value instanceof Number || value instanceof Boolean) {
+				json.append(value);
+			} else {
+				appendString(json, value.toString());
+			}
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * @param line A flat JSON object
+	 * @return Field names and values in order of appearance; values are returned as their text (null for null)
+	 * @throws IllegalArgumentException Thrown if the line is not a flat JSON object
+	 */
+	public static Map<String, String> parse(String line) {
+		Map<String, String> fields = new LinkedHashMap<>();
+		Parser parser = new Parser(line);
+		parser.expect('{');
+		if (!parser.consumeIf('}')) {
+			do {
+				String name = parser.readString();
+				parser.expect(':');
+				fields.put(name, parser.readValue());
+			} while (parser.consumeIf(','));
+			parser.expect('}');
+		}
+		parser.expectEnd();
+		return fields;
+	}
+
+	private static void appendString(StringBuilder json, String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+			switch (character) {
+				case '"':
+					json.append("\\\"");
+					break;
+				case '\\':
+					json.append("\\\\");
+					break;
+				case '\n':
+					json.append("\\n");
+					break;
+				case '\r':
+					json.append("\\r");
+					break;
+				case '\t':
+					json.append("\\t");
+					break;
+				default:
+					if (character < 0x20) {
+						json.append(String.format("\\u%04x", (int) character));
+					} else {
+						json.append(character);
+					}
+			}
+		}
+		json.append('"');
+	}
+
+	private static final class Parser {
+		private final String text;
+		private int position;
+
+		Parser(String text) {
+			this.text = text;
+		}
+
+		void expect(char expected) {
+			skipWhitespace();
+			if (this.position >= this.text.length() || this.text.charAt(this.position) != expected) {
+				throw error("Expected '" + expected + "'");
+			}
+			this.position++;
+		}
+
+		boolean consumeIf(char expected) {
+			skipWhitespace();
+			if (this.position < this.text.length() && this.text.charAt(this.position) == expected) {
+				this.position++;
+				return true;
+			}
+			return false;
+		}
+
+		void expectEnd() {
+			skipWhitespace();
+			if (this.position != this.text.length()) {
+				throw error("Unexpected trailing characters");
+			}
+		}
+
+		String readValue() {
+			skipWhitespace();
+			if (this.position < this.text.length() && this.text.charAt(this.position) == '"') {
+				return readString();
+			}
+			int start = this.position;
+			while (this.position < this.text.length() && ",} \t".indexOf(this.text.charAt(this.position)) < 0) {
+				this.position++;
+			}
+			String literal = this.text.substring(start, this.position);
+			if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+				throw error("Expected a string, number, boolean or null");
+			}
+			return literal.equals("null") ? null : literal;
+		}
+
+		String readString() {
+			expect('"');
+			StringBuilder value = new StringBuilder();
+			while (this.position < this.text.length()) {
+				char character = this.text.charAt(this.position++);
+				if (character == '"') {
+					return value.toString();
+				}
+				if (character != '\\') {
+					value.append(character);
+					continue;
+				}
+				if (this.position >= this.text.length()) {
+					break;
+				}
+				char escaped = this.text.charAt(this.position++);
+				switch (escaped) {
+					case 'n':
+						value.append('\n');
+						break;
+					case 'r':
+						value.append('\r');
+						break;
+					case 't':
+						value.append('\t');
+						break;
+					case 'b':
+						value.append('\b');
+						break;
+					case 'f':
+						value.append('\f');
+						break;
+					case 'u':
+						if (this.position + 4 > this.text.length()) {
+							throw error("Incomplete unicode escape");
+						}
+						value.append((char) Integer.parseInt(this.text.substring(this.position, this.position + 4), 16));
+						this.position += 4;
+						break;
+					default:
+						value.append(escaped);
+				}
+			}
+			throw error("Unterminated string");
+		}
+
+		private void skipWhitespace() {
+			while (this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position))) {
+				this.position++;
+			}
+		}
+
+		private IllegalArgumentException error(String message) {
+			return new IllegalArgumentException(message + " at position " + this.position + " of: " + this.text);
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package org.reactome.release.updateDOIs;
 
 import java.io.FileInputStream;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
@@ -15,8 +15,29 @@ public class Main {
 
 	private static final Logger logger = LogManager.getLogger();
 	private static final String RESOURCES_DIR = Paths.get("src", "main", "resources").toString();
+	// 'plan <config> <report> [<plan>]' writes the DOI changes to a plan file without changing the databases;
+	// 'apply <config> [<plan>]' writes the changes of the plan.  Without a command, the DOIs are found and updated
+	// in one run (or, without a report, listed in test mode).
+	private static final String PLAN_COMMAND = "plan";
+	private static final String APPLY_COMMAND = "apply";
+	// 'export <config> [<snapshot>]' writes the pathways of both databases to a snapshot file; 'whatif <config>
+	// <report> [<snapshot>]' logs what a run would update, using the snapshot instead of the databases
+	private static final String EXPORT_COMMAND = "export";
+	private static final String WHATIF_COMMAND = "whatif";
+	// 'shard <config> <shard> [<report>]' updates the pathways of one shard (mod:INDEX/COUNT or range:FROM-TO) of the
+	// run (or, without a report, lists them in test mode); 'merge <config> [<report>]' reconciles the results of all
+	// shards with the report once they are done
+	private static final String SHARD_COMMAND = "shard";
+	private static final String MERGE_COMMAND = "merge";
 
-  public static void main( String[] args ) throws IOException, SQLException {
+  public static void main( String[] args ) throws Exception {
+
+    String command = null;
+    if (args.length > 0 && Arrays.asList(PLAN_COMMAND, APPLY_COMMAND, EXPORT_COMMAND, WHATIF_COMMAND, SHARD_COMMAND, MERGE_COMMAND)
+      .contains(args[0])) {
+      command = args[0];
+      args = Arrays.copyOfRange(args, 1, args.length);
+    }
 
 	 // Default locations of properties and pre-set report files
 	 // Will override if arguments are provided
@@ -24,10 +45,31 @@ public class Main {
 
     Path pathToReport = Paths.get(RESOURCES_DIR,"UpdateDOIs.report");
     boolean testMode = true;
-    if (args.length > 1 && !args[1].isEmpty()) {
+    String planFile = null;
+    String snapshotFile = null;
+    ShardSpec shard = null;
+    if (SHARD_COMMAND.equals(command)) {
+      if (args.length < 2 || args[1].isEmpty()) {
+        throw new IllegalArgumentException("The shard command needs a shard: mod:INDEX/COUNT or range:FROM-TO");
+      }
+      shard = ShardSpec.parse(args[1]);
+      // Shift the report into the position it has without a command
+      args = new String[] {args[0], args.length > 2 ? args[2] : ""};
+    }
+    if (APPLY_COMMAND.equals(command)) {
+      planFile = args.length > 1 && !args[1].isEmpty() ? args[1] : null;
+      testMode = false;
+    } else if (EXPORT_COMMAND.equals(command)) {
+      snapshotFile = args.length > 1 && !args[1].isEmpty() ? args[1] : null;
+    } else if (args.length > 1 && !args[1].isEmpty()) {
       pathToReport = Paths.get(args[1]);
       testMode = false;
     }
+    if (PLAN_COMMAND.equals(command)) {
+      planFile = args.length > 2 && !args[2].isEmpty() ? args[2] : null;
+    } else if (WHATIF_COMMAND.equals(command)) {
+      snapshotFile = args.length > 2 && !args[2].isEmpty() ? args[2] : null;
+    }
 
     MySQLAdaptor dbaTestReactome = null;
     MySQLAdaptor dbaGkCentral = null;
@@ -48,18 +90,113 @@ public class Main {
     int portTR = Integer.parseInt(props.getProperty("release.database.port"));
     int portGK = Integer.parseInt(props.getProperty("curator.database.port"));
     int releaseNumber = Integer.parseInt(props.getProperty("releaseNumber"));
+    // Optional: number of DB_IDs per GK Central lookup query
+    int lookupChunkSize = Integer.parseInt(
+      props.getProperty("gkLookupChunkSize", String.valueOf(PathwayResolver.DEFAULT_CHUNK_SIZE)));
+    // Optional: number of attribute changes written per multi-row statement
+    int writeBatchSize = Integer.parseInt(
+      props.getProperty("writeBatchSize", String.valueOf(BatchAttributeWriter.DEFAULT_BATCH_SIZE)));
+    // Optional: 'sql' to compute and write the DOIs with set-based queries instead of one instance at a time
+    boolean useSetBasedEngine = props.getProperty("engine", "object").equalsIgnoreCase("sql");
+    // Optional: how pathways needing a DOI are selected ('regex', 'sentinel' or 'prefixRange') and whether to log
+    // how the selection differs from the regular expression query
+    CandidateSelector candidateSelector = new CandidateSelector(
+      CandidateSelector.Strategy.fromProperty(props.getProperty("candidateSelection", "regex")),
+      Boolean.parseBoolean(props.getProperty("candidateSelectionCompare", "false")));
+    // Optional: also write the test mode list of DOIs as JSON lines (doisToBeUpdated-v<release>.jsonl)
+    boolean writeStructuredTestReport = Boolean.parseBoolean(props.getProperty("structuredTestReport", "false"));
+    // Optional: number of worker threads (each with its own GK Central connection) resolving and verifying the GK
+    // Central pathways while the main thread writes; 0 resolves them on the main connection
+    int resolverThreads = Integer.parseInt(props.getProperty("resolverThreads", "0"));
+    // Optional: commit in chunks of this many pathways, journaling them so a failed run can be resumed; 0 commits
+    // once at the end
+    int commitChunkSize = Integer.parseInt(props.getProperty("commitChunkSize", "0"));
+    String checkpointJournal = props.getProperty("checkpointJournal");
+    // Optional: only write the DOI where GK Central does not already have it, e.g. when rerunning a release
+    boolean deltaMode = Boolean.parseBoolean(props.getProperty("deltaMode", "false"));
+    // Optional: directory to write the metrics snapshot (updateDOIs-metrics.json and updateDOIs.prom) to, and the
+    // seconds between progress log lines (0 turns them off)
+    String metricsDirectory = props.getProperty("metricsDirectory");
+    long progressIntervalSeconds = Long.parseLong(props.getProperty("progressIntervalSeconds", "30"));
+    // Optional: file to record every DOI decision in, one JSON object per line, and the number of decisions that
+    // can wait to be written before new ones are dropped
+    String auditJournal = props.getProperty("auditJournal");
+    int auditQueueCapacity =
+      Integer.parseInt(props.getProperty("auditQueueCapacity", String.valueOf(AuditJournal.DEFAULT_CAPACITY)));
+    // Optional: directory the shard workers write their leases and results to
+    String shardDirectory = props.getProperty("shardDirectory", "shards");
+    // Optional: directory to cache the schema of each database in, so later runs do not load it from the database
+    String schemaCacheDirectory = props.getProperty("schemaCacheDirectory");
     //if (props.getProperty("testMode") != null) {
     //  testMode = Boolean.valueOf(props.getProperty("testMode"));
     //}
 
-    // Set up db connections.
-    dbaTestReactome = new MySQLAdaptor(hostTR, databaseTR, userTR, passwordTR, portTR);
-    dbaGkCentral = new MySQLAdaptor(hostGK, databaseGK, userGK, passwordGK, portGK);
+    Path schemaCachePath = schemaCacheDirectory != null ? Paths.get(schemaCacheDirectory) : null;
+    AdaptorFactory testReactomeFactory = new AdaptorFactory(hostTR, databaseTR, userTR, passwordTR, portTR, schemaCachePath);
+    AdaptorFactory gkCentralFactory = new AdaptorFactory(hostGK, databaseGK, userGK, passwordGK, portGK, schemaCachePath);
+
+    // Set up db connections, both at once (a what-if run only reads the snapshot, and a merge only the shard results)
+    if (!WHATIF_COMMAND.equals(command) && !MERGE_COMMAND.equals(command)) {
+      List<MySQLAdaptor> adaptors;
+      try (Metrics.Timer timer = Metrics.phase(Metrics.CONNECT)) {
+        adaptors = AdaptorFactory.connect(Arrays.asList(testReactomeFactory, gkCentralFactory));
+      }
+      dbaTestReactome = adaptors.get(0);
+      dbaGkCentral = adaptors.get(1);
+    }
 
     UpdateDOIs.setAdaptors(dbaTestReactome, dbaGkCentral);
-    logger.info("Starting UpdateDOIs");
-    UpdateDOIs.findAndUpdateDOIs(personId, pathToReport, releaseNumber, testMode);
-    if (!testMode) {
+    UpdateDOIs.setLookupChunkSize(lookupChunkSize);
+    UpdateDOIs.setWriteBatchSize(writeBatchSize);
+    UpdateDOIs.setUseSetBasedEngine(useSetBasedEngine);
+    UpdateDOIs.setCandidateSelector(candidateSelector);
+    UpdateDOIs.setWriteStructuredTestReport(writeStructuredTestReport);
+    UpdateDOIs.setResolverWorkers(resolverThreads, gkCentralFactory);
+    UpdateDOIs.setDeltaMode(deltaMode);
+    UpdateDOIs.setChunkedCommits(commitChunkSize, checkpointJournal != null ? Paths.get(checkpointJournal) : null);
+    Metrics.setProgressInterval(progressIntervalSeconds);
+    Path planPath = planFile != null ? Paths.get(planFile) : UpdateDOIs.getDefaultPlanPath(releaseNumber);
+    Path snapshotPath = snapshotFile != null ? Paths.get(snapshotFile) : UpdateDOIs.getDefaultSnapshotPath(releaseNumber);
+    logger.info("Starting UpdateDOIs" + (command != null ? " " + command : ""));
+    AuditJournal journal = auditJournal != null ? AuditJournal.open(Paths.get(auditJournal), auditQueueCapacity) : null;
+    try (Metrics.Timer timer = Metrics.phase(Metrics.RUN)) {
+      if (PLAN_COMMAND.equals(command)) {
+        UpdateDOIs.planDOIs(pathToReport, releaseNumber, planPath);
+      } else if (APPLY_COMMAND.equals(command)) {
+        UpdateDOIs.applyPlan(personId, planPath, releaseNumber);
+      } else if (EXPORT_COMMAND.equals(command)) {
+        UpdateDOIs.exportSnapshot(releaseNumber, snapshotPath);
+      } else if (WHATIF_COMMAND.equals(command)) {
+        UpdateDOIs.whatIf(pathToReport, snapshotPath, releaseNumber);
+      } else if (SHARD_COMMAND.equals(command)) {
+        // The report is only reconciled by the merge, once every shard is done
+        new ShardRunner(dbaTestReactome, dbaGkCentral, candidateSelector, lookupChunkSize, deltaMode,
+          Paths.get(shardDirectory))
+          .run(shard, personId, UpdateDOIs.getExpectedUpdatedDOIs(pathToReport), releaseNumber, testMode);
+      } else if (MERGE_COMMAND.equals(command)) {
+        try (DOIReportWriter testReport =
+          new DOIReportWriter(UpdateDOIs.getDOIListPath(releaseNumber), writeStructuredTestReport)) {
+          ShardRunner.merge(Paths.get(shardDirectory), UpdateDOIs.getExpectedUpdatedDOIs(pathToReport), releaseNumber,
+            testReport);
+        }
+      } else {
+        UpdateDOIs.findAndUpdateDOIs(personId, pathToReport, releaseNumber, testMode);
+      }
+    } finally {
+      if (journal != null) {
+        journal.close();
+      }
+    }
+    Metrics.logSummary();
+    if (metricsDirectory != null) {
+      // Shard workers sharing a metrics directory each write their own snapshot
+      String snapshotName = shard != null ? "updateDOIs-shard-" + shard.getName() :
+        command != null ? "updateDOIs-" + command : "updateDOIs";
+      Metrics.writeSnapshot(Paths.get(metricsDirectory), snapshotName);
+    }
+    if (command != null) {
+      logger.info("UpdateDOIs " + command + " complete");
+    } else if (!testMode) {
       logger.info("UpdateDOIs Complete");
     } else {
       logger.info("Finished test run of UpdateDOIs");
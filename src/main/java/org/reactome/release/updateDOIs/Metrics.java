@@ -0,0 +1,514 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Run-wide timings and database counters: a latency histogram per phase of the run and per database and kind of
+ * round-trip, and the rows read from and written to each database.  Everything is thread-safe, as the resolver
+ * workers and the Verifier's checks record from their own threads.
+ *
+ * At the end of a run the metrics can be logged as a summary and written as a snapshot: a JSON file for reading and a
+ * Prometheus textfile (for node_exporter's textfile collector).  Long loops can also log their progress periodically
+ * with a throughput and an estimated time to completion.
+ *
+ * Phase times are exclusive: while a phase is open inside another on the same thread (e.g. a chunk's commit inside
+ * the write of a pathway), the time is recorded for the inner phase only, so the phases of one thread add up to its
+ * time rather than counting the nested time twice.  The run phase is the exception and includes everything in it.
+ * As phases also run on several threads at once (the resolver workers, the Verifier's checks), the total time of a
+ * phase is summed over its threads and can exceed the run's; each phase's wall time, during which it was running on
+ * at least one thread, is recorded as well and is the one to compare with the run.
+ */
+public final class Metrics {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	// Phases of a run
+	public static final String CONNECT = "connect";
+	public static final String CANDIDATE_FETCH = "candidate_fetch";
+	public static final String PRELOAD = "preload";
+	public static final String GK_LOOKUP = "gk_lookup";
+	public static final String VERIFICATION = "verification";
+	public static final String WRITE = "write";
+	public static final String COMMIT = "commit";
+	public static final String RECONCILIATION = "report_reconciliation";
+	public static final String PLAN_CHECK = "plan_check";
+	public static final String EXPORT = "export";
+	public static final String RUN = "run";
+
+	// Kinds of database round-trip
+	public static final String SELECT = "select";
+	public static final String LOAD = "load";
+	public static final String UPDATE = "update";
+	public static final String TRANSACTION = "transaction";
+
+	private static final String METRIC_PREFIX = "update_dois_";
+	// Upper bounds, in seconds, of the histogram buckets (the last bucket is unbounded)
+	private static final double[] BUCKET_BOUNDS = {
+		0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 300
+	};
+	private static final long DEFAULT_PROGRESS_INTERVAL_SECONDS = 30;
+
+	private static final Map<String, Histogram> phases = new ConcurrentHashMap<>();
+	private static final Map<List<String>, Histogram> roundTrips = new ConcurrentHashMap<>();
+	private static final Map<String, LongAdder> rowsRead = new ConcurrentHashMap<>();
+	private static final Map<String, LongAdder> rowsWritten = new ConcurrentHashMap<>();
+	// Phase timers open on each thread, innermost first
+	private static final ThreadLocal<Deque<Timer>> openPhases = ThreadLocal.withInitial(ArrayDeque::new);
+	private static volatile long progressIntervalNanos = TimeUnit.SECONDS.toNanos(DEFAULT_PROGRESS_INTERVAL_SECONDS);
+
+	private Metrics() {}
+
+	/**
+	 * Starts timing one occurrence of a phase, e.g. a query, a pathway's verification or a commit.  The time spent in
+	 * phases opened on this thread before the timer is closed is not included (except for the run phase).
+	 *
+	 * @param phase Name of the phase
+	 * @return Timer recording the elapsed time in the phase's histogram when closed
+	 */
+	public static Timer phase(String phase) {
+		return new Timer(phases.computeIfAbsent(phase, k -> new Histogram()), !phase.equals(RUN));
+	}
+
+	/**
+	 * Starts timing one round-trip to a database.
+	 *
+	 * @param dba Adaptor of the database queried
+	 * @param operation Kind of round-trip (SELECT, LOAD, UPDATE or TRANSACTION)
+	 * @return Timer recording the elapsed time in the database and operation's histogram when closed
+	 */
+	public static Timer roundTrip(MySQLAdaptor dba, String operation) {
+		return new Timer(roundTrips.computeIfAbsent(Arrays.asList(databaseName(dba), operation), k -> new Histogram()),
+			false);
+	}
+
+	public static void rowsRead(MySQLAdaptor dba, long rows) {
+		rowsRead.computeIfAbsent(databaseName(dba), k -> new LongAdder()).add(rows);
+	}
+
+	public static void rowsWritten(MySQLAdaptor dba, long rows) {
+		rowsWritten.computeIfAbsent(databaseName(dba), k -> new LongAdder()).add(rows);
+	}
+
+	/**
+	 * @param task What is being counted, e.g. "Updating pathways"
+	 * @param total Number of items expected
+	 * @return Progress logging the throughput and ETA at most once per progress interval as items are completed
+	 */
+	public static Progress progress(String task, long total) {
+		return new Progress(task, total);
+	}
+
+	// Minimum time between two progress log lines of a task; 0 turns progress logging off
+	public static void setProgressInterval(long seconds) {
+		if (seconds < 0) {
+			throw new IllegalArgumentException("Progress interval can not be negative: " + seconds);
+		}
+		progressIntervalNanos = TimeUnit.SECONDS.toNanos(seconds);
+	}
+
+	// Number of database round-trips recorded so far, of any kind and to any database
+	public static long getRoundTripCount() {
+		long count = 0;
+		for (Histogram histogram : roundTrips.values()) {
+			count += histogram.getCount();
+		}
+		return count;
+	}
+
+	// Discards everything recorded so far
+	public static void reset() {
+		phases.clear();
+		roundTrips.clear();
+		rowsRead.clear();
+		rowsWritten.clear();
+	}
+
+	/**
+	 * Logs the total time in each phase and the round-trips and rows of each database.
+	 */
+	public static void logSummary() {
+		for (Map.Entry<String, Histogram> phase : new TreeMap<>(phases).entrySet()) {
+			Histogram histogram = phase.getValue();
+			logger.info(String.format("Phase %s: %d in %.3f s, %.3f s wall (p95 %.1f ms)", phase.getKey(),
+				histogram.getCount(), histogram.getTotalSeconds(), histogram.getWallSeconds(),
+				histogram.getQuantileSeconds(0.95) * 1000));
+		}
+		for (Map.Entry<List<String>, Histogram> roundTrip : sortedRoundTrips().entrySet()) {
+			Histogram histogram = roundTrip.getValue();
+			logger.info(String.format("%s %s round-trips: %d in %.3f s (p95 %.1f ms)", roundTrip.getKey().get(0),
+				roundTrip.getKey().get(1), histogram.getCount(), histogram.getTotalSeconds(),
+				histogram.getQuantileSeconds(0.95) * 1000));
+		}
+		for (String database : databases()) {
+			logger.info(database + " rows: " + sum(rowsRead, database) + " read, " + sum(rowsWritten, database) +
+				" written");
+		}
+	}
+
+	/**
+	 * Writes the metrics recorded so far to &lt;program&gt;-metrics.json and &lt;program&gt;.prom in the directory.  Each
+	 * file is written to a temporary file first and moved into place, so a collector never reads a partial file.
+	 *
+	 * @param directory Directory to write the snapshot to (created if needed)
+	 * @param program Name of the program, used for the file names and as the 'program' label
+	 * @throws IOException Thrown if either file can not be written
+	 */
+	public static void writeSnapshot(Path directory, String program) throws IOException {
+		Files.createDirectories(directory);
+		writeAtomically(directory.resolve(program + "-metrics.json"), toJson(program));
+		writeAtomically(directory.resolve(program + ".prom"), toPrometheusText(program));
+		logger.info("Wrote metrics snapshot for " + program + " to " + directory);
+	}
+
+	// A JSON array with one flat object per phase, per database round-trip kind and per database
+	static String toJson(String program) {
+		List<String> objects = new ArrayList<>();
+		for (Map.Entry<String, Histogram> phase : new TreeMap<>(phases).entrySet()) {
+			Map<String, Object> fields = new LinkedHashMap<>();
+			fields.put("type", "phase");
+			fields.put("program", program);
+			fields.put("phase", phase.getKey());
+			phase.getValue().addSummaryFields(fields);
+			fields.put("wallSeconds", Histogram.round(phase.getValue().getWallSeconds()));
+			objects.add(JsonLines.toJson(fields));
+		}
+		for (Map.Entry<List<String>, Histogram> roundTrip : sortedRoundTrips().entrySet()) {
+			Map<String, Object> fields = new LinkedHashMap<>();
+			fields.put("type", "roundTrips");
+			fields.put("program", program);
+			fields.put("database", roundTrip.getKey().get(0));
+			fields.put("operation", roundTrip.getKey().get(1));
+			roundTrip.getValue().addSummaryFields(fields);
+			objects.add(JsonLines.toJson(fields));
+		}
+		for (String database : databases()) {
+			Map<String, Object> fields = new LinkedHashMap<>();
+			fields.put("type", "rows");
+			fields.put("program", program);
+			fields.put("database", database);
+			fields.put("read", sum(rowsRead, database));
+			fields.put("written", sum(rowsWritten, database));
+			objects.add(JsonLines.toJson(fields));
+		}
+		return objects.isEmpty() ? "[]\n" : "[\n  " + String.join(",\n  ", objects) + "\n]\n";
+	}
+
+	// The Prometheus text exposition format, as read by node_exporter's textfile collector
+	static String toPrometheusText(String program) {
+		StringBuilder text = new StringBuilder();
+		String programLabel = "program=\"" + escapeLabel(program) + "\"";
+
+		String phaseMetric = METRIC_PREFIX + "phase_duration_seconds";
+		appendHeader(text, phaseMetric, "histogram",
+			"Time spent in each occurrence of a phase of the run, excluding the phases nested in it");
+		for (Map.Entry<String, Histogram> phase : new TreeMap<>(phases).entrySet()) {
+			phase.getValue().appendPrometheus(text, phaseMetric,
+				programLabel + ",phase=\"" + escapeLabel(phase.getKey()) + "\"");
+		}
+
+		String phaseWallMetric = METRIC_PREFIX + "phase_wall_seconds";
+		appendHeader(text, phaseWallMetric, "gauge", "Wall time during which a phase was running on any thread");
+		for (Map.Entry<String, Histogram> phase : new TreeMap<>(phases).entrySet()) {
+			text.append(phaseWallMetric).append('{').append(programLabel)
+				.append(",phase=\"").append(escapeLabel(phase.getKey())).append("\"} ")
+				.append(String.format(Locale.ROOT, "%.6f", phase.getValue().getWallSeconds())).append('\n');
+		}
+
+		String roundTripMetric = METRIC_PREFIX + "db_round_trip_duration_seconds";
+		appendHeader(text, roundTripMetric, "histogram", "Duration of the round-trips to each database");
+		for (Map.Entry<List<String>, Histogram> roundTrip : sortedRoundTrips().entrySet()) {
+			roundTrip.getValue().appendPrometheus(text, roundTripMetric, programLabel +
+				",database=\"" + escapeLabel(roundTrip.getKey().get(0)) + "\"" +
+				",operation=\"" + escapeLabel(roundTrip.getKey().get(1)) + "\"");
+		}
+
+		appendRows(text, METRIC_PREFIX + "db_rows_read_total", "Rows read from each database", rowsRead, programLabel);
+		appendRows(text, METRIC_PREFIX + "db_rows_written_total", "Rows written to each database", rowsWritten,
+			programLabel);
+
+		String timestampMetric = METRIC_PREFIX + "snapshot_timestamp_seconds";
+		appendHeader(text, timestampMetric, "gauge", "Time the snapshot was written");
+		text.append(timestampMetric).append('{').append(programLabel).append("} ")
+			.append(System.currentTimeMillis() / 1000).append('\n');
+		return text.toString();
+	}
+
+	private static void appendRows(StringBuilder text, String metric, String help, Map<String, LongAdder> rows,
+		String programLabel) {
+
+		appendHeader(text, metric, "counter", help);
+		for (Map.Entry<String, LongAdder> databaseRows : new TreeMap<>(rows).entrySet()) {
+			text.append(metric).append('{').append(programLabel)
+				.append(",database=\"").append(escapeLabel(databaseRows.getKey())).append("\"} ")
+				.append(databaseRows.getValue().sum()).append('\n');
+		}
+	}
+
+	private static void appendHeader(StringBuilder text, String metric, String type, String help) {
+		text.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+		text.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+	}
+
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static void writeAtomically(Path path, String content) throws IOException {
+		Path directory = path.toAbsolutePath().getParent();
+		Path temporaryPath = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temporaryPath, StandardCharsets.UTF_8)) {
+				writer.write(content);
+			}
+			Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporaryPath);
+		}
+	}
+
+	private static Map<List<String>, Histogram> sortedRoundTrips() {
+		Map<List<String>, Histogram> sorted = new TreeMap<>((first, second) -> {
+			int comparison = first.get(0).compareTo(second.get(0));
+			return comparison != 0 ? comparison : first.get(1).compareTo(second.get(1));
+		});
+		sorted.putAll(roundTrips);
+		return sorted;
+	}
+
+	private static List<String> databases() {
+		TreeMap<String, Boolean> databases = new TreeMap<>();
+		rowsRead.keySet().forEach(database -> databases.put(database, true));
+		rowsWritten.keySet().forEach(database -> databases.put(database, true));
+		return new ArrayList<>(databases.keySet());
+	}
+
+	private static long sum(Map<String, LongAdder> rows, String database) {
+		LongAdder databaseRows = rows.get(database);
+		return databaseRows != null ? databaseRows.sum() : 0;
+	}
+
+	private static String databaseName(MySQLAdaptor dba) {
+		String databaseName = dba.getDBName();
+		return databaseName != null ? databaseName : "unknown";
+	}
+
+	private static String formatDuration(long seconds) {
+		return String.format("%d:%02d:%02d", seconds / 3600, seconds % 3600 / 60, seconds % 60);
+	}
+
+	/**
+	 * Elapsed time of one occurrence, recorded when closed (use with try-with-resources).  An exclusive timer leaves
+	 * out the time of the exclusive timers opened on its thread while it is open.
+	 */
+	public static final class Timer implements AutoCloseable {
+		private final Histogram histogram;
+		private final boolean exclusive;
+		private final long startNanos;
+		private long nestedNanos;
+
+		private Timer(Histogram histogram, boolean exclusive) {
+			this.histogram = histogram;
+			this.exclusive = exclusive;
+			this.startNanos = System.nanoTime();
+			this.histogram.startRunning(this.startNanos);
+			if (exclusive) {
+				Deque<Timer> open = openPhases.get();
+				Timer enclosing = open.peek();
+				if (enclosing != null) {
+					enclosing.histogram.stopRunning(this.startNanos);
+				}
+				open.push(this);
+			}
+		}
+
+		@Override
+		public void close() {
+			long now = System.nanoTime();
+			long elapsedNanos = now - this.startNanos;
+			this.histogram.stopRunning(now);
+			if (!this.exclusive) {
+				this.histogram.record(elapsedNanos);
+				return;
+			}
+
+			Deque<Timer> open = openPhases.get();
+			open.remove(this);
+			this.histogram.record(elapsedNanos - this.nestedNanos);
+			Timer enclosing = open.peek();
+			if (enclosing != null) {
+				enclosing.nestedNanos += elapsedNanos;
+				enclosing.histogram.startRunning(now);
+			}
+		}
+	}
+
+	/**
+	 * Completed count of a long task, logged with the throughput and ETA at most once per progress interval.
+	 */
+	public static final class Progress {
+		private final String task;
+		private final long total;
+		private final long startNanos;
+		private final AtomicLong completed = new AtomicLong();
+		private final AtomicLong nextLogNanos;
+
+		private Progress(String task, long total) {
+			this.task = task;
+			this.total = total;
+			this.startNanos = System.nanoTime();
+			this.nextLogNanos = new AtomicLong(this.startNanos + progressIntervalNanos);
+		}
+
+		public void advance() {
+			long completedCount = this.completed.incrementAndGet();
+			long intervalNanos = progressIntervalNanos;
+			long now = System.nanoTime();
+			long nextLog = this.nextLogNanos.get();
+			if (intervalNanos == 0 || completedCount >= this.total || now < nextLog ||
+				!this.nextLogNanos.compareAndSet(nextLog, now + intervalNanos)) {
+				return;
+			}
+
+			double elapsedSeconds = (now - this.startNanos) / 1e9;
+			double perSecond = completedCount / elapsedSeconds;
+			long etaSeconds = Math.round((this.total - completedCount) / perSecond);
+			logger.info(String.format("%s: %d of %d (%.1f%%) in %s, %.1f per second, ETA %s", this.task,
+				completedCount, this.total, 100.0 * completedCount / this.total, formatDuration((long) elapsedSeconds),
+				perSecond, formatDuration(etaSeconds)));
+		}
+
+		public long getCompleted() {
+			return this.completed.get();
+		}
+	}
+
+	// Latency histogram with fixed buckets, plus the count, total and maximum, and the wall time it was running
+	static final class Histogram {
+		private final LongAdder[] bucketCounts = new LongAdder[BUCKET_BOUNDS.length + 1];
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+		// Occurrences running now, since when at least one has been running, and the wall time of the earlier spans
+		private int runningCount;
+		private long runningSinceNanos;
+		private long wallNanos;
+
+		Histogram() {
+			for (int i = 0; i < this.bucketCounts.length; i++) {
+				this.bucketCounts[i] = new LongAdder();
+			}
+		}
+
+		void record(long nanos) {
+			double seconds = nanos / 1e9;
+			int bucket = 0;
+			while (bucket < BUCKET_BOUNDS.length && seconds > BUCKET_BOUNDS[bucket]) {
+				bucket++;
+			}
+			this.bucketCounts[bucket].increment();
+			this.count.increment();
+			this.totalNanos.add(nanos);
+			this.maxNanos.accumulate(nanos);
+		}
+
+		synchronized void startRunning(long nowNanos) {
+			if (this.runningCount++ == 0) {
+				this.runningSinceNanos = nowNanos;
+			}
+		}
+
+		synchronized void stopRunning(long nowNanos) {
+			if (--this.runningCount == 0) {
+				this.wallNanos += nowNanos - this.runningSinceNanos;
+			}
+		}
+
+		synchronized double getWallSeconds() {
+			long nanos = this.wallNanos;
+			if (this.runningCount > 0) {
+				nanos += System.nanoTime() - this.runningSinceNanos;
+			}
+			return nanos / 1e9;
+		}
+
+		long getCount() {
+			return this.count.sum();
+		}
+
+		double getTotalSeconds() {
+			return this.totalNanos.sum() / 1e9;
+		}
+
+		double getMaxSeconds() {
+			return this.maxNanos.get() / 1e9;
+		}
+
+		// Upper bound of the bucket the quantile falls in (the maximum for the unbounded bucket)
+		double getQuantileSeconds(double quantile) {
+			long total = getCount();
+			if (total == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * total);
+			long cumulative = 0;
+			for (int bucket = 0; bucket < BUCKET_BOUNDS.length; bucket++) {
+				cumulative += this.bucketCounts[bucket].sum();
+				if (cumulative >= rank) {
+					return Math.min(BUCKET_BOUNDS[bucket], getMaxSeconds());
+				}
+			}
+			return getMaxSeconds();
+		}
+
+		void addSummaryFields(Map<String, Object> fields) {
+			fields.put("count", getCount());
+			fields.put("totalSeconds", round(getTotalSeconds()));
+			fields.put("p50Seconds", round(getQuantileSeconds(0.5)));
+			fields.put("p95Seconds", round(getQuantileSeconds(0.95)));
+			fields.put("p99Seconds", round(getQuantileSeconds(0.99)));
+			fields.put("maxSeconds", round(getMaxSeconds()));
+		}
+
+		void appendPrometheus(StringBuilder text, String metric, String labels) {
+			long cumulative = 0;
+			for (int bucket = 0; bucket < this.bucketCounts.length; bucket++) {
+				cumulative += this.bucketCounts[bucket].sum();
+				String bound = bucket < BUCKET_BOUNDS.length ?
+					BigDecimal.valueOf(BUCKET_BOUNDS[bucket]).toPlainString() : "+Inf";
+				text.append(metric).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+					.append(cumulative).append('\n');
+			}
+			text.append(metric).append("_sum{").append(labels).append("} ")
+				.append(String.format(Locale.ROOT, "%.6f", getTotalSeconds())).append('\n');
+			text.append(metric).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+		}
+
+		static double round(double seconds) {
+			return Math.round(seconds * 1e6) / 1e6;
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package org.reactome.release.updateDOIs;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.InvalidAttributeException;
+import org.gk.schema.SchemaClass;
+
+/**
+ * The DOI-related column values of a single Pathway row, read without building a GKInstance.
+ */
+public final class PathwayDOIRecord {
+
+	private final long dbId;
+	private final String displayName;
+	private final String name;
+	private final String stableId;
+	private final String doi;
+
+	/**
+	 * @param dbId DB_ID of the pathway
+	 * @param displayName The pathway's _displayName
+	 * @param name First value of the pathway's 'name' attribute
+	 * @param stableId Display name of the pathway's StableIdentifier (e.g. R-HSA-123456.1)
+	 * @param doi Current value of the pathway's 'doi' attribute (may be null)
+	 */
+	public PathwayDOIRecord(long dbId, String displayName, String name, String stableId, String doi) {
+		this.dbId = dbId;
+		this.displayName = displayName;
+		this.name = name;
+		this.stableId = stableId;
+		this.doi = doi;
+	}
+
+	/**
+	 * Builds a query selecting the columns of PathwayDOIRecord for the Pathways matching the condition.  The
+	 * condition can refer to the Pathway's doi column as 'p.doi' and to its DB_ID as 'p.DB_ID'.  Table names are
+	 * taken from the database's schema (i.e. the class each attribute is defined on).
+	 *
+	 * @param dba Adaptor of the database the query will run on
+	 * @param condition SQL condition for the WHERE clause, or null to select all Pathways
+	 * @return SQL selecting the rows to pass to fromRow
+	 * @throws InvalidAttributeException Thrown if the schema's Pathway class lacks one of the attributes
+	 */
+	public static String selectSql(MySQLAdaptor dba, String condition) throws InvalidAttributeException {
+		SchemaClass pathwayClass = dba.getSchema().getClassByName(ReactomeJavaConstants.Pathway);
+		String doiTable = pathwayClass.getAttribute(ReactomeJavaConstants.doi).getOrigin().getName();
+		String stableIdTable = pathwayClass.getAttribute(ReactomeJavaConstants.stableIdentifier).getOrigin().getName();
+		String nameTable = pathwayClass.getAttribute(ReactomeJavaConstants.name).getOrigin().getName() + "_2_name";
+
+		return "SELECT p.DB_ID, d._displayName, n.name, s._displayName, p.doi" +
+			" FROM " + doiTable + " p" +
+			" JOIN DatabaseObject d ON d.DB_ID = p.DB_ID" +
+			" LEFT JOIN " + stableIdTable + " st ON st.DB_ID = p.DB_ID" +
+			" LEFT JOIN DatabaseObject s ON s.DB_ID = st.stableIdentifier" +
+			" LEFT JOIN " + nameTable + " n ON n.DB_ID = p.DB_ID AND n.name_rank = 0" +
+			(condition != null ? " WHERE " + condition : "") +
+			" ORDER BY p.DB_ID";
+	}
+
+	/**
+	 * Reads the Pathways with the given DB_IDs, using one IN query per chunk of DB_IDs.
+	 *
+	 * @param dba Adaptor of the database to read
+	 * @param dbIds DB_IDs of the pathways
+	 * @param chunkSize Number of DB_IDs per query
+	 * @return The pathways found, by DB_ID (DB_IDs that are not a Pathway are left out)
+	 * @throws Exception Thrown if a query fails
+	 */
+	public static Map<Long, PathwayDOIRecord> fetchByDbIds(MySQLAdaptor dba, List<Long> dbIds, int chunkSize)
+		throws Exception {
+
+		Map<Long, PathwayDOIRecord> pathwaysByDbId = new HashMap<>();
+		for (List<Long> chunk : Batches.partition(dbIds, chunkSize)) {
+			String sql = selectSql(dba, "p.DB_ID IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")");
+			try (PreparedStatement statement = dba.getConnection().prepareStatement(sql)) {
+				int index = 1;
+				for (Long dbId : chunk) {
+					statement.setLong(index++, dbId);
+				}
+				try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT);
+					ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						PathwayDOIRecord pathway = fromRow(resultSet);
+						pathwaysByDbId.put(pathway.getDbId(), pathway);
+					}
+				}
+			}
+		}
+		Metrics.rowsRead(dba, pathwaysByDbId.size());
+		return pathwaysByDbId;
+	}
+
+	/**
+	 * Receives the rows of a scan one at a time.
+	 */
+	public interface Handler {
+		void handle(PathwayDOIRecord pathway) throws Exception;
+	}
+
+	/**
+	 * Reads all Pathways in DB_ID order through a forward-only cursor, passing each row to the handler as it is read
+	 * rather than collecting them, so memory use does not grow with the number of Pathways.
+	 *
+	 * While the scan runs, its result set is the only one the adaptor's connection can use: the handler must not
+	 * query the same database.
+	 *
+	 * @param dba Adaptor of the database to scan
+	 * @param fetchSize Rows fetched from the server at a time; 0 streams them one at a time (a positive size takes
+	 * effect when the connection uses server-side cursors, i.e. useCursorFetch)
+	 * @param handler Receives each Pathway
+	 * @return Number of Pathways scanned
+	 * @throws Exception Thrown if the query or the handler fails
+	 */
+	public static long scan(MySQLAdaptor dba, int fetchSize, Handler handler) throws Exception {
+		if (fetchSize < 0) {
+			throw new IllegalArgumentException("Fetch size can not be negative: " + fetchSize);
+		}
+		long rowCount = 0;
+		try (PreparedStatement statement = dba.getConnection().prepareStatement(
+			selectSql(dba, null), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+			// MySQL Connector/J streams the result set row by row for a fetch size of Integer.MIN_VALUE
+			statement.setFetchSize(fetchSize > 0 ? fetchSize : Integer.MIN_VALUE);
+			ResultSet resultSet;
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT)) {
+				resultSet = statement.executeQuery();
+			}
+			try {
+				while (resultSet.next()) {
+					handler.handle(fromRow(resultSet));
+					rowCount++;
+				}
+			} finally {
+				resultSet.close();
+			}
+		}
+		Metrics.rowsRead(dba, rowCount);
+		return rowCount;
+	}
+
+	// Reads the current row of a result set produced by a query from selectSql
+	public static PathwayDOIRecord fromRow(ResultSet resultSet) throws SQLException {
+		return new PathwayDOIRecord(
+			resultSet.getLong(1),
+			resultSet.getString(2),
+			resultSet.getString(3),
+			resultSet.getString(4),
+			resultSet.getString(5)
+		);
+	}
+
+	public long getDbId() {
+		return this.dbId;
+	}
+
+	public String getDisplayName() {
+		return this.displayName;
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public String getStableId() {
+		return this.stableId;
+	}
+
+	public String getDoi() {
+		return this.doi;
+	}
+
+	@Override
+	public String toString() {
+		return "[Pathway:" + this.dbId + "] " + this.displayName;
+	}
+}
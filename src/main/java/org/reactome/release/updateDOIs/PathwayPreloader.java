@@ -0,0 +1,150 @@
+package org.reactome.release.updateDOIs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Loads the attributes of a whole collection of Pathway instances in a few set-based queries, so that reading them
+ * afterwards does not trigger a lazy-load round-trip per instance and attribute.
+ */
+public class PathwayPreloader {
+
+	private static final Logger logger = LogManager.getLogger();
+
+	private final MySQLAdaptor dba;
+	private final int chunkSize;
+
+	public PathwayPreloader(MySQLAdaptor dba, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Preload chunk size must be positive: " + chunkSize);
+		}
+		this.dba = dba;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Loads the given attributes for all the instances, one query per attribute and chunk of instances.
+	 *
+	 * @param instances Instances (all from this preloader's database) to load the attributes of
+	 * @param attributeNames Names of the attributes to load
+	 * @throws Exception Thrown if any of the attribute queries fail
+	 */
+	public void preload(Collection<GKInstance> instances, String... attributeNames) throws Exception {
+		List<GKInstance> instanceList = new ArrayList<>(instances);
+		for (List<GKInstance> chunk : Batches.partition(instanceList, this.chunkSize)) {
+			try (Metrics.Timer timer = Metrics.roundTrip(this.dba, Metrics.LOAD)) {
+				this.dba.loadInstanceAttributeValues(new ArrayList<>(chunk), attributeNames);
+			}
+			Metrics.rowsRead(this.dba, countLoadedValues(chunk, attributeNames));
+		}
+	}
+
+	// The rows loaded for the attributes: one per value, as each value of a multi-valued attribute is its own row
+	private static long countLoadedValues(List<GKInstance> instances, String[] attributeNames) throws Exception {
+		long valueCount = 0;
+		for (GKInstance instance : instances) {
+			for (String attributeName : attributeNames) {
+				List<?> values = instance.getAttributeValuesList(attributeName);
+				valueCount += values != null ? values.size() : 0;
+			}
+		}
+		return valueCount;
+	}
+
+	/**
+	 * Loads the attributes needed to construct and check the DOIs of the pathways: their stableIdentifier (with the
+	 * StableIdentifier instances' display names), name, doi and modified values.
+	 *
+	 * @param pathways Pathway instances to load the DOI-related attributes of
+	 * @throws Exception Thrown if any of the queries fail
+	 */
+	public void preloadForDOIUpdate(Collection<GKInstance> pathways) throws Exception {
+		if (pathways.isEmpty()) {
+			return;
+		}
+
+		preload(pathways, ReactomeJavaConstants.name, "doi", ReactomeJavaConstants.modified);
+		preloadStableIdentifiers(pathways);
+		logger.info("Preloaded DOI attributes of " + pathways.size() + " Pathway instances from " +
+			this.dba.getDBName());
+	}
+
+	/**
+	 * Loads the stableIdentifier attribute of the instances along with the StableIdentifier instances' display
+	 * names, from which DOIs are constructed.
+	 *
+	 * @param instances Instances to load the stable identifiers of
+	 * @throws Exception Thrown if any of the queries fail
+	 */
+	public void preloadStableIdentifiers(Collection<GKInstance> instances) throws Exception {
+		preload(instances, ReactomeJavaConstants.stableIdentifier);
+
+		List<GKInstance> stableIdentifiers = new ArrayList<>();
+		for (GKInstance instance : instances) {
+			GKInstance stableIdentifier =
+				(GKInstance) instance.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
+			if (stableIdentifier != null) {
+				stableIdentifiers.add(stableIdentifier);
+			}
+		}
+		preloadDisplayNames(stableIdentifiers);
+	}
+
+	/**
+	 * Sets the display names of the instances that do not have one yet, in chunked queries against the
+	 * DatabaseObject table.
+	 *
+	 * @param instances Instances (e.g. attribute values loaded as shells) needing their display names
+	 * @throws SQLException Thrown if any of the display name queries fail
+	 */
+	public void preloadDisplayNames(Collection<GKInstance> instances) throws SQLException {
+		Map<Long, List<GKInstance>> instancesMissingNames = new HashMap<>();
+		for (GKInstance instance : instances) {
+			if (instance.getDisplayName() == null) {
+				instancesMissingNames.computeIfAbsent(instance.getDBID(), k -> new ArrayList<>()).add(instance);
+			}
+		}
+		if (instancesMissingNames.isEmpty()) {
+			return;
+		}
+
+		Connection connection = this.dba.getConnection();
+		List<Long> dbIds = new ArrayList<>(instancesMissingNames.keySet());
+		for (List<Long> chunk : Batches.partition(dbIds, this.chunkSize)) {
+			String sql = "SELECT DB_ID, _displayName FROM DatabaseObject WHERE DB_ID IN (" +
+				String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int index = 1;
+				for (Long dbId : chunk) {
+					statement.setLong(index++, dbId);
+				}
+				int rowCount = 0;
+				try (Metrics.Timer timer = Metrics.roundTrip(this.dba, Metrics.SELECT);
+					ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						String displayName = resultSet.getString(2);
+						for (GKInstance instance : instancesMissingNames.get(resultSet.getLong(1))) {
+							instance.setDisplayName(displayName);
+						}
+						rowCount++;
+					}
+				}
+				Metrics.rowsRead(this.dba, rowCount);
+			}
+		}
+	}
+}
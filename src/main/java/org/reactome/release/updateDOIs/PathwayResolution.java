@@ -0,0 +1,105 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.Map;
+
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+
+/**
+ * A Test Reactome pathway needing a DOI, together with what was found out about it before anything is written: its
+ * new DOI, whether it is listed in the report and its verified GK Central counterpart.
+ *
+ * The Test Reactome side is filled in by forCandidate and the GK Central side by resolveGkPathway, which may run on a
+ * different thread (see ResolverPipeline); only the single writer stage in UpdateDOIs changes any instances.
+ */
+final class PathwayResolution {
+
+	private final GKInstance trPathway;
+	private final String doi;
+	private final String name;
+	private final boolean listedInReport;
+	private final boolean needsGkPathway;
+	private GKInstance gkPathway;
+	private boolean verified;
+	private boolean gkCentralUpToDate;
+
+	private PathwayResolution(GKInstance trPathway, String doi, String name, boolean listedInReport,
+		boolean needsGkPathway) {
+		this.trPathway = trPathway;
+		this.doi = doi;
+		this.name = name;
+		this.listedInReport = listedInReport;
+		this.needsGkPathway = needsGkPathway;
+	}
+
+	/**
+	 * Constructs the DOI of a Test Reactome pathway and checks it against the report.
+	 *
+	 * @param trPathway Test Reactome pathway with its stableIdentifier, name and doi loaded
+	 * @param expectedUpdatedDOIs Contents of the report, as returned by UpdateDOIs.getExpectedUpdatedDOIs
+	 * @param testMode True if pathways missing from the report should still be checked against GK Central
+	 * @return Resolution still missing its GK Central pathway
+	 * @throws Exception Thrown if the attributes of the pathway can not be read
+	 */
+	static PathwayResolution forCandidate(GKInstance trPathway, Map<String, ExpectedDOI> expectedUpdatedDOIs,
+		boolean testMode) throws Exception {
+
+		// The dois are constructed from the instances 'stableIdentifier', which should be in the db already
+		String stableIdFromDb =
+			((GKInstance) trPathway.getAttributeValue(ReactomeJavaConstants.stableIdentifier)).getDisplayName();
+		String nameFromDb = trPathway.getAttributeValue(ReactomeJavaConstants.name).toString();
+		String doi = UpdateDOIs.REACTOME_DOI_PREFIX + "/" + stableIdFromDb;
+
+		boolean listedInReport = expectedUpdatedDOIs.get(doi) != null &&
+			expectedUpdatedDOIs.get(doi).getDisplayName().equals(nameFromDb);
+		return new PathwayResolution(trPathway, doi, nameFromDb, listedInReport, listedInReport || testMode);
+	}
+
+	/**
+	 * Records the GK Central pathway with the same DB_ID and, if the pathway is to be updated, verifies that it
+	 * matches the Test Reactome pathway (logging a warning if it does not).
+	 *
+	 * @param gkPathway GK Central pathway with its doi loaded, or null if there is none with the same DB_ID
+	 * @throws Exception Thrown if the doi of the GK Central pathway can not be read
+	 */
+	void resolveGkPathway(GKInstance gkPathway) throws Exception {
+		this.gkPathway = gkPathway;
+		this.verified = gkPathway != null && this.needsGkPathway &&
+			ReportTests.verifyDOIMatches(this.trPathway, gkPathway, this.doi);
+		this.gkCentralUpToDate = gkPathway != null && this.doi.equals(gkPathway.getAttributeValue("doi"));
+	}
+
+	GKInstance getTrPathway() {
+		return this.trPathway;
+	}
+
+	String getDoi() {
+		return this.doi;
+	}
+
+	String getName() {
+		return this.name;
+	}
+
+	boolean isListedInReport() {
+		return this.listedInReport;
+	}
+
+	// True if the pathway is listed in the report or, in test mode, would be checked anyway
+	boolean needsGkPathway() {
+		return this.needsGkPathway;
+	}
+
+	GKInstance getGkPathway() {
+		return this.gkPathway;
+	}
+
+	boolean isVerified() {
+		return this.verified;
+	}
+
+	// True if the GK Central pathway already has the new DOI
+	boolean isGkCentralUpToDate() {
+		return this.gkCentralUpToDate;
+	}
+}
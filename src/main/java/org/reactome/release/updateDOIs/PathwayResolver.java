@@ -0,0 +1,66 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Resolves Pathway instances by DB_ID using chunked IN-list queries, so looking up N pathways costs
+ * ceil(N / chunkSize) round-trips to the database rather than N.
+ */
+public class PathwayResolver {
+
+	private static final Logger logger = LogManager.getLogger();
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	private final MySQLAdaptor dba;
+	private final int chunkSize;
+
+	public PathwayResolver(MySQLAdaptor dba, int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Lookup chunk size must be positive: " + chunkSize);
+		}
+		this.dba = dba;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Fetches the Pathway instances with the given DB_IDs.
+	 *
+	 * @param dbIds DB_IDs to look up (duplicates are ignored)
+	 * @return Map of DB_ID to Pathway instance; DB_IDs without a matching Pathway have no entry
+	 * @throws Exception Thrown if a lookup query fails
+	 */
+	@SuppressWarnings("unchecked")
+	public Map<Long, GKInstance> resolve(Collection<Long> dbIds) throws Exception {
+		List<Long> distinctDbIds = new ArrayList<>(new LinkedHashSet<>(dbIds));
+		Map<Long, GKInstance> pathwaysByDbId = new HashMap<>();
+
+		List<List<Long>> chunks = Batches.partition(distinctDbIds, this.chunkSize);
+		for (List<Long> chunk : chunks) {
+			// A collection value is expanded by the adaptor into a single 'DB_ID IN (...)' clause
+			Collection<GKInstance> pathways;
+			try (Metrics.Timer timer = Metrics.roundTrip(this.dba, Metrics.SELECT)) {
+				pathways = this.dba.fetchInstanceByAttribute(
+					ReactomeJavaConstants.Pathway, ReactomeJavaConstants.DB_ID, "=", new ArrayList<>(chunk));
+			}
+			Metrics.rowsRead(this.dba, pathways.size());
+			for (GKInstance pathway : pathways) {
+				pathwaysByDbId.put(pathway.getDBID(), pathway);
+			}
+		}
+		logger.info("Resolved " + pathwaysByDbId.size() + " of " + distinctDbIds.size() + " Pathway instances in " +
+			this.dba.getDBName() + " using " + chunks.size() + " queries");
+
+		return pathwaysByDbId;
+	}
+}
@@ -0,0 +1,124 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Verifier's checks of one database, run on the rows of a streaming Pathway scan (see PathwayDOIRecord.scan)
+ * instead of on loaded GKInstances.  Only the pathways the checks report on are kept: those still marked as needing a
+ * DOI and those with one of the expected DOIs, so memory use is bounded by the expected DOIs rather than by the size
+ * of the database.
+ *
+ * The messages are those of the Verifier's instance-based checks.
+ */
+final class PathwayScanChecks implements PathwayDOIRecord.Handler {
+
+	private final String databaseName;
+	private final List<String> expectedDOIs;
+	private final Set<String> expectedDOISet;
+	private final Set<String> normalizedExpectedDOIs = new HashSet<>();
+	// Pathways marked as needing a DOI, in DB_ID order
+	private final List<PathwayDOIRecord> pathwaysNeedingDOI = new ArrayList<>();
+	// Of those, the first pathway whose correct DOI is each expected DOI
+	private final Map<String, PathwayDOIRecord> pathwaysNeedingDOIByCorrectDOI = new HashMap<>();
+	// Pathways with an expected DOI, by normalized DOI
+	private final Map<String, List<PathwayDOIRecord>> pathwaysByNormalizedDOI = new HashMap<>();
+
+	/**
+	 * @param databaseName Name of the database scanned, used in the messages
+	 * @param expectedDOIs DOIs expected to be assigned
+	 */
+	PathwayScanChecks(String databaseName, List<String> expectedDOIs) {
+		this.databaseName = databaseName;
+		this.expectedDOIs = expectedDOIs;
+		this.expectedDOISet = new HashSet<>(expectedDOIs);
+		for (String expectedDOI : expectedDOIs) {
+			this.normalizedExpectedDOIs.add(normalizeDOI(expectedDOI));
+		}
+	}
+
+	@Override
+	public void handle(PathwayDOIRecord pathway) {
+		String doi = pathway.getDoi();
+		if (CandidateSelector.NEEDS_DOI_SENTINEL.equals(doi)) {
+			this.pathwaysNeedingDOI.add(pathway);
+			if (pathway.getStableId() != null && this.expectedDOISet.contains(getCorrectDOI(pathway))) {
+				this.pathwaysNeedingDOIByCorrectDOI.putIfAbsent(getCorrectDOI(pathway), pathway);
+			}
+		}
+		String normalizedDOI = normalizeDOI(doi);
+		if (normalizedDOI != null && this.normalizedExpectedDOIs.contains(normalizedDOI)) {
+			this.pathwaysByNormalizedDOI.computeIfAbsent(normalizedDOI, k -> new ArrayList<>()).add(pathway);
+		}
+	}
+
+	// Pathways of the release database still marked as needing a DOI
+	List<String> getUnassignedDOIMessages() {
+		List<String> errorMessages = new ArrayList<>();
+		if (!this.pathwaysNeedingDOI.isEmpty()) {
+			errorMessages.add("The following pathways in the release database still require DOIs:");
+			for (PathwayDOIRecord pathway : this.pathwaysNeedingDOI) {
+				errorMessages.add(pathway.toString());
+			}
+		}
+		return errorMessages;
+	}
+
+	// Pathways of the curated database still marked as needing a DOI, of those expected to have been assigned one
+	List<String> getRequiringDOIMessages() {
+		List<String> pathwaysExpectedToHaveDOIs = new ArrayList<>();
+		for (String expectedDOI : this.expectedDOIs) {
+			PathwayDOIRecord pathway = this.pathwaysNeedingDOIByCorrectDOI.get(expectedDOI);
+			if (pathway != null) {
+				pathwaysExpectedToHaveDOIs.add(pathway.toString());
+			}
+		}
+		List<String> errorMessages = new ArrayList<>();
+		if (!pathwaysExpectedToHaveDOIs.isEmpty()) {
+			errorMessages.add("The following pathways in the curated database still require DOIs:");
+			errorMessages.addAll(pathwaysExpectedToHaveDOIs);
+		}
+		return errorMessages;
+	}
+
+	/**
+	 * @return Messages for the pathways holding an expected DOI that differs from it (e.g. in case)
+	 * @throws RuntimeException Thrown if no pathway, or more than one, has one of the expected DOIs
+	 */
+	List<String> getUnexpectedDOIMessages() {
+		List<String> errorMessages = new ArrayList<>();
+		for (String expectedDOI : this.expectedDOIs) {
+			List<PathwayDOIRecord> pathwaysWithDOI =
+				this.pathwaysByNormalizedDOI.getOrDefault(normalizeDOI(expectedDOI), Collections.emptyList());
+			if (pathwaysWithDOI.isEmpty()) {
+				throw new RuntimeException("Unable to find pathway with doi " + expectedDOI + " in database " +
+					this.databaseName);
+			}
+			if (pathwaysWithDOI.size() > 1) {
+				throw new RuntimeException("More than one pathway, " + pathwaysWithDOI + ", found with doi " +
+					expectedDOI + " in database " + this.databaseName);
+			}
+			PathwayDOIRecord pathway = pathwaysWithDOI.get(0);
+			if (!expectedDOI.equals(pathway.getDoi())) {
+				errorMessages.add(String.format("Pathway %s in %s database has '%s' as its doi (expected %s)",
+					pathway, this.databaseName, getCorrectDOI(pathway), expectedDOI));
+			}
+		}
+		return errorMessages;
+	}
+
+	// The doi column is compared by MySQL case-insensitively and ignoring trailing spaces (see Verifier)
+	static String normalizeDOI(String doi) {
+		return doi == null ? null : doi.toLowerCase(Locale.ROOT).replaceAll("\\s+$", "");
+	}
+
+	private static String getCorrectDOI(PathwayDOIRecord pathway) {
+		return UpdateDOIs.REACTOME_DOI_PREFIX + "/" + pathway.getStableId();
+	}
+}
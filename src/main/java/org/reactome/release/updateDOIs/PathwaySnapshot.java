@@ -0,0 +1,483 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaClass;
+
+/**
+ * The DOI-related state of every Pathway of Test Reactome and GK Central, exported to a local file so the Verifier,
+ * the report reconciliation and what-if runs can work without querying the databases.
+ *
+ * The file is columnar and read through a memory mapping: each database's section holds one fixed-width array per
+ * column (DB_ID, display name, name, stable identifier, stable identifier version, doi and last modified), in DB_ID
+ * order.  Strings are stored once, UTF-8 encoded, in a dictionary shared by both sections and referenced from the
+ * columns by index, so opening a snapshot reads nothing but its header and strings are only decoded when asked for.
+ *
+ * Layout (big-endian):
+ *
+ * - "RDOISNAP", format version (int), release number (int), export time (long, epoch milliseconds)
+ * - dictionary: string count n (int), n + 1 byte offsets (int), the UTF-8 bytes of the strings
+ * - section count (int), then per section: database name (string index), row count r (int), DB_IDs (r longs),
+ *   display names, names, stable identifiers, stable identifier versions, dois (r ints each) and last modified times
+ *   (r longs, epoch milliseconds)
+ *
+ * A string index or version of -1 and a last modified time of Long.MIN_VALUE stand for no value.
+ */
+public final class PathwaySnapshot {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final byte[] MAGIC = "RDOISNAP".getBytes(StandardCharsets.US_ASCII);
+	private static final int VERSION = 1;
+	private static final int NONE = -1;
+	private static final long NO_TIME = Long.MIN_VALUE;
+
+	private final int releaseNumber;
+	private final Instant exportedAt;
+	private final ByteBuffer buffer;
+	private final int stringOffsetsPosition;
+	private final int stringBytesPosition;
+	private final int stringCount;
+	private final Section testReactome;
+	private final Section gkCentral;
+
+	private PathwaySnapshot(Path snapshotPath, ByteBuffer buffer) {
+		this.buffer = buffer;
+		byte[] magic = new byte[MAGIC.length];
+		buffer.get(magic);
+		if (!Arrays.equals(magic, MAGIC) || buffer.getInt() != VERSION) {
+			throw new IllegalArgumentException(snapshotPath + " is not a version " + VERSION + " pathway snapshot");
+		}
+		this.releaseNumber = buffer.getInt();
+		this.exportedAt = Instant.ofEpochMilli(buffer.getLong());
+
+		this.stringCount = buffer.getInt();
+		this.stringOffsetsPosition = buffer.position();
+		this.stringBytesPosition = checkedPosition(snapshotPath, this.stringOffsetsPosition, (this.stringCount + 1L) * 4);
+		int stringBytesLength = buffer.getInt(this.stringOffsetsPosition + this.stringCount * 4);
+		buffer.position(checkedPosition(snapshotPath, this.stringBytesPosition, stringBytesLength));
+
+		int sectionCount = buffer.getInt();
+		if (sectionCount != 2) {
+			throw new IllegalArgumentException(snapshotPath + " has " + sectionCount + " sections instead of 2");
+		}
+		this.testReactome = new Section(snapshotPath);
+		this.gkCentral = new Section(snapshotPath);
+	}
+
+	/**
+	 * Maps a snapshot file.  Only the header is read; the columns are read from the mapping when accessed.
+	 *
+	 * @param snapshotPath File written by export
+	 * @return The snapshot
+	 * @throws IOException Thrown if the file can not be read
+	 * @throws IllegalArgumentException Thrown if the file is not a snapshot or is truncated
+	 */
+	public static PathwaySnapshot open(Path snapshotPath) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(snapshotPath + " is too large to be a pathway snapshot");
+			}
+			// The mapping stays valid once the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try {
+			return new PathwaySnapshot(snapshotPath, buffer);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException(snapshotPath + " is truncated", e);
+		}
+	}
+
+	public int getReleaseNumber() {
+		return this.releaseNumber;
+	}
+
+	public Instant getExportedAt() {
+		return this.exportedAt;
+	}
+
+	public Section getTestReactome() {
+		return this.testReactome;
+	}
+
+	public Section getGkCentral() {
+		return this.gkCentral;
+	}
+
+	/**
+	 * The Pathways of one database, by row in DB_ID order.
+	 */
+	public final class Section {
+		private final String databaseName;
+		private final int rowCount;
+		private final int dbIdsPosition;
+		private final int displayNamesPosition;
+		private final int namesPosition;
+		private final int stableIdentifiersPosition;
+		private final int stableIdVersionsPosition;
+		private final int doisPosition;
+		private final int lastModifiedPosition;
+
+		// Reads the section header at the buffer's position and moves the position past the section
+		private Section(Path snapshotPath) {
+			ByteBuffer buffer = PathwaySnapshot.this.buffer;
+			this.databaseName = getString(buffer.getInt());
+			this.rowCount = buffer.getInt();
+			this.dbIdsPosition = buffer.position();
+			this.displayNamesPosition = checkedPosition(snapshotPath, this.dbIdsPosition, this.rowCount * 8L);
+			this.namesPosition = checkedPosition(snapshotPath, this.displayNamesPosition, this.rowCount * 4L);
+			this.stableIdentifiersPosition = checkedPosition(snapshotPath, this.namesPosition, this.rowCount * 4L);
+			this.stableIdVersionsPosition = checkedPosition(snapshotPath, this.stableIdentifiersPosition, this.rowCount * 4L);
+			this.doisPosition = checkedPosition(snapshotPath, this.stableIdVersionsPosition, this.rowCount * 4L);
+			this.lastModifiedPosition = checkedPosition(snapshotPath, this.doisPosition, this.rowCount * 4L);
+			buffer.position(checkedPosition(snapshotPath, this.lastModifiedPosition, this.rowCount * 8L));
+		}
+
+		public String getDatabaseName() {
+			return this.databaseName;
+		}
+
+		public int size() {
+			return this.rowCount;
+		}
+
+		public long getDbId(int row) {
+			return PathwaySnapshot.this.buffer.getLong(this.dbIdsPosition + checkedRow(row) * 8);
+		}
+
+		public String getDisplayName(int row) {
+			return getString(PathwaySnapshot.this.buffer.getInt(this.displayNamesPosition + checkedRow(row) * 4));
+		}
+
+		public String getName(int row) {
+			return getString(PathwaySnapshot.this.buffer.getInt(this.namesPosition + checkedRow(row) * 4));
+		}
+
+		// Identifier of the pathway's StableIdentifier without its version (e.g. R-HSA-123456)
+		public String getStableIdentifier(int row) {
+			return getString(PathwaySnapshot.this.buffer.getInt(this.stableIdentifiersPosition + checkedRow(row) * 4));
+		}
+
+		// Version of the pathway's StableIdentifier, or -1 if it has none
+		public int getStableIdVersion(int row) {
+			return PathwaySnapshot.this.buffer.getInt(this.stableIdVersionsPosition + checkedRow(row) * 4);
+		}
+
+		// Display name of the pathway's StableIdentifier, as in PathwayDOIRecord (e.g. R-HSA-123456.1)
+		public String getStableId(int row) {
+			String stableIdentifier = getStableIdentifier(row);
+			int version = getStableIdVersion(row);
+			return stableIdentifier == null || version == NONE ? stableIdentifier : stableIdentifier + "." + version;
+		}
+
+		public String getDoi(int row) {
+			return getString(PathwaySnapshot.this.buffer.getInt(this.doisPosition + checkedRow(row) * 4));
+		}
+
+		// Time of the pathway's latest 'modified' InstanceEdit, or null if it has none
+		public Instant getLastModified(int row) {
+			long lastModified = PathwaySnapshot.this.buffer.getLong(this.lastModifiedPosition + checkedRow(row) * 8);
+			return lastModified == NO_TIME ? null : Instant.ofEpochMilli(lastModified);
+		}
+
+		/**
+		 * @param dbId DB_ID of a pathway
+		 * @return Row of the pathway, or -1 if the database has no Pathway with the DB_ID
+		 */
+		public int indexOf(long dbId) {
+			int low = 0;
+			int high = this.rowCount - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				long middleDbId = getDbId(middle);
+				if (middleDbId < dbId) {
+					low = middle + 1;
+				} else if (middleDbId > dbId) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return NONE;
+		}
+
+		public PathwayDOIRecord getRecord(int row) {
+			return new PathwayDOIRecord(getDbId(row), getDisplayName(row), getName(row), getStableId(row), getDoi(row));
+		}
+
+		/**
+		 * Passes every pathway to the handler in DB_ID order, as PathwayDOIRecord.scan does for a database.
+		 *
+		 * @return Number of pathways
+		 * @throws Exception Thrown if the handler fails
+		 */
+		public long scan(PathwayDOIRecord.Handler handler) throws Exception {
+			for (int row = 0; row < this.rowCount; row++) {
+				handler.handle(getRecord(row));
+			}
+			return this.rowCount;
+		}
+
+		// All pathways, by DB_ID
+		public Map<Long, PathwayDOIRecord> getRecordsByDbId() {
+			Map<Long, PathwayDOIRecord> pathwaysByDbId = new TreeMap<>();
+			for (int row = 0; row < this.rowCount; row++) {
+				pathwaysByDbId.put(getDbId(row), getRecord(row));
+			}
+			return pathwaysByDbId;
+		}
+
+		private int checkedRow(int row) {
+			if (row < 0 || row >= this.rowCount) {
+				throw new IndexOutOfBoundsException("Row " + row + " of " + this.rowCount + " in " + this.databaseName);
+			}
+			return row;
+		}
+	}
+
+	private String getString(int index) {
+		if (index == NONE) {
+			return null;
+		}
+		if (index < 0 || index >= this.stringCount) {
+			throw new IndexOutOfBoundsException("String " + index + " of " + this.stringCount);
+		}
+		int start = this.buffer.getInt(this.stringOffsetsPosition + index * 4);
+		int end = this.buffer.getInt(this.stringOffsetsPosition + (index + 1) * 4);
+		byte[] bytes = new byte[end - start];
+		ByteBuffer stringBuffer = this.buffer.duplicate();
+		stringBuffer.position(this.stringBytesPosition + start);
+		stringBuffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// Position after a region of the given length, which must fit in the buffer
+	private int checkedPosition(Path snapshotPath, int position, long length) {
+		if (length < 0 || position + length > this.buffer.capacity()) {
+			throw new IllegalArgumentException(snapshotPath + " is truncated");
+		}
+		return (int) (position + length);
+	}
+
+	/**
+	 * Reads every Pathway of both databases and writes them to a snapshot file.  The file is written to a temporary
+	 * file first and then moved into place, so an existing snapshot is only replaced by a complete one.
+	 *
+	 * @param fetchSize Rows fetched from the server at a time (see PathwayDOIRecord.scan)
+	 * @param releaseNumber Release the snapshot is taken for
+	 * @param snapshotPath File to write
+	 * @throws Exception Thrown if a query fails or the file can not be written
+	 */
+	public static void export(MySQLAdaptor dbaTestReactome, MySQLAdaptor dbaGkCentral, int fetchSize,
+		int releaseNumber, Path snapshotPath) throws Exception {
+
+		Writer writer = new Writer(releaseNumber);
+		writer.addSection(dbaTestReactome, fetchSize);
+		writer.addSection(dbaGkCentral, fetchSize);
+		writer.write(snapshotPath);
+	}
+
+	/**
+	 * Builds the columns of a snapshot in memory and writes them.  Package-private so tests can write snapshots
+	 * without a database.
+	 */
+	static final class Writer {
+		private final int releaseNumber;
+		private final Map<String, Integer> stringIndexes = new LinkedHashMap<>();
+		private final List<String> databaseNames = new ArrayList<>();
+		private final List<List<PathwayDOIRecord>> sectionPathways = new ArrayList<>();
+		private final List<Map<Long, Long>> sectionLastModified = new ArrayList<>();
+
+		Writer(int releaseNumber) {
+			this.releaseNumber = releaseNumber;
+		}
+
+		private void addSection(MySQLAdaptor dba, int fetchSize) throws Exception {
+			// Read before the scan, as the scan's result set is the only one the connection can use while it runs
+			Map<Long, Long> lastModifiedByDbId = fetchLastModified(dba);
+			List<PathwayDOIRecord> pathways = new ArrayList<>();
+			PathwayDOIRecord.scan(dba, fetchSize, pathways::add);
+			addSection(dba.getDBName(), pathways, lastModifiedByDbId);
+			logger.info("Exported " + pathways.size() + " pathways of " + dba.getDBName());
+		}
+
+		/**
+		 * @param pathways Pathways of the database, in DB_ID order
+		 * @param lastModifiedByDbId Epoch milliseconds of each pathway's latest 'modified' InstanceEdit
+		 */
+		void addSection(String databaseName, List<PathwayDOIRecord> pathways, Map<Long, Long> lastModifiedByDbId) {
+			if (this.databaseNames.size() == 2) {
+				throw new IllegalStateException("A snapshot holds two databases");
+			}
+			this.databaseNames.add(databaseName);
+			this.sectionPathways.add(pathways);
+			this.sectionLastModified.add(lastModifiedByDbId);
+		}
+
+		void write(Path snapshotPath) throws IOException {
+			if (this.databaseNames.size() != 2) {
+				throw new IllegalStateException("A snapshot holds two databases, not " + this.databaseNames.size());
+			}
+			// Strings are indexed before anything is written, as the dictionary comes first
+			List<int[][]> sectionColumns = new ArrayList<>();
+			for (List<PathwayDOIRecord> pathways : this.sectionPathways) {
+				sectionColumns.add(indexStrings(pathways));
+			}
+			int[] databaseNameIndexes = {indexOf(this.databaseNames.get(0)), indexOf(this.databaseNames.get(1))};
+
+			Path absoluteSnapshotPath = snapshotPath.toAbsolutePath();
+			Path temporarySnapshotPath = Files.createTempFile(
+				absoluteSnapshotPath.getParent(), absoluteSnapshotPath.getFileName().toString(), ".tmp");
+			try {
+				try (DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(temporarySnapshotPath)))) {
+					output.write(MAGIC);
+					output.writeInt(VERSION);
+					output.writeInt(this.releaseNumber);
+					output.writeLong(System.currentTimeMillis());
+					writeDictionary(output);
+
+					output.writeInt(this.databaseNames.size());
+					for (int section = 0; section < this.databaseNames.size(); section++) {
+						writeSection(output, databaseNameIndexes[section], this.sectionPathways.get(section),
+							sectionColumns.get(section), this.sectionLastModified.get(section));
+					}
+				}
+				Files.move(temporarySnapshotPath, absoluteSnapshotPath, StandardCopyOption.REPLACE_EXISTING);
+			} finally {
+				Files.deleteIfExists(temporarySnapshotPath);
+			}
+		}
+
+		// String columns of the pathways: display name, name, stable identifier, stable identifier version and doi
+		private int[][] indexStrings(List<PathwayDOIRecord> pathways) {
+			int[][] columns = new int[5][pathways.size()];
+			long previousDbId = Long.MIN_VALUE;
+			for (int row = 0; row < pathways.size(); row++) {
+				PathwayDOIRecord pathway = pathways.get(row);
+				if (pathway.getDbId() <= previousDbId) {
+					throw new IllegalArgumentException("Pathways must be in DB_ID order: " + pathway.getDbId() +
+						" follows " + previousDbId);
+				}
+				previousDbId = pathway.getDbId();
+				columns[0][row] = indexOf(pathway.getDisplayName());
+				columns[1][row] = indexOf(pathway.getName());
+				String stableId = pathway.getStableId();
+				int version = stableIdVersion(stableId);
+				columns[2][row] = indexOf(version == NONE ? stableId : stableId.substring(0, stableId.lastIndexOf('.')));
+				columns[3][row] = version;
+				columns[4][row] = indexOf(pathway.getDoi());
+			}
+			return columns;
+		}
+
+		private int indexOf(String value) {
+			return value == null ? NONE : this.stringIndexes.computeIfAbsent(value, k -> this.stringIndexes.size());
+		}
+
+		private void writeDictionary(DataOutputStream output) throws IOException {
+			List<byte[]> encodedStrings = new ArrayList<>();
+			for (String value : this.stringIndexes.keySet()) {
+				encodedStrings.add(value.getBytes(StandardCharsets.UTF_8));
+			}
+			output.writeInt(encodedStrings.size());
+			int offset = 0;
+			output.writeInt(offset);
+			for (byte[] encodedString : encodedStrings) {
+				offset += encodedString.length;
+				output.writeInt(offset);
+			}
+			for (byte[] encodedString : encodedStrings) {
+				output.write(encodedString);
+			}
+		}
+
+		private static void writeSection(DataOutputStream output, int databaseNameIndex,
+			List<PathwayDOIRecord> pathways, int[][] columns, Map<Long, Long> lastModifiedByDbId) throws IOException {
+
+			output.writeInt(databaseNameIndex);
+			output.writeInt(pathways.size());
+			for (PathwayDOIRecord pathway : pathways) {
+				output.writeLong(pathway.getDbId());
+			}
+			for (int[] column : columns) {
+				for (int value : column) {
+					output.writeInt(value);
+				}
+			}
+			for (PathwayDOIRecord pathway : pathways) {
+				output.writeLong(lastModifiedByDbId.getOrDefault(pathway.getDbId(), NO_TIME));
+			}
+		}
+	}
+
+	// The version of a stable identifier such as R-HSA-123456.1, or -1 if it has none that can be split off and
+	// written back unchanged
+	static int stableIdVersion(String stableId) {
+		if (stableId == null || stableId.lastIndexOf('.') < 0) {
+			return NONE;
+		}
+		String version = stableId.substring(stableId.lastIndexOf('.') + 1);
+		try {
+			int parsedVersion = Integer.parseInt(version);
+			return parsedVersion >= 0 && String.valueOf(parsedVersion).equals(version) ? parsedVersion : NONE;
+		} catch (NumberFormatException e) {
+			return NONE;
+		}
+	}
+
+	// Epoch milliseconds of each Pathway's latest 'modified' InstanceEdit
+	private static Map<Long, Long> fetchLastModified(MySQLAdaptor dba) throws Exception {
+		SchemaClass pathwayClass = dba.getSchema().getClassByName(ReactomeJavaConstants.Pathway);
+		String doiTable = pathwayClass.getAttribute(ReactomeJavaConstants.doi).getOrigin().getName();
+		String modifiedTable =
+			pathwayClass.getAttribute(ReactomeJavaConstants.modified).getOrigin().getName() + "_2_modified";
+		String dateTimeTable = dba.getSchema().getClassByName(ReactomeJavaConstants.InstanceEdit)
+			.getAttribute(ReactomeJavaConstants.dateTime).getOrigin().getName();
+		String sql = "SELECT p.DB_ID, MAX(ie.dateTime)" +
+			" FROM " + doiTable + " p" +
+			" JOIN " + modifiedTable + " m ON m.DB_ID = p.DB_ID" +
+			" JOIN " + dateTimeTable + " ie ON ie.DB_ID = m.modified" +
+			" GROUP BY p.DB_ID";
+
+		Map<Long, Long> lastModifiedByDbId = new HashMap<>();
+		try (PreparedStatement statement = dba.getConnection().prepareStatement(sql);
+			Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT);
+			ResultSet resultSet = statement.executeQuery()) {
+			while (resultSet.next()) {
+				Timestamp lastModified = resultSet.getTimestamp(2);
+				if (lastModified != null) {
+					lastModifiedByDbId.put(resultSet.getLong(1), lastModified.getTime());
+				}
+			}
+		}
+		Metrics.rowsRead(dba, lastModifiedByDbId.size());
+		return lastModifiedByDbId;
+	}
+}
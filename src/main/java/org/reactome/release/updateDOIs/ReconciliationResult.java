@@ -0,0 +1,128 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of comparing the DOIs that were (or were not) updated with the report of DOIs expected to be updated.
+ */
+public class ReconciliationResult {
+
+	/**
+	 * Why a DOI that was not updated differs from a DOI in the report.
+	 */
+	public enum MismatchType {
+		// Same stable id, but a different stable id version
+		VERSION_DRIFT,
+		// Same stable id and version, but a different display name
+		RENAMED,
+		// Different stable id (i.e. DB_ID), but the same display name
+		DB_ID_DRIFT
+	}
+
+	/**
+	 * A DOI that was not updated, matched with an expected DOI from the report.
+	 */
+	public static final class Mismatch {
+		private final MismatchType type;
+		private final String expectedDOI;
+		private final String expectedDisplayName;
+		private final String actualDOI;
+		private final String actualDisplayName;
+
+		Mismatch(MismatchType type, String expectedDOI, String expectedDisplayName, String actualDOI,
+			String actualDisplayName) {
+			this.type = type;
+			this.expectedDOI = expectedDOI;
+			this.expectedDisplayName = expectedDisplayName;
+			this.actualDOI = actualDOI;
+			this.actualDisplayName = actualDisplayName;
+		}
+
+		public MismatchType getType() {
+			return this.type;
+		}
+
+		public String getExpectedDOI() {
+			return this.expectedDOI;
+		}
+
+		public String getExpectedDisplayName() {
+			return this.expectedDisplayName;
+		}
+
+		public String getActualDOI() {
+			return this.actualDOI;
+		}
+
+		public String getActualDisplayName() {
+			return this.actualDisplayName;
+		}
+
+		@Override
+		public String toString() {
+			return this.type + ": [DB] " + this.actualDOI + ":" + this.actualDisplayName +
+				" ~ [Expected] " + this.expectedDOI + ":" + this.expectedDisplayName;
+		}
+	}
+
+	private final List<Mismatch> mismatches = new ArrayList<>();
+	private final List<String> unresolvedDOIs = new ArrayList<>();
+	private final List<String> unexpectedlyUpdatedDOIs = new ArrayList<>();
+	private boolean missedExpectedDOIs;
+	private boolean allExpectedDOIsUpdated;
+
+	void addMismatch(Mismatch mismatch) {
+		this.mismatches.add(mismatch);
+	}
+
+	void addUnresolvedDOI(String doi) {
+		this.unresolvedDOIs.add(doi);
+	}
+
+	void addUnexpectedlyUpdatedDOI(String doi) {
+		this.unexpectedlyUpdatedDOIs.add(doi);
+	}
+
+	void setMissedExpectedDOIs(boolean missedExpectedDOIs) {
+		this.missedExpectedDOIs = missedExpectedDOIs;
+	}
+
+	void setAllExpectedDOIsUpdated(boolean allExpectedDOIsUpdated) {
+		this.allExpectedDOIsUpdated = allExpectedDOIsUpdated;
+	}
+
+	// DOIs not updated that could be matched with a DOI in the report, in the order they were found
+	public List<Mismatch> getMismatches() {
+		return Collections.unmodifiableList(this.mismatches);
+	}
+
+	public List<Mismatch> getMismatches(MismatchType type) {
+		List<Mismatch> mismatchesOfType = new ArrayList<>();
+		for (Mismatch mismatch : this.mismatches) {
+			if (mismatch.getType() == type) {
+				mismatchesOfType.add(mismatch);
+			}
+		}
+		return mismatchesOfType;
+	}
+
+	// DOIs not updated that match no DOI in the report by stable id or display name
+	public List<String> getUnresolvedDOIs() {
+		return Collections.unmodifiableList(this.unresolvedDOIs);
+	}
+
+	public List<String> getUnexpectedlyUpdatedDOIs() {
+		return Collections.unmodifiableList(this.unexpectedlyUpdatedDOIs);
+	}
+
+	// True if some DOIs were not updated because they did not match the report
+	public boolean hasMissedExpectedDOIs() {
+		return this.missedExpectedDOIs;
+	}
+
+	public boolean areAllExpectedDOIsUpdated() {
+		return this.allExpectedDOIsUpdated;
+	}
+}
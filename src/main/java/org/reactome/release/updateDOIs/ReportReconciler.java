@@ -0,0 +1,104 @@
+package org.reactome.release.updateDOIs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the DOIs that were not updated with the report of DOIs expected to be updated and determines, for each,
+ * why it did not match.  The report is indexed by stable id and by display name once, so each DOI not updated is
+ * classified with a couple of hash lookups rather than a scan of the whole report.
+ */
+public class ReportReconciler {
+
+	private final Map<String, ExpectedDOI> expectedUpdatedDOIs;
+	private final String reactomeDOIPrefix;
+	private final Map<String, List<String>> expectedDOIsByStableId = new HashMap<>();
+	private final Map<String, List<String>> expectedDOIsByDisplayName = new HashMap<>();
+
+	/**
+	 * @param expectedUpdatedDOIs Contents of the report, as returned by UpdateDOIs.getExpectedUpdatedDOIs
+	 * @param reactomeDOIPrefix Prefix of Reactome DOIs (i.e. 10.3180)
+	 */
+	public ReportReconciler(Map<String, ExpectedDOI> expectedUpdatedDOIs, String reactomeDOIPrefix) {
+		this.expectedUpdatedDOIs = new LinkedHashMap<>(expectedUpdatedDOIs);
+		this.reactomeDOIPrefix = reactomeDOIPrefix;
+
+		for (Map.Entry<String, ExpectedDOI> expectedDOI : this.expectedUpdatedDOIs.entrySet()) {
+			this.expectedDOIsByStableId
+				.computeIfAbsent(expectedDOI.getValue().getStableId(), k -> new ArrayList<>())
+				.add(expectedDOI.getKey());
+			this.expectedDOIsByDisplayName
+				.computeIfAbsent(expectedDOI.getValue().getDisplayName(), k -> new ArrayList<>())
+				.add(expectedDOI.getKey());
+		}
+	}
+
+	/**
+	 * @param updated DOIs that were updated and are listed in the report
+	 * @param notUpdated "doi:display name" of the DOIs that were not updated as they did not match the report
+	 * @param expectedNumberOfUpdatedDOIs Number of pathways that were found needing a DOI
+	 * @return Classification of the DOIs not updated, or of those updated without being expected
+	 */
+	public ReconciliationResult reconcile(List<String> updated, List<String> notUpdated,
+		int expectedNumberOfUpdatedDOIs) {
+
+		ReconciliationResult result = new ReconciliationResult();
+		if (notUpdated.size() > 0) {
+			result.setMissedExpectedDOIs(true);
+			for (String missed : notUpdated) {
+				if (!classify(missed, result)) {
+					result.addUnresolvedDOI(missed.split(":", 2)[0]);
+				}
+			}
+		} else if (this.expectedUpdatedDOIs.size() != 0 &&
+			expectedNumberOfUpdatedDOIs > this.expectedUpdatedDOIs.size()) {
+			for (String updatedDOI : updated) {
+				if (!this.expectedUpdatedDOIs.containsKey(updatedDOI)) {
+					result.addUnexpectedlyUpdatedDOI(updatedDOI);
+				}
+			}
+		} else if (this.expectedUpdatedDOIs.size() != 0) {
+			result.setAllExpectedDOIsUpdated(true);
+		}
+		return result;
+	}
+
+	// Finds the DOIs in the report that the missed DOI differs from in only one of stable id version, display name
+	// or stable id.  Returns false if there are none.
+	private boolean classify(String missed, ReconciliationResult result) {
+		String[] doiAndName = missed.split(":", 2);
+		String missedDoi = doiAndName[0];
+		String missedName = doiAndName.length > 1 ? doiAndName[1] : "";
+		String missedClean = missedDoi.replace(this.reactomeDOIPrefix + "/", "");
+		int lastPeriodIndex = missedClean.lastIndexOf(".");
+		String missedStableId = lastPeriodIndex < 0 ? missedClean : missedClean.substring(0, lastPeriodIndex);
+		String missedStableIdVersion = lastPeriodIndex < 0 ? "" : missedClean.substring(lastPeriodIndex + 1);
+
+		boolean resolved = false;
+		for (String key : this.expectedDOIsByStableId.getOrDefault(missedStableId, Collections.emptyList())) {
+			ExpectedDOI expected = this.expectedUpdatedDOIs.get(key);
+			if (!expected.getStableIdVersion().equals(missedStableIdVersion)) {
+				result.addMismatch(new ReconciliationResult.Mismatch(ReconciliationResult.MismatchType.VERSION_DRIFT,
+					key, expected.getDisplayName(), missedDoi, missedName));
+				resolved = true;
+			} else if (!expected.getDisplayName().equals(missedName)) {
+				result.addMismatch(new ReconciliationResult.Mismatch(ReconciliationResult.MismatchType.RENAMED,
+					key, expected.getDisplayName(), missedDoi, missedName));
+				resolved = true;
+			}
+		}
+		for (String key : this.expectedDOIsByDisplayName.getOrDefault(missedName, Collections.emptyList())) {
+			ExpectedDOI expected = this.expectedUpdatedDOIs.get(key);
+			if (!expected.getStableId().equals(missedStableId)) {
+				result.addMismatch(new ReconciliationResult.Mismatch(ReconciliationResult.MismatchType.DB_ID_DRIFT,
+					key, expected.getDisplayName(), missedDoi, missedName));
+				resolved = true;
+			}
+		}
+		return resolved;
+	}
+}
@@ -1,7 +1,5 @@
 package org.reactome.release.updateDOIs;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -16,26 +14,41 @@ public class ReportTests {
 	
 	// Compares the DB IDs and display names of the instances to be updated from Test Reactome and GK Central
 	public static boolean verifyDOIMatches( GKInstance trDOI, GKInstance gkDOI, String newDOI ) {
-		if (trDOI.getDBID().equals(gkDOI.getDBID()) && trDOI.getDisplayName().equals(gkDOI.getDisplayName())) {
-			return true;
-		} else if (trDOI.getDBID().equals(gkDOI.getDBID()) && !trDOI.getDisplayName().equals(gkDOI.getDisplayName())) {
-			warningsLog.warn("[" + newDOI + "] Display names do not match: [Test Reactome]: " + trDOI.getDisplayName() +
-				" ~ [GK Central]: " + gkDOI.getDisplayName());
-			return false;
-		} else if (!trDOI.getDBID().equals(gkDOI.getDBID()) && trDOI.getDisplayName().equals(gkDOI.getDisplayName())) {
-			warningsLog.warn("[" + newDOI + "] DB IDs do not match: [Test Reactome]: " + trDOI.getDBID() +
-				" ~ [GK Central]: " + gkDOI.getDBID());
+		if (!trDOI.getDBID().equals(gkDOI.getDBID()) && !trDOI.getDisplayName().equals(gkDOI.getDisplayName())) {
+			warningsLog.warn("DB ID and display name do not match: [Test Reactome]: {} ~ [GK Central]: {}", trDOI, gkDOI);
+			AuditJournal.recordMismatch(AuditJournal.Decision.DB_ID_AND_DISPLAY_NAME_MISMATCH, newDOI, trDOI.getDBID(),
+				trDOI.getDisplayName(), gkDOI.getDBID(), gkDOI.getDisplayName());
 			return false;
+		}
+		return verifyDOIMatches(trDOI.getDBID(), trDOI.getDisplayName(), gkDOI.getDBID(), gkDOI.getDisplayName(), newDOI);
+	}
+
+	// Same comparison as above, for pathways read as plain column values rather than instances.  The messages are
+	// parameterized so that they are only built if the warnings log is enabled, as this runs for every pathway.
+	public static boolean verifyDOIMatches(Long trDbId, String trDisplayName, Long gkDbId, String gkDisplayName,
+		String newDOI) {
+
+		AuditJournal.Decision mismatch;
+		if (trDbId.equals(gkDbId) && trDisplayName.equals(gkDisplayName)) {
+			return true;
+		} else if (trDbId.equals(gkDbId) && !trDisplayName.equals(gkDisplayName)) {
+			warningsLog.warn("[{}] Display names do not match: [Test Reactome]: {} ~ [GK Central]: {}",
+				newDOI, trDisplayName, gkDisplayName);
+			mismatch = AuditJournal.Decision.DISPLAY_NAME_MISMATCH;
+		} else if (!trDbId.equals(gkDbId) && trDisplayName.equals(gkDisplayName)) {
+			warningsLog.warn("[{}] DB IDs do not match: [Test Reactome]: {} ~ [GK Central]: {}", newDOI, trDbId, gkDbId);
+			mismatch = AuditJournal.Decision.DB_ID_MISMATCH;
 		} else {
-			warningsLog.warn("DB ID and display name do not match: [Test Reactome]: " + trDOI + " ~ [GK Central]: " +
-				gkDOI);
-			return false;
+			warningsLog.warn("DB ID and display name do not match: [Test Reactome]: [{}] {} ~ [GK Central]: [{}] {}",
+				trDbId, trDisplayName, gkDbId, gkDisplayName);
+			mismatch = AuditJournal.Decision.DB_ID_AND_DISPLAY_NAME_MISMATCH;
 		}
-		
+		AuditJournal.recordMismatch(mismatch, newDOI, trDbId, trDisplayName, gkDbId, gkDisplayName);
+		return false;
 	}
-	
-	public static void expectedUpdatesTests(
-			Map<String,Map<String,String>> expectedUpdatedDOIs,
+
+	public static ReconciliationResult expectedUpdatesTests(
+			Map<String, ExpectedDOI> expectedUpdatedDOIs,
 			List<String> updated,
 			List<String> notUpdated,
 			int expectedNumberOfUpdatedDOIs,
@@ -45,72 +58,57 @@ public class ReportTests {
 		// might not of been updated.
 		// This entails comparing the DB ID, display name and the stable ID version of the provided list
 		// (UpdateDOIs.report) with the actual updated instances
-		if (notUpdated.size() > 0)
+		ReconciliationResult result = new ReportReconciler(expectedUpdatedDOIs, REACTOME_DOI_PREFIX)
+			.reconcile(updated, notUpdated, expectedNumberOfUpdatedDOIs);
+
+		if (result.hasMissedExpectedDOIs())
 		{
 			warningsLog.warn("Some DOIs from UpdateDOIs.report were not updated");
-			List<String> unresolvedDOIs = new ArrayList<>();
-			for (String missed : notUpdated) 
+			for (ReconciliationResult.Mismatch mismatch : result.getMismatches())
 			{
-				String missedDoi = missed.split(":")[0];
-				String missedName = missed.split(":")[1];
-				String missedClean = missedDoi.replace(REACTOME_DOI_PREFIX + "/", "");
-				String missedStableId = missedClean.split("\\.")[0];
-				String missedStableIdVersion = missedClean.split("\\.")[1];
-				int resolved = 0;
-				// Iterate through each of the DOI's provided in UpdateDOIs.report, trying to find a match for the DOI
-				// that wasn't updated.
-				// If it finds a match of either DB ID, stable ID version, or the display name, it will try to
-				// determine which of those 3 fields don't match.
-				// Once it finds the field that doesn't match, it logs it and then ends the current iteration.
-				for (String key : expectedUpdatedDOIs.keySet()) 
-				{
-					if (expectedUpdatedDOIs.get(key).get("stableId").equals(missedStableId)) 
-					{
-						if (!expectedUpdatedDOIs.get(key).get("stableIdVersion").equals(missedStableIdVersion)) 
-						{
-							warningsLog.warn("[" + key + "] StableID 'version' in DB different from expected: [DB] " +
-								missedDoi + "* ~ [Expected] " + key + "*");
-							resolved++;
-							continue;
-						} else if (!expectedUpdatedDOIs.get(key).get("displayName").equals(missedName)) {
-							warningsLog.warn("[" + key + "] 'Display name' in DB different from expected: [DB] " +
-								missedName + " ~ [Expected] " + expectedUpdatedDOIs.get(key).get("displayName"));
-							resolved++;
-							continue;
-						}
-					} else if (expectedUpdatedDOIs.get(key).get("displayName").equals(missedName)) {
+				String key = mismatch.getExpectedDOI();
+				switch (mismatch.getType()) {
+					case VERSION_DRIFT:
+						warningsLog.warn("[" + key + "] StableID 'version' in DB different from expected: [DB] " +
+							mismatch.getActualDOI() + "* ~ [Expected] " + key + "*");
+						AuditJournal.recordReport(AuditJournal.Decision.REPORT_VERSION_DRIFT, key,
+							mismatch.getExpectedDisplayName(), mismatch.getActualDOI(), mismatch.getActualDisplayName());
+						break;
+					case RENAMED:
+						warningsLog.warn("[" + key + "] 'Display name' in DB different from expected: [DB] " +
+							mismatch.getActualDisplayName() + " ~ [Expected] " + mismatch.getExpectedDisplayName());
+						AuditJournal.recordReport(AuditJournal.Decision.REPORT_RENAMED, key,
+							mismatch.getExpectedDisplayName(), mismatch.getActualDOI(), mismatch.getActualDisplayName());
+						break;
+					case DB_ID_DRIFT:
 						warningsLog.warn("[" + key + "] 'DB ID' from DB different from expected, but found matching " +
-								"display name: ~ [DB] " + missed + " [Expected] " + key + ":" + missedName);
-						resolved++;
-						continue;
-					}
-				}
-				if (resolved == 0) 
-				{
-					unresolvedDOIs.add(missedDoi);
+							"display name: ~ [DB] " + mismatch.getActualDOI() + ":" + mismatch.getActualDisplayName() +
+							" [Expected] " + key + ":" + mismatch.getActualDisplayName());
+						AuditJournal.recordReport(AuditJournal.Decision.REPORT_DB_ID_DRIFT, key,
+							mismatch.getExpectedDisplayName(), mismatch.getActualDOI(), mismatch.getActualDisplayName());
+						break;
+					default:
+						break;
 				}
 			}
-			if (unresolvedDOIs.size() > 0) 
+			for (String unresolvedDOI : result.getUnresolvedDOIs())
 			{
-				for (String unresolvedDOI : unresolvedDOIs) 
-				{
-					warningsLog.warn("[" + unresolvedDOI + "]" + "DOI does not match any DOIs expected to be updated " +
-							"-- Could not match display name or DB ID");
-				}
+				warningsLog.warn("[" + unresolvedDOI + "]" + "DOI does not match any DOIs expected to be updated " +
+						"-- Could not match display name or DB ID");
+				AuditJournal.recordReport(AuditJournal.Decision.REPORT_UNRESOLVED, null, null, unresolvedDOI, null);
 			}
 		} else if (expectedUpdatedDOIs.size() != 0 && expectedNumberOfUpdatedDOIs > expectedUpdatedDOIs.size()) {
 			warningsLog.warn("The following DOIs were unexpectedly updated: ");
-			for (Object updatedDOI : updated)
+			for (String updatedDOI : result.getUnexpectedlyUpdatedDOIs())
 			{
-				if (expectedUpdatedDOIs.get(updatedDOI) == null)
-				{
-					warningsLog.warn("  " + updatedDOI);
-				}
+				warningsLog.warn("  " + updatedDOI);
+				AuditJournal.recordReport(AuditJournal.Decision.UNEXPECTEDLY_UPDATED, null, null, updatedDOI, null);
 			}
-		} else if (expectedUpdatedDOIs.size() != 0) {
+		} else if (result.areAllExpectedDOIsUpdated()) {
 
 			warningsLog.info("All expected DOIs updated");
 		}
+		return result;
 	}
 
 }
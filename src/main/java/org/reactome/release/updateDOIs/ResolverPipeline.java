@@ -0,0 +1,176 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Resolves and verifies the GK Central counterparts of Test Reactome pathways on a bounded pool of worker threads,
+ * each with its own GK Central connection, while a single writer stage (the calling thread) handles the results.
+ *
+ * Candidates are sent to the workers in chunks and at most two chunks per worker are in flight at once.  Results are
+ * handed to the writer stage in the order of the candidates, so the lookups of later chunks overlap with the writes
+ * of earlier ones without changing the order (or the transaction) in which anything is written.
+ */
+public class ResolverPipeline implements Closeable {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final int CHUNKS_IN_FLIGHT_PER_WORKER = 2;
+
+	/**
+	 * The writer stage, called on the thread running the pipeline.
+	 */
+	interface ResolutionHandler {
+		void handle(PathwayResolution resolution) throws Exception;
+	}
+
+	private final Callable<MySQLAdaptor> gkAdaptorFactory;
+	private final int workers;
+	private final int chunkSize;
+	private final ExecutorService executor;
+	// Connections not currently used by a worker, and all connections opened so they can be closed at the end
+	private final BlockingQueue<MySQLAdaptor> idleAdaptors = new LinkedBlockingQueue<>();
+	private final List<MySQLAdaptor> openedAdaptors = Collections.synchronizedList(new ArrayList<>());
+
+	/**
+	 * @param gkAdaptorFactory Opens a new connection to GK Central; called at most once per worker
+	 * @param workers Number of resolver worker threads
+	 * @param chunkSize Number of pathways resolved per lookup query
+	 */
+	public ResolverPipeline(Callable<MySQLAdaptor> gkAdaptorFactory, int workers, int chunkSize) {
+		if (workers < 1) {
+			throw new IllegalArgumentException("Number of resolver workers must be positive: " + workers);
+		}
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Lookup chunk size must be positive: " + chunkSize);
+		}
+		this.gkAdaptorFactory = gkAdaptorFactory;
+		this.workers = workers;
+		this.chunkSize = chunkSize;
+		this.executor = Executors.newFixedThreadPool(workers, new ResolverThreadFactory());
+	}
+
+	/**
+	 * Resolves the GK Central pathways of all the resolutions and passes each, in order, to the handler.
+	 *
+	 * @param resolutions Resolutions still missing their GK Central pathway
+	 * @param handler Writer stage
+	 * @throws Exception Thrown if a lookup or the handler fails; chunks still in flight are cancelled
+	 */
+	public void run(List<PathwayResolution> resolutions, ResolutionHandler handler) throws Exception {
+		Iterator<List<PathwayResolution>> chunks = Batches.partition(resolutions, this.chunkSize).iterator();
+		Deque<Future<List<PathwayResolution>>> inFlight = new ArrayDeque<>();
+		try {
+			while (chunks.hasNext() || !inFlight.isEmpty()) {
+				while (chunks.hasNext() && inFlight.size() < this.workers * CHUNKS_IN_FLIGHT_PER_WORKER) {
+					List<PathwayResolution> chunk = chunks.next();
+					inFlight.add(this.executor.submit(() -> resolveChunk(chunk)));
+				}
+				for (PathwayResolution resolution : getChunk(inFlight.poll())) {
+					handler.handle(resolution);
+				}
+			}
+		} finally {
+			for (Future<List<PathwayResolution>> chunk : inFlight) {
+				chunk.cancel(true);
+			}
+		}
+	}
+
+	// Stops the workers and closes their GK Central connections
+	@Override
+	public void close() {
+		this.executor.shutdownNow();
+		synchronized (this.openedAdaptors) {
+			for (MySQLAdaptor dba : this.openedAdaptors) {
+				try {
+					dba.cleanUp();
+				} catch (Exception e) {
+					logger.warn("Unable to close resolver connection to " + dba.getDBName(), e);
+				}
+			}
+			logger.info("Closed " + this.openedAdaptors.size() + " resolver connections");
+			this.openedAdaptors.clear();
+		}
+	}
+
+	// Runs on a worker: looks up the chunk's GK Central pathways and verifies them against Test Reactome
+	private List<PathwayResolution> resolveChunk(List<PathwayResolution> chunk) throws Exception {
+		MySQLAdaptor dba = borrowAdaptor();
+		try {
+			List<Long> dbIds = new ArrayList<>();
+			for (PathwayResolution resolution : chunk) {
+				if (resolution.needsGkPathway()) {
+					dbIds.add(resolution.getTrPathway().getDBID());
+				}
+			}
+			Map<Long, GKInstance> gkPathways;
+			try (Metrics.Timer timer = Metrics.phase(Metrics.GK_LOOKUP)) {
+				gkPathways = new PathwayResolver(dba, this.chunkSize).resolve(dbIds);
+			}
+			try (Metrics.Timer timer = Metrics.phase(Metrics.PRELOAD)) {
+				new PathwayPreloader(dba, this.chunkSize)
+					.preload(gkPathways.values(), ReactomeJavaConstants.modified, "doi");
+			}
+			for (PathwayResolution resolution : chunk) {
+				try (Metrics.Timer timer = Metrics.phase(Metrics.VERIFICATION)) {
+					resolution.resolveGkPathway(gkPathways.get(resolution.getTrPathway().getDBID()));
+				}
+			}
+			return chunk;
+		} finally {
+			this.idleAdaptors.add(dba);
+		}
+	}
+
+	private MySQLAdaptor borrowAdaptor() throws Exception {
+		MySQLAdaptor dba = this.idleAdaptors.poll();
+		if (dba == null) {
+			dba = this.gkAdaptorFactory.call();
+			this.openedAdaptors.add(dba);
+		}
+		return dba;
+	}
+
+	private static List<PathwayResolution> getChunk(Future<List<PathwayResolution>> chunk) throws Exception {
+		try {
+			return chunk.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static class ResolverThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "gk-resolver-" + this.threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
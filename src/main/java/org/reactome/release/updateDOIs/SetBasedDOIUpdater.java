@@ -0,0 +1,520 @@
+package org.reactome.release.updateDOIs;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.model.ReactomeJavaConstants;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.InvalidAttributeException;
+import org.gk.schema.SchemaClass;
+
+/**
+ * Alternative to the instance-by-instance loop in UpdateDOIs that works directly on the Pathway, DatabaseObject and
+ * StableIdentifier tables.  The new DOIs of all candidate pathways are computed from one joined query per database
+ * and written with set-based UPDATE ... JOIN and INSERT ... SELECT statements against a temporary table.
+ *
+ * The decisions made (report whitelist, Test Reactome/GK Central verification) are the same as the instance loop's.
+ */
+public class SetBasedDOIUpdater {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final String DOI_UPDATE_TABLE = "tmp_doi_update";
+
+	private final MySQLAdaptor dbaTestReactome;
+	private final MySQLAdaptor dbaGkCentral;
+	private final CandidateSelector candidateSelector;
+	private final int chunkSize;
+	private final boolean deltaMode;
+	private ShardSpec shard;
+
+	/**
+	 * @param chunkSize Number of DB_IDs per lookup query
+	 * @param deltaMode True to leave alone the GK Central pathways that already have their new DOI (the Test Reactome
+	 * candidates never have one)
+	 */
+	public SetBasedDOIUpdater(MySQLAdaptor dbaTestReactome, MySQLAdaptor dbaGkCentral,
+		CandidateSelector candidateSelector, int chunkSize, boolean deltaMode) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		this.dbaTestReactome = dbaTestReactome;
+		this.dbaGkCentral = dbaGkCentral;
+		this.candidateSelector = candidateSelector;
+		this.chunkSize = chunkSize;
+		this.deltaMode = deltaMode;
+	}
+
+	// Only updates the candidate pathways whose DB_ID is in the shard (see ShardRunner)
+	public void setShard(ShardSpec shard) {
+		this.shard = shard;
+	}
+
+	/**
+	 * A DOI to assign to a Test Reactome pathway and, if it was found and verified, its GK Central counterpart.
+	 */
+	public static final class Assignment {
+		private final PathwayDOIRecord trPathway;
+		private final PathwayDOIRecord gkPathway;
+		private final String doi;
+
+		Assignment(PathwayDOIRecord trPathway, PathwayDOIRecord gkPathway, String doi) {
+			this.trPathway = trPathway;
+			this.gkPathway = gkPathway;
+			this.doi = doi;
+		}
+
+		public PathwayDOIRecord getTrPathway() {
+			return this.trPathway;
+		}
+
+		// Null if the pathway could not be found in GK Central
+		public PathwayDOIRecord getGkPathway() {
+			return this.gkPathway;
+		}
+
+		public String getDoi() {
+			return this.doi;
+		}
+	}
+
+	/**
+	 * What update did: the number of candidate pathways, the report entries they matched (or not) and the DOIs
+	 * assigned.
+	 */
+	static final class Outcome {
+		private final int candidateCount;
+		private final List<String> updated;
+		private final List<String> notUpdated;
+		private final List<Assignment> assignments;
+
+		Outcome(int candidateCount, List<String> updated, List<String> notUpdated, List<Assignment> assignments) {
+			this.candidateCount = candidateCount;
+			this.updated = updated;
+			this.notUpdated = notUpdated;
+			this.assignments = assignments;
+		}
+
+		int getCandidateCount() {
+			return this.candidateCount;
+		}
+
+		// DOIs of the candidates listed in the report
+		List<String> getUpdated() {
+			return this.updated;
+		}
+
+		// "doi:display name" of the candidates not listed in the report
+		List<String> getNotUpdated() {
+			return this.notUpdated;
+		}
+
+		List<Assignment> getAssignments() {
+			return this.assignments;
+		}
+
+		List<String> getAssignedDOIs() {
+			List<String> assignedDOIs = new ArrayList<>();
+			for (Assignment assignment : this.assignments) {
+				assignedDOIs.add(assignment.getDoi());
+			}
+			return assignedDOIs;
+		}
+	}
+
+	/**
+	 * Finds the pathways needing a DOI and, outside of test mode, writes their new DOIs and 'modified' InstanceEdits
+	 * to both databases.  GK Central is committed before Test Reactome is written; in test mode nothing is written and
+	 * GK Central is left for the caller to roll back.
+	 *
+	 * @return DOIs assigned (or, in test mode, that would be assigned) to Test Reactome pathways
+	 * @throws Exception Thrown if a query fails
+	 */
+	public List<String> findAndUpdateDOIs(
+		GKInstance instanceEditTR,
+		GKInstance instanceEditGK,
+		Map<String, ExpectedDOI> expectedUpdatedDOIs,
+		boolean testMode,
+		DOIReportWriter testReport
+	) throws Exception {
+
+		Outcome outcome = update(instanceEditTR, instanceEditGK, expectedUpdatedDOIs, testMode, testReport);
+		if (outcome.getCandidateCount() == 0) {
+			return new ArrayList<>();
+		}
+		try (Metrics.Timer timer = Metrics.phase(Metrics.RECONCILIATION)) {
+			ReportTests.expectedUpdatesTests(expectedUpdatedDOIs, outcome.getUpdated(), outcome.getNotUpdated(),
+				outcome.getCandidateCount(), UpdateDOIs.REACTOME_DOI_PREFIX);
+		}
+		return outcome.getAssignedDOIs();
+	}
+
+	/**
+	 * The selection, verification and writes of findAndUpdateDOIs without the report reconciliation, which a shard
+	 * worker leaves to the merge of all shards' results.
+	 *
+	 * @param testReport Receives the DOIs that can be updated in test mode (may be null)
+	 * @return What was updated (or, in test mode, would be)
+	 * @throws Exception Thrown if a query fails
+	 */
+	Outcome update(
+		GKInstance instanceEditTR,
+		GKInstance instanceEditGK,
+		Map<String, ExpectedDOI> expectedUpdatedDOIs,
+		boolean testMode,
+		DOIReportWriter testReport
+	) throws Exception {
+
+		List<PathwayDOIRecord> trPathways;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.CANDIDATE_FETCH)) {
+			trPathways = this.candidateSelector.selectRecords(this.dbaTestReactome);
+		}
+		logger.info("Found " + trPathways.size() + " Pathway instances that need a DOI");
+		if (this.shard != null) {
+			List<PathwayDOIRecord> shardPathways = new ArrayList<>();
+			for (PathwayDOIRecord trPathway : trPathways) {
+				if (this.shard.contains(trPathway.getDbId())) {
+					shardPathways.add(trPathway);
+				}
+			}
+			trPathways = shardPathways;
+			logger.info(trPathways.size() + " of them are in shard " + this.shard);
+		}
+		if (trPathways.isEmpty()) {
+			logger.info("No DOIs to update");
+			return new Outcome(0, new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+		}
+
+		this.dbaGkCentral.startTransaction();
+		List<Long> dbIds = new ArrayList<>();
+		for (PathwayDOIRecord trPathway : trPathways) {
+			dbIds.add(trPathway.getDbId());
+		}
+		Map<Long, PathwayDOIRecord> gkPathways;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.GK_LOOKUP)) {
+			gkPathways = PathwayDOIRecord.fetchByDbIds(this.dbaGkCentral, dbIds, this.chunkSize);
+		}
+
+		List<String> updated = new ArrayList<>();
+		List<String> notUpdated = new ArrayList<>();
+		List<Assignment> assignments;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.VERIFICATION)) {
+			assignments = selectAssignments(trPathways, gkPathways, expectedUpdatedDOIs, testMode, updated, notUpdated);
+		}
+
+		Map<Long, String> trDOIs = new LinkedHashMap<>();
+		Map<Long, String> gkDOIs = new LinkedHashMap<>();
+		int upToDateGkCentralPathways = 0;
+		for (Assignment assignment : assignments) {
+			PathwayDOIRecord trPathway = assignment.getTrPathway();
+			PathwayDOIRecord gkPathway = assignment.getGkPathway();
+			trDOIs.put(trPathway.getDbId(), assignment.getDoi());
+			if (gkPathway != null) {
+				if (this.deltaMode && assignment.getDoi().equals(gkPathway.getDoi())) {
+					upToDateGkCentralPathways++;
+				} else {
+					gkDOIs.put(gkPathway.getDbId(), assignment.getDoi());
+				}
+			}
+		}
+		if (this.deltaMode) {
+			// Each pathway left alone saves setting its 'doi' and appending to its 'modified'
+			logger.info("Delta mode avoided " + upToDateGkCentralPathways * 2 + " attribute writes: " +
+				upToDateGkCentralPathways + " GK Central pathways already had their DOI");
+		}
+		if (!testMode) {
+			commitDOIs(gkDOIs, instanceEditGK, trDOIs, instanceEditTR);
+		}
+
+		for (Assignment assignment : assignments) {
+			String nameFromDb = assignment.getTrPathway().getName();
+			AuditJournal.record(testMode ? AuditJournal.Decision.WOULD_UPDATE : AuditJournal.Decision.UPDATED,
+				assignment.getDoi(), assignment.getTrPathway().getDbId(), nameFromDb);
+			if (assignment.getGkPathway() == null) {
+				continue;
+			}
+			if (!testMode) {
+				logger.info("Updated DOI: {} for {}", assignment.getDoi(), nameFromDb);
+			} else {
+				logger.info("TEST DOI: {},{}", assignment.getDoi(), nameFromDb);
+				if (testReport != null) {
+					testReport.write(assignment.getDoi(), nameFromDb, assignment.getTrPathway().getDbId());
+				}
+			}
+		}
+		return new Outcome(trPathways.size(), updated, notUpdated, assignments);
+	}
+
+	/**
+	 * Selects and verifies the pathways needing a DOI as findAndUpdateDOIs does outside of test mode, but only records
+	 * the changes in a plan instead of writing them.  Nothing is written to either database.
+	 *
+	 * @param expectedUpdatedDOIs Contents of the report of DOIs expected to be updated
+	 * @param releaseNumber Release the plan is made for
+	 * @return Plan of the DOI changes, in the order of the Test Reactome pathways
+	 * @throws Exception Thrown if a query fails
+	 */
+	public DOIChangePlan plan(Map<String, ExpectedDOI> expectedUpdatedDOIs, int releaseNumber) throws Exception {
+		List<PathwayDOIRecord> trPathways;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.CANDIDATE_FETCH)) {
+			trPathways = this.candidateSelector.selectRecords(this.dbaTestReactome);
+		}
+		logger.info("Found " + trPathways.size() + " Pathway instances that need a DOI");
+
+		List<Long> dbIds = new ArrayList<>();
+		for (PathwayDOIRecord trPathway : trPathways) {
+			dbIds.add(trPathway.getDbId());
+		}
+		Map<Long, PathwayDOIRecord> gkPathways;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.GK_LOOKUP)) {
+			gkPathways = PathwayDOIRecord.fetchByDbIds(this.dbaGkCentral, dbIds, this.chunkSize);
+		}
+
+		List<String> updated = new ArrayList<>();
+		List<String> notUpdated = new ArrayList<>();
+		List<Assignment> assignments;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.VERIFICATION)) {
+			assignments = selectAssignments(trPathways, gkPathways, expectedUpdatedDOIs, false, updated, notUpdated);
+		}
+
+		List<DOIChangePlan.Entry> entries = new ArrayList<>();
+		for (Assignment assignment : assignments) {
+			PathwayDOIRecord gkPathway = assignment.getGkPathway();
+			entries.add(new DOIChangePlan.Entry(assignment.getTrPathway().getDbId(), assignment.getDoi(),
+				DOIChangePlan.PathwayState.of(assignment.getTrPathway()),
+				gkPathway != null ? DOIChangePlan.PathwayState.of(gkPathway) : null));
+			logger.info("Planned DOI: " + assignment.getDoi() + " for " + assignment.getTrPathway().getName());
+		}
+
+		try (Metrics.Timer timer = Metrics.phase(Metrics.RECONCILIATION)) {
+			ReportTests.expectedUpdatesTests(
+				expectedUpdatedDOIs, updated, notUpdated, trPathways.size(), UpdateDOIs.REACTOME_DOI_PREFIX);
+		}
+		return new DOIChangePlan(
+			releaseNumber, this.dbaTestReactome.getDBName(), this.dbaGkCentral.getDBName(), entries);
+	}
+
+	/**
+	 * Writes the DOI changes of a plan to both databases, without selecting or verifying the pathways again.  The
+	 * pathways are first read by DB_ID and compared with the checksums of the plan: if any has changed since the plan
+	 * was made, nothing is written.  A pathway that already has its new DOI (e.g. the plan is applied a second time)
+	 * is left alone.  GK Central is committed before Test Reactome is written.
+	 *
+	 * @param plan Plan made by plan
+	 * @return DOIs of the plan, all of which the pathways now have
+	 * @throws IllegalStateException Thrown if pathways changed since the plan was made
+	 * @throws Exception Thrown if a query fails
+	 */
+	public List<String> apply(DOIChangePlan plan, GKInstance instanceEditTR, GKInstance instanceEditGK)
+		throws Exception {
+
+		List<Long> dbIds = new ArrayList<>();
+		for (DOIChangePlan.Entry entry : plan.getEntries()) {
+			dbIds.add(entry.getDbId());
+		}
+		this.dbaGkCentral.startTransaction();
+		Map<Long, PathwayDOIRecord> trPathways;
+		Map<Long, PathwayDOIRecord> gkPathways;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.PLAN_CHECK)) {
+			trPathways = PathwayDOIRecord.fetchByDbIds(this.dbaTestReactome, dbIds, this.chunkSize);
+			gkPathways = PathwayDOIRecord.fetchByDbIds(this.dbaGkCentral, dbIds, this.chunkSize);
+		}
+
+		Map<Long, String> trDOIs = new LinkedHashMap<>();
+		Map<Long, String> gkDOIs = new LinkedHashMap<>();
+		List<String> changedPathways = new ArrayList<>();
+		for (DOIChangePlan.Entry entry : plan.getEntries()) {
+			planChange(entry, entry.getTestReactome(), trPathways.get(entry.getDbId()), this.dbaTestReactome, trDOIs,
+				changedPathways);
+			if (entry.getGkCentral() != null) {
+				planChange(entry, entry.getGkCentral(), gkPathways.get(entry.getDbId()), this.dbaGkCentral, gkDOIs,
+					changedPathways);
+			}
+		}
+		if (!changedPathways.isEmpty()) {
+			changedPathways.forEach(logger::error);
+			throw new IllegalStateException(changedPathways.size() + " pathways changed since the plan was made; " +
+				"nothing was written.  Make a new plan.");
+		}
+		int upToDateCount = plan.getEntries().size() - trDOIs.size();
+		if (upToDateCount > 0) {
+			logger.info(upToDateCount + " Test Reactome pathways of the plan already have their DOI");
+		}
+
+		commitDOIs(gkDOIs, instanceEditGK, trDOIs, instanceEditTR);
+		return plan.getDOIs();
+	}
+
+	// GK Central is committed before anything is written to Test Reactome, which has no transaction: if the update
+	// fails, Test Reactome never keeps DOIs that GK Central rolled back, and a rerun selects the pathways again
+	private void commitDOIs(Map<Long, String> gkDOIs, GKInstance instanceEditGK, Map<Long, String> trDOIs,
+		GKInstance instanceEditTR) throws Exception {
+
+		try (Metrics.Timer timer = Metrics.phase(Metrics.WRITE)) {
+			applyDOIs(this.dbaGkCentral, gkDOIs, instanceEditGK);
+		}
+		try (Metrics.Timer phaseTimer = Metrics.phase(Metrics.COMMIT);
+			Metrics.Timer timer = Metrics.roundTrip(this.dbaGkCentral, Metrics.TRANSACTION)) {
+			this.dbaGkCentral.commit();
+		}
+		try (Metrics.Timer timer = Metrics.phase(Metrics.WRITE)) {
+			applyDOIs(this.dbaTestReactome, trDOIs, instanceEditTR);
+		}
+	}
+
+	// Queues the DOI of a planned pathway to be written to a database, unless the pathway already has it, or records
+	// why the pathway can no longer be changed as planned
+	private static void planChange(DOIChangePlan.Entry entry, DOIChangePlan.PathwayState planned,
+		PathwayDOIRecord current, MySQLAdaptor dba, Map<Long, String> doisByDbId, List<String> changedPathways) {
+
+		if (current == null) {
+			changedPathways.add("Pathway " + entry.getDbId() + " (" + planned.getDisplayName() + ") is no longer in " +
+				dba.getDBName());
+		} else if (entry.getDoi().equals(current.getDoi())) {
+			logger.debug(dba.getDBName() + " already has DOI " + entry.getDoi() + " for " + current);
+		} else if (!planned.matches(current)) {
+			changedPathways.add("Pathway " + current + " in " + dba.getDBName() + " changed since the plan was made " +
+				"(doi was '" + planned.getDoi() + "', is '" + current.getDoi() + "')");
+		} else {
+			doisByDbId.put(entry.getDbId(), entry.getDoi());
+		}
+	}
+
+	/**
+	 * Decides which pathways get a new DOI, in the same way as the instance-by-instance loop: a pathway must be
+	 * listed in the report with the same name (unless in test mode), and its GK Central counterpart, if found, must
+	 * have the same DB_ID and display name.
+	 *
+	 * @param trPathways Test Reactome pathways needing a DOI
+	 * @param gkPathways GK Central pathways by DB_ID
+	 * @param expectedUpdatedDOIs Contents of the report of DOIs expected to be updated
+	 * @param testMode True if pathways missing from the report should still be considered
+	 * @param updated Receives the DOIs found in the report
+	 * @param notUpdated Receives "doi:name" for the DOIs not found in the report
+	 * @return DOIs to assign, in the order of the Test Reactome pathways
+	 */
+	public static List<Assignment> selectAssignments(
+		List<PathwayDOIRecord> trPathways,
+		Map<Long, PathwayDOIRecord> gkPathways,
+		Map<String, ExpectedDOI> expectedUpdatedDOIs,
+		boolean testMode,
+		List<String> updated,
+		List<String> notUpdated
+	) {
+		List<Assignment> assignments = new ArrayList<>();
+		for (PathwayDOIRecord trPathway : trPathways) {
+			if (trPathway.getStableId() == null) {
+				logger.error("No stable identifier found for " + trPathway + " in Test Reactome");
+				continue;
+			}
+			String nameFromDb = trPathway.getName();
+			String updatedDoi = UpdateDOIs.REACTOME_DOI_PREFIX + "/" + trPathway.getStableId();
+
+			if (expectedUpdatedDOIs.get(updatedDoi) != null &&
+				expectedUpdatedDOIs.get(updatedDoi).getDisplayName().equals(nameFromDb)) {
+				updated.add(updatedDoi);
+			} else {
+				notUpdated.add(updatedDoi + ":" + nameFromDb);
+				if (!testMode) {
+					AuditJournal.record(AuditJournal.Decision.NOT_IN_REPORT, updatedDoi, trPathway.getDbId(), nameFromDb);
+					continue;
+				}
+			}
+
+			PathwayDOIRecord gkPathway = gkPathways.get(trPathway.getDbId());
+			if (gkPathway != null) {
+				boolean verified = ReportTests.verifyDOIMatches(
+					trPathway.getDbId(), trPathway.getDisplayName(),
+					gkPathway.getDbId(), gkPathway.getDisplayName(),
+					updatedDoi
+				);
+				if (!verified) {
+					continue;
+				}
+			} else {
+				logger.error("Could not find attribute in gk_central");
+				AuditJournal.record(
+					AuditJournal.Decision.MISSING_IN_GK_CENTRAL, updatedDoi, trPathway.getDbId(), nameFromDb);
+			}
+			assignments.add(new Assignment(trPathway, gkPathway, updatedDoi));
+		}
+		return assignments;
+	}
+
+	// Loads the new DOIs into a temporary table, then sets them and appends the InstanceEdit to 'modified' in bulk
+	private void applyDOIs(MySQLAdaptor dba, Map<Long, String> doisByDbId, GKInstance instanceEdit)
+		throws SQLException, InvalidAttributeException {
+
+		if (doisByDbId.isEmpty()) {
+			return;
+		}
+
+		SchemaClass pathwayClass = dba.getSchema().getClassByName(ReactomeJavaConstants.Pathway);
+		String doiTable = pathwayClass.getAttribute(ReactomeJavaConstants.doi).getOrigin().getName();
+		String modifiedTable =
+			pathwayClass.getAttribute(ReactomeJavaConstants.modified).getOrigin().getName() + "_2_modified";
+
+		Connection connection = dba.getConnection();
+		try (Statement statement = connection.createStatement()) {
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.UPDATE)) {
+				statement.executeUpdate("DROP TEMPORARY TABLE IF EXISTS " + DOI_UPDATE_TABLE);
+			}
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.UPDATE)) {
+				statement.executeUpdate("CREATE TEMPORARY TABLE " + DOI_UPDATE_TABLE +
+					" (DB_ID INT UNSIGNED NOT NULL PRIMARY KEY, doi TEXT NOT NULL)");
+			}
+		}
+
+		List<Long> dbIds = new ArrayList<>(doisByDbId.keySet());
+		for (List<Long> chunk : Batches.partition(dbIds, this.chunkSize)) {
+			String sql = "INSERT INTO " + DOI_UPDATE_TABLE + " (DB_ID, doi) VALUES " +
+				String.join(", ", Collections.nCopies(chunk.size(), "(?, ?)"));
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				int index = 1;
+				for (Long dbId : chunk) {
+					statement.setLong(index++, dbId);
+					statement.setString(index++, doisByDbId.get(dbId));
+				}
+				try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.UPDATE)) {
+					statement.executeUpdate();
+				}
+			}
+		}
+
+		int updatedRows;
+		try (Statement statement = connection.createStatement();
+			Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.UPDATE)) {
+			updatedRows = statement.executeUpdate("UPDATE " + doiTable + " p JOIN " + DOI_UPDATE_TABLE +
+				" t ON t.DB_ID = p.DB_ID SET p.doi = t.doi");
+		}
+		Metrics.rowsWritten(dba, updatedRows);
+
+		String appendModifiedSql = "INSERT INTO " + modifiedTable +
+			" (DB_ID, modified_rank, modified, modified_class)" +
+			" SELECT t.DB_ID, COALESCE(MAX(m.modified_rank) + 1, 0), ?, ?" +
+			" FROM " + DOI_UPDATE_TABLE + " t LEFT JOIN " + modifiedTable + " m ON m.DB_ID = t.DB_ID" +
+			" GROUP BY t.DB_ID";
+		try (PreparedStatement statement = connection.prepareStatement(appendModifiedSql)) {
+			statement.setLong(1, instanceEdit.getDBID());
+			statement.setString(2, ReactomeJavaConstants.InstanceEdit);
+			try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.UPDATE)) {
+				Metrics.rowsWritten(dba, statement.executeUpdate());
+			}
+		}
+
+		try (Statement statement = connection.createStatement();
+			Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.UPDATE)) {
+			statement.executeUpdate("DROP TEMPORARY TABLE " + DOI_UPDATE_TABLE);
+		}
+		logger.info("Set " + updatedRows + " DOIs in " + dba.getDBName());
+	}
+}
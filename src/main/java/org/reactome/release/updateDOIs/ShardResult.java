@@ -0,0 +1,245 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a shard worker did (see ShardRunner), for the merge of all shards: the number of candidate pathways in the
+ * shard, the report entries they matched or not, and the DOIs assigned.  Stored as JSON lines: a header, one line per
+ * entry and a trailer with the number of entries, so a file cut short is recognized.
+ */
+public final class ShardResult {
+
+	private static final String FORMAT = "doi-shard-result";
+	private static final int VERSION = 1;
+
+	private final int releaseNumber;
+	private final ShardSpec shard;
+	private final boolean testMode;
+	private final String testReactomeName;
+	private final String gkCentralName;
+	private final int candidateCount;
+	private final List<String> updated;
+	private final List<String> notUpdated;
+	private final List<Assigned> assigned;
+
+	/**
+	 * @param updated DOIs of the candidates listed in the report
+	 * @param notUpdated "doi:display name" of the candidates not listed in the report
+	 * @param assigned DOIs assigned (or, in test mode, that would be assigned)
+	 */
+	public ShardResult(int releaseNumber, ShardSpec shard, boolean testMode, String testReactomeName,
+		String gkCentralName, int candidateCount, List<String> updated, List<String> notUpdated, List<Assigned> assigned) {
+		this.releaseNumber = releaseNumber;
+		this.shard = shard;
+		this.testMode = testMode;
+		this.testReactomeName = testReactomeName;
+		this.gkCentralName = gkCentralName;
+		this.candidateCount = candidateCount;
+		this.updated = Collections.unmodifiableList(new ArrayList<>(updated));
+		this.notUpdated = Collections.unmodifiableList(new ArrayList<>(notUpdated));
+		this.assigned = Collections.unmodifiableList(new ArrayList<>(assigned));
+	}
+
+	/**
+	 * A DOI assigned to a Test Reactome pathway.
+	 */
+	public static final class Assigned {
+		private final long dbId;
+		private final String doi;
+		private final String name;
+		private final boolean inGkCentral;
+
+		/**
+		 * @param name Name of the pathway, as written to the test mode report
+		 * @param inGkCentral True if the pathway was found (and verified) in GK Central; only those are listed in the
+		 * test mode report
+		 */
+		public Assigned(long dbId, String doi, String name, boolean inGkCentral) {
+			this.dbId = dbId;
+			this.doi = doi;
+			this.name = name;
+			this.inGkCentral = inGkCentral;
+		}
+
+		public long getDbId() {
+			return this.dbId;
+		}
+
+		public String getDoi() {
+			return this.doi;
+		}
+
+		public String getName() {
+			return this.name;
+		}
+
+		public boolean isInGkCentral() {
+			return this.inGkCentral;
+		}
+	}
+
+	public int getReleaseNumber() {
+		return this.releaseNumber;
+	}
+
+	public ShardSpec getShard() {
+		return this.shard;
+	}
+
+	public boolean isTestMode() {
+		return this.testMode;
+	}
+
+	public String getTestReactomeName() {
+		return this.testReactomeName;
+	}
+
+	public String getGkCentralName() {
+		return this.gkCentralName;
+	}
+
+	public int getCandidateCount() {
+		return this.candidateCount;
+	}
+
+	public List<String> getUpdated() {
+		return this.updated;
+	}
+
+	public List<String> getNotUpdated() {
+		return this.notUpdated;
+	}
+
+	public List<Assigned> getAssigned() {
+		return this.assigned;
+	}
+
+	/**
+	 * Writes the result to a temporary file and moves it into place, so a result file is always complete.
+	 *
+	 * @throws IOException Thrown if the file can not be written
+	 */
+	public void write(Path resultPath) throws IOException {
+		Path absoluteResultPath = resultPath.toAbsolutePath();
+		Path temporaryResultPath = Files.createTempFile(
+			absoluteResultPath.getParent(), absoluteResultPath.getFileName().toString(), ".tmp");
+		try {
+			int entryCount = 0;
+			try (BufferedWriter writer = Files.newBufferedWriter(temporaryResultPath, StandardCharsets.UTF_8)) {
+				Map<String, Object> header = new LinkedHashMap<>();
+				header.put("format", FORMAT);
+				header.put("version", VERSION);
+				header.put("release", this.releaseNumber);
+				header.put("shard", this.shard.toString());
+				header.put("testMode", this.testMode);
+				header.put("testReactome", this.testReactomeName);
+				header.put("gkCentral", this.gkCentralName);
+				header.put("candidates", this.candidateCount);
+				writeLine(writer, header);
+
+				for (String doi : this.updated) {
+					Map<String, Object> fields = new LinkedHashMap<>();
+					fields.put("type", "updated");
+					fields.put("doi", doi);
+					writeLine(writer, fields);
+					entryCount++;
+				}
+				for (String doiWithName : this.notUpdated) {
+					String[] doiAndName = doiWithName.split(":", 2);
+					Map<String, Object> fields = new LinkedHashMap<>();
+					fields.put("type", "notUpdated");
+					fields.put("doi", doiAndName[0]);
+					fields.put("displayName", doiAndName.length > 1 ? doiAndName[1] : null);
+					writeLine(writer, fields);
+					entryCount++;
+				}
+				for (Assigned assignedDOI : this.assigned) {
+					Map<String, Object> fields = new LinkedHashMap<>();
+					fields.put("type", "assigned");
+					fields.put("dbId", assignedDOI.getDbId());
+					fields.put("doi", assignedDOI.getDoi());
+					fields.put("displayName", assignedDOI.getName());
+					fields.put("inGkCentral", assignedDOI.isInGkCentral());
+					writeLine(writer, fields);
+					entryCount++;
+				}
+
+				Map<String, Object> trailer = new LinkedHashMap<>();
+				trailer.put("entries", entryCount);
+				writeLine(writer, trailer);
+			}
+			Files.move(temporaryResultPath, absoluteResultPath, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporaryResultPath);
+		}
+	}
+
+	/**
+	 * @param resultPath File written by write
+	 * @return The result
+	 * @throws IOException Thrown if the file can not be read
+	 * @throws IllegalArgumentException Thrown if the file is not a complete shard result
+	 */
+	public static ShardResult read(Path resultPath) throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(resultPath, StandardCharsets.UTF_8)) {
+			String headerLine = reader.readLine();
+			if (headerLine == null) {
+				throw new IllegalArgumentException(resultPath + " is empty");
+			}
+			Map<String, String> header = JsonLines.parse(headerLine);
+			if (!FORMAT.equals(header.get("format")) || !String.valueOf(VERSION).equals(header.get("version"))) {
+				throw new IllegalArgumentException(resultPath + " is not a version " + VERSION + " shard result");
+			}
+
+			List<String> updated = new ArrayList<>();
+			List<String> notUpdated = new ArrayList<>();
+			List<Assigned> assigned = new ArrayList<>();
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Map<String, String> fields = JsonLines.parse(line);
+				if (fields.containsKey("entries")) {
+					int entryCount = updated.size() + notUpdated.size() + assigned.size();
+					if (Integer.parseInt(fields.get("entries")) != entryCount || reader.readLine() != null) {
+						throw new IllegalArgumentException(resultPath + " does not end with the trailer of its " +
+							entryCount + " entries");
+					}
+					return new ShardResult(Integer.parseInt(header.get("release")), ShardSpec.parse(header.get("shard")),
+						Boolean.parseBoolean(header.get("testMode")), header.get("testReactome"), header.get("gkCentral"),
+						Integer.parseInt(header.get("candidates")), updated, notUpdated, assigned);
+				}
+				String type = String.valueOf(fields.get("type"));
+				switch (type) {
+					case "updated":
+						updated.add(fields.get("doi"));
+						break;
+					case "notUpdated":
+						notUpdated.add(fields.get("doi") + ":" + fields.get("displayName"));
+						break;
+					case "assigned":
+						assigned.add(new Assigned(Long.parseLong(fields.get("dbId")), fields.get("doi"),
+							fields.get("displayName"), Boolean.parseBoolean(fields.get("inGkCentral"))));
+						break;
+					default:
+						throw new IllegalArgumentException(resultPath + " has an entry of unknown type: " + line);
+				}
+			}
+			throw new IllegalArgumentException(resultPath + " has no trailer; it was not completely written");
+		}
+	}
+
+	private static void writeLine(BufferedWriter writer, Map<String, Object> fields) throws IOException {
+		writer.write(JsonLines.toJson(fields));
+		writer.newLine();
+	}
+}
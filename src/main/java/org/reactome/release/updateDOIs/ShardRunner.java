@@ -0,0 +1,397 @@
+package org.reactome.release.updateDOIs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+
+/**
+ * Runs the update for one shard of the Test Reactome pathways (see ShardSpec), so several worker processes, each with
+ * its own connections, can update disjoint slices of a large backfill.  Unlike UpdateDOIs, a runner holds its own
+ * adaptors and settings.  Each worker uses the set-based engine and commits its own GK Central transaction.
+ *
+ * Workers coordinate through a shared shard directory:
+ *
+ * - shard-NAME.lease is locked by the worker running the shard for as long as it runs.  A worker does not start if
+ *   the lease is held, or if another running worker's shard or a finished shard of the same release overlaps its
+ *   own.  A lease left by a worker that died is not locked and is taken over.
+ * - shard-NAME.result records what the worker did (see ShardResult).  A shard that already has a result for the
+ *   release and mode is not run again.  A shard that failed has no result and is run again when the backfill is
+ *   restarted with the same shards: each worker commits GK Central before writing Test Reactome, so the pathways
+ *   whose Test Reactome DOIs were not written are selected again, and those already committed in GK Central are
+ *   written again (or, in delta mode, left alone).
+ *
+ * Once all shards are done, merge checks their results and reconciles them with the report as one run would.
+ * File locks are only reliable on a local file system; workers on several machines need a shard directory on storage
+ * that supports them.
+ */
+public class ShardRunner {
+
+	private static final Logger logger = LogManager.getLogger();
+	private static final Logger warningsLog = LogManager.getLogger("warningsLog");
+	private static final String SHARD_FILE_PREFIX = "shard-";
+	private static final String LEASE_EXTENSION = ".lease";
+	private static final String RESULT_EXTENSION = ".result";
+
+	private final MySQLAdaptor dbaTestReactome;
+	private final MySQLAdaptor dbaGkCentral;
+	private final CandidateSelector candidateSelector;
+	private final int chunkSize;
+	private final boolean deltaMode;
+	private final Path shardDirectory;
+
+	/**
+	 * @param chunkSize Number of DB_IDs per lookup query
+	 * @param deltaMode True to leave alone the GK Central pathways that already have their new DOI
+	 * @param shardDirectory Directory shared by the workers for their leases and results
+	 */
+	public ShardRunner(MySQLAdaptor dbaTestReactome, MySQLAdaptor dbaGkCentral, CandidateSelector candidateSelector,
+		int chunkSize, boolean deltaMode, Path shardDirectory) {
+		this.dbaTestReactome = dbaTestReactome;
+		this.dbaGkCentral = dbaGkCentral;
+		this.candidateSelector = candidateSelector;
+		this.chunkSize = chunkSize;
+		this.deltaMode = deltaMode;
+		this.shardDirectory = shardDirectory;
+	}
+
+	/**
+	 * Updates (outside of test mode) the pathways of the shard and commits GK Central, then records the result.
+	 *
+	 * @param shard Pathways to update
+	 * @param personId DB_ID of the Person the InstanceEdits are created for
+	 * @param expectedUpdatedDOIs Contents of the report of DOIs expected to be updated
+	 * @param releaseNumber Current release
+	 * @param testMode True to only find the DOIs that would be updated
+	 * @return Result of the shard (a previous run's, if the shard was already run)
+	 * @throws IllegalStateException Thrown if the shard is being run, or overlaps a shard being run or already run
+	 * @throws Exception Thrown if the update fails (GK Central is rolled back)
+	 */
+	public ShardResult run(ShardSpec shard, long personId, Map<String, ExpectedDOI> expectedUpdatedDOIs,
+		int releaseNumber, boolean testMode) throws Exception {
+
+		Files.createDirectories(this.shardDirectory);
+		try (Lease lease = Lease.acquire(this.shardDirectory, shard)) {
+			checkDisjoint(shard, releaseNumber);
+
+			Path resultPath = getResultPath(this.shardDirectory, shard);
+			if (Files.exists(resultPath)) {
+				ShardResult previousResult = ShardResult.read(resultPath);
+				if (previousResult.getReleaseNumber() == releaseNumber && previousResult.isTestMode() == testMode) {
+					logger.info("Shard " + shard + " was already run (" + resultPath + "); not running it again");
+					return previousResult;
+				}
+			}
+			if (!this.dbaGkCentral.supportsTransactions()) {
+				throw new IllegalStateException("Unable to open transaction with GK Central");
+			}
+
+			logger.info("Running shard " + shard + (testMode ? " in test mode" : ""));
+			GKInstance instanceEditTR = null;
+			GKInstance instanceEditGK = null;
+			if (!testMode) {
+				String creatorFile = "org.reactome.release.updateDOIs.Main";
+				instanceEditTR = UpdateDOIs.createInstanceEdit(this.dbaTestReactome, personId, creatorFile);
+				instanceEditGK = UpdateDOIs.createInstanceEdit(this.dbaGkCentral, personId, creatorFile);
+			}
+			SetBasedDOIUpdater updater = new SetBasedDOIUpdater(
+				this.dbaTestReactome, this.dbaGkCentral, this.candidateSelector, this.chunkSize, this.deltaMode);
+			updater.setShard(shard);
+			SetBasedDOIUpdater.Outcome outcome;
+			try {
+				// Outside of test mode, update commits GK Central itself before writing Test Reactome
+				outcome = updater.update(instanceEditTR, instanceEditGK, expectedUpdatedDOIs, testMode, null);
+				if (testMode) {
+					this.dbaGkCentral.rollback();
+				}
+			} catch (Exception e) {
+				this.dbaGkCentral.rollback();
+				throw e;
+			}
+
+			List<ShardResult.Assigned> assigned = new ArrayList<>();
+			for (SetBasedDOIUpdater.Assignment assignment : outcome.getAssignments()) {
+				assigned.add(new ShardResult.Assigned(assignment.getTrPathway().getDbId(), assignment.getDoi(),
+					assignment.getTrPathway().getName(), assignment.getGkPathway() != null));
+			}
+			ShardResult result = new ShardResult(releaseNumber, shard, testMode, this.dbaTestReactome.getDBName(),
+				this.dbaGkCentral.getDBName(), outcome.getCandidateCount(), outcome.getUpdated(), outcome.getNotUpdated(),
+				assigned);
+			result.write(resultPath);
+			logger.info("Shard " + shard + " done: " + assigned.size() + " DOIs " +
+				(testMode ? "can be updated" : "updated") + "; result written to " + resultPath);
+			return result;
+		}
+	}
+
+	// The shards of the running workers and the finished shards of the release must not overlap the shard
+	private void checkDisjoint(ShardSpec shard, int releaseNumber) throws IOException {
+		for (ShardSpec runningShard : Lease.getRunningShards(this.shardDirectory)) {
+			if (!runningShard.equals(shard) && runningShard.overlaps(shard)) {
+				throw new IllegalStateException("Shard " + shard + " overlaps shard " + runningShard + ", which is " +
+					"being run");
+			}
+		}
+		for (ShardResult result : readResults(this.shardDirectory)) {
+			if (result.getReleaseNumber() == releaseNumber && !result.getShard().equals(shard) &&
+				result.getShard().overlaps(shard)) {
+				throw new IllegalStateException("Shard " + shard + " overlaps shard " + result.getShard() + ", which " +
+					"was already run; remove its result from " + this.shardDirectory + " to use other shards");
+			}
+		}
+	}
+
+	/**
+	 * Merges the results of all shards: checks that they are for the release, the same databases and mode, and do not
+	 * overlap, and that no shard is still running, then reconciles them with the report.  In test mode, also writes
+	 * the list of DOIs that can be updated (in DB_ID order) as a single run would.
+	 *
+	 * @param shardDirectory Directory the workers wrote their results to
+	 * @param expectedUpdatedDOIs Contents of the report of DOIs expected to be updated
+	 * @param releaseNumber Current release
+	 * @param testReport Receives the DOIs that can be updated, and is committed, if the shards ran in test mode (may be
+	 * null)
+	 * @return DOIs assigned (or, in test mode, that would be assigned) by all shards, in DB_ID order
+	 * @throws IllegalStateException Thrown if there are no results, a shard is running, or the results do not match
+	 * @throws IOException Thrown if a result can not be read or the test report can not be written
+	 */
+	public static List<String> merge(Path shardDirectory, Map<String, ExpectedDOI> expectedUpdatedDOIs,
+		int releaseNumber, DOIReportWriter testReport) throws IOException {
+
+		List<ShardSpec> runningShards = Lease.getRunningShards(shardDirectory);
+		if (!runningShards.isEmpty()) {
+			throw new IllegalStateException("Shards " + runningShards + " are still running");
+		}
+		List<ShardResult> results = new ArrayList<>();
+		for (ShardResult result : readResults(shardDirectory)) {
+			if (result.getReleaseNumber() == releaseNumber) {
+				results.add(result);
+			} else {
+				logger.info("Ignoring the result of shard " + result.getShard() + " for release " +
+					result.getReleaseNumber());
+			}
+		}
+		if (results.isEmpty()) {
+			throw new IllegalStateException("No shard results for release " + releaseNumber + " in " + shardDirectory);
+		}
+
+		ShardResult first = results.get(0);
+		for (ShardResult result : results) {
+			if (result.isTestMode() != first.isTestMode() ||
+				!result.getTestReactomeName().equals(first.getTestReactomeName()) ||
+				!result.getGkCentralName().equals(first.getGkCentralName())) {
+				throw new IllegalStateException("Shard " + result.getShard() + " was run " + describe(result) +
+					" but shard " + first.getShard() + " " + describe(first));
+			}
+			for (ShardResult other : results) {
+				if (other != result && other.getShard().overlaps(result.getShard())) {
+					throw new IllegalStateException("Shards " + result.getShard() + " and " + other.getShard() +
+						" overlap");
+				}
+			}
+		}
+		checkCoverage(results);
+
+		int candidateCount = 0;
+		List<String> updated = new ArrayList<>();
+		List<String> notUpdated = new ArrayList<>();
+		List<ShardResult.Assigned> assigned = new ArrayList<>();
+		for (ShardResult result : results) {
+			candidateCount += result.getCandidateCount();
+			updated.addAll(result.getUpdated());
+			notUpdated.addAll(result.getNotUpdated());
+			assigned.addAll(result.getAssigned());
+		}
+		assigned.sort(Comparator.comparingLong(ShardResult.Assigned::getDbId));
+		logger.info("Merged " + results.size() + " shards: " + candidateCount + " pathways needing a DOI, " +
+			assigned.size() + " DOIs " + (first.isTestMode() ? "that can be updated" : "updated"));
+
+		List<String> assignedDOIs = new ArrayList<>();
+		for (ShardResult.Assigned assignedDOI : assigned) {
+			assignedDOIs.add(assignedDOI.getDoi());
+			if (first.isTestMode() && testReport != null && assignedDOI.isInGkCentral()) {
+				testReport.write(assignedDOI.getDoi(), assignedDOI.getName(), assignedDOI.getDbId());
+			}
+		}
+		try (Metrics.Timer timer = Metrics.phase(Metrics.RECONCILIATION)) {
+			ReportTests.expectedUpdatesTests(
+				expectedUpdatedDOIs, updated, notUpdated, candidateCount, UpdateDOIs.REACTOME_DOI_PREFIX);
+		}
+		if (first.isTestMode() && testReport != null) {
+			// Only a complete merge replaces the list of DOIs that can be updated
+			testReport.commit();
+			logger.info("Wrote " + testReport.getLineCount() + " DOIs that can be updated");
+		}
+		return assignedDOIs;
+	}
+
+	// Warns about the modulo shards that were not run; the coverage of range shards can not be known
+	private static void checkCoverage(List<ShardResult> results) {
+		TreeSet<Integer> missingIndexes = new TreeSet<>();
+		int count = results.get(0).getShard().getCount();
+		for (int index = 0; index < count; index++) {
+			missingIndexes.add(index);
+		}
+		for (ShardResult result : results) {
+			ShardSpec shard = result.getShard();
+			if (!shard.isModulo() || shard.getCount() != count) {
+				logger.info("The shards are not all modulo the same count; make sure they cover every DB_ID");
+				return;
+			}
+			missingIndexes.remove(shard.getIndex());
+		}
+		for (int missingIndex : missingIndexes) {
+			warningsLog.warn("Shard " + ShardSpec.modulo(missingIndex, count) + " was not run; its pathways were not " +
+				"updated");
+		}
+	}
+
+	private static String describe(ShardResult result) {
+		return (result.isTestMode() ? "in test mode" : "") + " on " + result.getTestReactomeName() + " and " +
+			result.getGkCentralName();
+	}
+
+	static Path getResultPath(Path shardDirectory, ShardSpec shard) {
+		return shardDirectory.resolve(SHARD_FILE_PREFIX + shard.getName() + RESULT_EXTENSION);
+	}
+
+	static Path getLeasePath(Path shardDirectory, ShardSpec shard) {
+		return shardDirectory.resolve(SHARD_FILE_PREFIX + shard.getName() + LEASE_EXTENSION);
+	}
+
+	private static List<ShardResult> readResults(Path shardDirectory) throws IOException {
+		List<ShardResult> results = new ArrayList<>();
+		for (Path resultPath : listShardFiles(shardDirectory, RESULT_EXTENSION)) {
+			results.add(ShardResult.read(resultPath));
+		}
+		return results;
+	}
+
+	private static List<Path> listShardFiles(Path shardDirectory, String extension) throws IOException {
+		List<Path> shardFiles = new ArrayList<>();
+		if (!Files.isDirectory(shardDirectory)) {
+			return shardFiles;
+		}
+		try (DirectoryStream<Path> paths = Files.newDirectoryStream(shardDirectory, SHARD_FILE_PREFIX + "*" + extension)) {
+			paths.forEach(shardFiles::add);
+		}
+		shardFiles.sort(Comparator.naturalOrder());
+		return shardFiles;
+	}
+
+	/**
+	 * The lock a worker holds on its shard's lease file while it runs.  The file names the shard and its owner (the
+	 * process and host), so other workers can tell which shards are running.
+	 */
+	static final class Lease implements Closeable {
+		private final Path leasePath;
+		private final FileChannel channel;
+		private final FileLock lock;
+
+		private Lease(Path leasePath, FileChannel channel, FileLock lock) {
+			this.leasePath = leasePath;
+			this.channel = channel;
+			this.lock = lock;
+		}
+
+		static Lease acquire(Path shardDirectory, ShardSpec shard) throws IOException {
+			Path leasePath = getLeasePath(shardDirectory, shard);
+			FileChannel channel = FileChannel.open(leasePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+			FileLock lock;
+			try {
+				lock = tryLock(channel);
+				if (lock == null) {
+					throw new IllegalStateException("Shard " + shard + " is being run: " + readLease(leasePath));
+				}
+				Map<String, Object> fields = new LinkedHashMap<>();
+				fields.put("shard", shard.toString());
+				fields.put("owner", ManagementFactory.getRuntimeMXBean().getName());
+				fields.put("started", Instant.now().toString());
+				channel.truncate(0);
+				channel.write(ByteBuffer.wrap((JsonLines.toJson(fields) + "\n").getBytes(StandardCharsets.UTF_8)), 0);
+				channel.force(false);
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+			return new Lease(leasePath, channel, lock);
+		}
+
+		// Shards whose lease is locked by a running worker (other than this process's own leases)
+		static List<ShardSpec> getRunningShards(Path shardDirectory) throws IOException {
+			List<ShardSpec> runningShards = new ArrayList<>();
+			for (Path leasePath : listShardFiles(shardDirectory, LEASE_EXTENSION)) {
+				try (FileChannel channel = FileChannel.open(leasePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+					FileLock lock = tryLock(channel);
+					if (lock != null) {
+						// Left by a worker that is no longer running
+						lock.release();
+						continue;
+					}
+				} catch (NoSuchFileException e) {
+					// Released since it was listed
+					continue;
+				}
+				String shard = readLease(leasePath).get("shard");
+				if (shard != null) {
+					runningShards.add(ShardSpec.parse(shard));
+				}
+			}
+			return runningShards;
+		}
+
+		// Null if the lock is held by another process, or by this one through another channel
+		private static FileLock tryLock(FileChannel channel) throws IOException {
+			try {
+				return channel.tryLock();
+			} catch (OverlappingFileLockException e) {
+				return null;
+			}
+		}
+
+		private static Map<String, String> readLease(Path leasePath) throws IOException {
+			try {
+				String lease = new String(Files.readAllBytes(leasePath), StandardCharsets.UTF_8).trim();
+				return lease.isEmpty() ? new LinkedHashMap<>() : JsonLines.parse(lease);
+			} catch (NoSuchFileException | IllegalArgumentException e) {
+				return new LinkedHashMap<>();
+			}
+		}
+
+		// Removes the lease file before releasing the lock, so no other worker sees a lease that is not held
+		@Override
+		public void close() throws IOException {
+			try {
+				Files.deleteIfExists(this.leasePath);
+			} finally {
+				try {
+					this.lock.release();
+				} finally {
+					this.channel.close();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package org.reactome.release.updateDOIs;
+
+import java.math.BigInteger;
+import java.util.Objects;
+
+/**
+ * The slice of the Test Reactome pathways (by DB_ID) one shard worker updates.  Two forms are accepted:
+ *
+ * - mod:INDEX/COUNT - the pathways whose DB_ID modulo COUNT is INDEX (0 to COUNT - 1); COUNT workers with the
+ *   indexes 0 to COUNT - 1 cover every pathway
+ * - range:FROM-TO - the pathways with FROM &lt;= DB_ID &lt; TO
+ */
+public final class ShardSpec {
+
+	private static final String MOD = "mod";
+	private static final String RANGE = "range";
+
+	private final String kind;
+	// Index and count of a modulo shard, or the bounds of a range shard
+	private final long first;
+	private final long second;
+
+	private ShardSpec(String kind, long first, long second) {
+		this.kind = kind;
+		this.first = first;
+		this.second = second;
+	}
+
+	/**
+	 * @param spec 'mod:INDEX/COUNT' or 'range:FROM-TO'
+	 * @return The shard
+	 * @throws IllegalArgumentException Thrown if the spec is not in either form
+	 */
+	public static ShardSpec parse(String spec) {
+		String[] kindAndValue = spec.trim().split(":", 2);
+		try {
+			if (kindAndValue.length == 2 && kindAndValue[0].equalsIgnoreCase(MOD)) {
+				String[] indexAndCount = kindAndValue[1].split("/", 2);
+				return modulo(Integer.parseInt(indexAndCount[0].trim()), Integer.parseInt(indexAndCount[1].trim()));
+			}
+			if (kindAndValue.length == 2 && kindAndValue[0].equalsIgnoreCase(RANGE)) {
+				String[] bounds = kindAndValue[1].split("-", 2);
+				return range(Long.parseLong(bounds[0].trim()), Long.parseLong(bounds[1].trim()));
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Invalid shard '" + spec + "': expected mod:INDEX/COUNT or range:FROM-TO", e);
+		}
+		throw new IllegalArgumentException("Invalid shard '" + spec + "': expected mod:INDEX/COUNT or range:FROM-TO");
+	}
+
+	public static ShardSpec modulo(int index, int count) {
+		if (count < 1 || index < 0 || index >= count) {
+			throw new IllegalArgumentException("Invalid shard mod:" + index + "/" + count +
+				": the index must be from 0 to the count - 1");
+		}
+		return new ShardSpec(MOD, index, count);
+	}
+
+	public static ShardSpec range(long from, long to) {
+		if (from >= to) {
+			throw new IllegalArgumentException("Invalid shard range:" + from + "-" + to + ": it is empty");
+		}
+		return new ShardSpec(RANGE, from, to);
+	}
+
+	public boolean contains(long dbId) {
+		if (isModulo()) {
+			return Math.floorMod(dbId, this.second) == this.first;
+		}
+		return dbId >= this.first && dbId < this.second;
+	}
+
+	/**
+	 * @return True if a DB_ID can be in both shards
+	 */
+	public boolean overlaps(ShardSpec other) {
+		if (isModulo() && other.isModulo()) {
+			// x = i (mod a) and x = j (mod b) have a common solution if and only if i = j (mod gcd(a, b))
+			long gcd = BigInteger.valueOf(this.second).gcd(BigInteger.valueOf(other.second)).longValue();
+			return this.first % gcd == other.first % gcd;
+		}
+		if (!isModulo() && !other.isModulo()) {
+			return this.first < other.second && other.first < this.second;
+		}
+		ShardSpec modulo = isModulo() ? this : other;
+		ShardSpec range = isModulo() ? other : this;
+		if (range.second - range.first >= modulo.second) {
+			return true;
+		}
+		for (long dbId = range.first; dbId < range.second; dbId++) {
+			if (modulo.contains(dbId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean isModulo() {
+		return this.kind.equals(MOD);
+	}
+
+	// Number of modulo shards covering every pathway (for a modulo shard)
+	public int getCount() {
+		return isModulo() ? (int) this.second : 0;
+	}
+
+	// Index of a modulo shard
+	public int getIndex() {
+		return isModulo() ? (int) this.first : 0;
+	}
+
+	// For file names, e.g. mod-1-of-4 or range-1000-2000
+	public String getName() {
+		return isModulo() ? MOD + "-" + this.first + "-of-" + this.second : RANGE + "-" + this.first + "-" + this.second;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof ShardSpec)) {
+			return false;
+		}
+		ShardSpec shard = (ShardSpec) other;
+		return this.kind.equals(shard.kind) && this.first == shard.first && this.second == shard.second;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(this.kind, this.first, this.second);
+	}
+
+	// The spec it was parsed from, e.g. mod:1/4
+	@Override
+	public String toString() {
+		return isModulo() ? MOD + ":" + this.first + "/" + this.second : RANGE + ":" + this.first + "-" + this.second;
+	}
+}
@@ -2,10 +2,11 @@ package org.reactome.release.updateDOIs;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,10 +24,21 @@ public class UpdateDOIs {
 
 	private static final Logger logger = LogManager.getLogger();
 	private static final Logger warningsLog = LogManager.getLogger("warningsLog");
-	private static final String REACTOME_DOI_PREFIX = "10.3180";
+	static final String REACTOME_DOI_PREFIX = "10.3180";
 
 	private static MySQLAdaptor dbaTestReactome;
 	private static MySQLAdaptor dbaGkCentral;
+	private static int lookupChunkSize = PathwayResolver.DEFAULT_CHUNK_SIZE;
+	private static int writeBatchSize = BatchAttributeWriter.DEFAULT_BATCH_SIZE;
+	private static boolean useSetBasedEngine = false;
+	private static CandidateSelector candidateSelector =
+		new CandidateSelector(CandidateSelector.Strategy.REGEX, false);
+	private static boolean writeStructuredTestReport = false;
+	private static int resolverWorkers = 0;
+	private static Callable<MySQLAdaptor> gkAdaptorFactory;
+	private static int commitChunkSize = 0;
+	private static Path checkpointJournalPath;
+	private static boolean deltaMode = false;
 
 	// Create adaptors for Test Reactome and GKCentral
 	public static void setAdaptors(MySQLAdaptor adaptorTR, MySQLAdaptor adaptorGK) {
@@ -34,20 +46,84 @@ public class UpdateDOIs {
 		dbaGkCentral = adaptorGK;
 	}
 
-	@SuppressWarnings("unchecked")
-	public static void findAndUpdateDOIs(long personId, Path pathToReport, int releaseNumber, boolean testMode)
+	// Number of DB_IDs sent per IN-list query when looking up the GK Central pathways
+	public static void setLookupChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Lookup chunk size must be positive: " + chunkSize);
+		}
+		lookupChunkSize = chunkSize;
+	}
+
+	// Number of attribute changes queued per database before they are written as multi-row statements
+	public static void setWriteBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Write batch size must be positive: " + batchSize);
+		}
+		writeBatchSize = batchSize;
+	}
+
+	// Use the set-based SQL engine (SetBasedDOIUpdater) instead of updating one GKInstance at a time
+	public static void setUseSetBasedEngine(boolean setBased) {
+		useSetBasedEngine = setBased;
+	}
+
+	// How the Test Reactome pathways needing a DOI are selected (see CandidateSelector)
+	public static void setCandidateSelector(CandidateSelector selector) {
+		candidateSelector = selector;
+	}
+
+	// Resolve and verify the GK Central pathways on this many worker threads, each opening its own GK Central
+	// connection with the factory (see ResolverPipeline); 0 does the lookups on the main GK Central connection
+	public static void setResolverWorkers(int workers, Callable<MySQLAdaptor> adaptorFactory) {
+		if (workers < 0) {
+			throw new IllegalArgumentException("Number of resolver workers can not be negative: " + workers);
+		}
+		if (workers > 0 && adaptorFactory == null) {
+			throw new IllegalArgumentException("Resolver workers need a GK Central adaptor factory");
+		}
+		resolverWorkers = workers;
+		gkAdaptorFactory = adaptorFactory;
+	}
+
+	// Commit the updates in chunks of this many pathways, recording them in the checkpoint journal so a failed run can
+	// be resumed (see ChunkedCommitter); 0 commits GK Central once at the end.  A null journal path uses
+	// updateDOIs-v<release>.journal in the working directory.
+	public static void setChunkedCommits(int chunkSize, Path journalPath) {
+		if (chunkSize < 0) {
+			throw new IllegalArgumentException("Commit chunk size can not be negative: " + chunkSize);
+		}
+		commitChunkSize = chunkSize;
+		checkpointJournalPath = journalPath;
+	}
+
+	// Only write the DOI (and append to 'modified') to GK Central pathways that do not already have the new DOI; the
+	// Test Reactome candidates are selected because they have no Reactome DOI, so they are always written
+	public static void setDeltaMode(boolean delta) {
+		deltaMode = delta;
+	}
+
+	// Also write the test mode list of DOIs as JSON lines (see DOIReportWriter)
+	public static void setWriteStructuredTestReport(boolean structured) {
+		writeStructuredTestReport = structured;
+	}
+
+	/**
+	 * Finds the Pathways in Test Reactome needing a DOI and updates them (outside of test mode) in both Test Reactome
+	 * and GK Central.
+	 *
+	 * @return DOIs assigned (or, in test mode, that would be assigned) to Test Reactome pathways
+	 */
+	public static List<String> findAndUpdateDOIs(long personId, Path pathToReport, int releaseNumber, boolean testMode)
 		throws IOException {
 
-		Path doisListFilepath = Paths.get("doisToBeUpdated-v" + releaseNumber + ".txt");
+		Path doisListFilepath = getDOIListPath(releaseNumber);
+		DOIReportWriter testReport = null;
 		if (testMode) {
 			logger.info("Test mode is active. Outputting DOIs that can be updated");
-			Files.deleteIfExists(doisListFilepath);
-			Files.createFile(doisListFilepath);
+			// The previous list is kept until this run commits its own, which replaces it
+			testReport = new DOIReportWriter(doisListFilepath, writeStructuredTestReport);
 		}
 
-		Collection<GKInstance> doisTR;
-		Collection<GKInstance> doisGK;
-
 		// Initialize instance edits for each DB
 		String creatorFile = "org.reactome.release.updateDOIs.Main";
 		GKInstance instanceEditTR = null;
@@ -57,7 +133,7 @@ public class UpdateDOIs {
 			instanceEditGK = UpdateDOIs.createInstanceEdit(UpdateDOIs.dbaGkCentral, personId, creatorFile);
 		}
 		// Gets the updated report file if it was provided for this release
-		Map<String, Map<String,String>> expectedUpdatedDOIs = new HashMap<>();
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = new HashMap<>();
 		if (Files.exists(pathToReport)) {
 			expectedUpdatedDOIs = UpdateDOIs.getExpectedUpdatedDOIs(pathToReport.toString());
 		}
@@ -65,95 +141,40 @@ public class UpdateDOIs {
 			logger.warn("No DOIs listed in UpdateDOIs.report. " +
 				"Please add expected DOI and displayName to UpdateDOIs.report.");
 		}
-		List<String> updated = new ArrayList<>();
-		List<String> notUpdated = new ArrayList<>();
+		List<String> assignedDOIs = new ArrayList<>();
+		CheckpointJournal journal = null;
 		try 
 		{
-			// Get all instances in Test Reactome in the Pathway table that don't have a 'doi' attribute starting
-			// with 10.3180, the Reactome DOI standard
-			 doisTR = dbaTestReactome.fetchInstanceByAttribute(
-				 ReactomeJavaConstants.Pathway, "doi", "NOT REGEXP", "^" + REACTOME_DOI_PREFIX);
-			 logger.info("Found " + doisTR.size() + " Pathway instances that need a DOI");
 			 // GKCentral should require transactional support
 			if (dbaGkCentral.supportsTransactions())
 			{
-				if (!doisTR.isEmpty())
-				{
-					outerloop:
-					for (GKInstance trDOI : doisTR)
-					{
-						// The dois are constructed from the instances 'stableIdentifier',
-						// which should be in the db already
-						String stableIdFromDb = ((GKInstance)
-							trDOI.getAttributeValue(ReactomeJavaConstants.stableIdentifier)).getDisplayName();
-						String nameFromDb = trDOI.getAttributeValue(ReactomeJavaConstants.name).toString();
-						String updatedDoi = REACTOME_DOI_PREFIX + "/" + stableIdFromDb;
-						String dbId = trDOI.getAttributeValue(ReactomeJavaConstants.DB_ID).toString();
-
-						// Used to verify that report contents are as expected, based on provided list from curators
-						if (expectedUpdatedDOIs.get(updatedDoi) != null &&
-							expectedUpdatedDOIs.get(updatedDoi).get("displayName").equals(nameFromDb))
-						{
-							updated.add(updatedDoi);
-						} else {
-							String doiWithName = updatedDoi + ":" + nameFromDb;
-							notUpdated.add(doiWithName);
-							if (!testMode) {
-								continue;
-							}
-						}
-						// This updates the 'modified' field for Pathways instances, keeping track of when changes
-						// happened for each instance
-						trDOI.getAttributeValuesList(ReactomeJavaConstants.modified);
-						trDOI.addAttributeValue(ReactomeJavaConstants.modified, instanceEditTR);
-						trDOI.setAttributeValue("doi", updatedDoi);
-
-						// Grabs instance from GKCentral based on DB_ID taken from Test Reactome and updates its DOI
-						dbaGkCentral.startTransaction();
-						doisGK = dbaGkCentral.fetchInstanceByAttribute(
-								ReactomeJavaConstants.Pathway, ReactomeJavaConstants.DB_ID, "=", dbId);
-						if (!doisGK.isEmpty())
-						{
-							for (GKInstance gkDOI : doisGK)
-							{
-								boolean verified = ReportTests.verifyDOIMatches(trDOI, gkDOI, updatedDoi);
-								if (verified) 
-								{
-									gkDOI.getAttributeValuesList(ReactomeJavaConstants.modified);
-									gkDOI.addAttributeValue(ReactomeJavaConstants.modified, instanceEditGK);
-									gkDOI.setAttributeValue("doi", updatedDoi);
-									if (!testMode) {
-										dbaGkCentral.updateInstanceAttribute(gkDOI, ReactomeJavaConstants.modified);
-										dbaGkCentral.updateInstanceAttribute(gkDOI, "doi");
-									}
-								} else {
-									continue outerloop;
-								}
-								if (!testMode) {
-									logger.info("Updated DOI: " + updatedDoi + " for " + nameFromDb);
-								} else {
-									logger.info("TEST DOI: " + updatedDoi + "," + nameFromDb);
-									String doiWithName = updatedDoi + "," + nameFromDb + "\n";
-									Files.write(doisListFilepath, doiWithName.getBytes(), StandardOpenOption.APPEND);
-								}
-							}
-						} else {
-							logger.error("Could not find attribute in gk_central");
-						}
-						if (!testMode) {
-							dbaTestReactome.updateInstanceAttribute(trDOI, ReactomeJavaConstants.modified);
-							dbaTestReactome.updateInstanceAttribute(trDOI, "doi");
-						}
+				if (commitChunkSize > 0 && !testMode) {
+					if (useSetBasedEngine) {
+						logger.warn("Chunked commits are not supported by the set-based engine; committing at the end");
+					} else {
+						journal = CheckpointJournal.open(checkpointJournalPath != null ? checkpointJournalPath :
+							Paths.get("updateDOIs-v" + releaseNumber + ".journal"));
 					}
-					ReportTests.expectedUpdatesTests(
-						expectedUpdatedDOIs, updated, notUpdated, doisTR.size(), REACTOME_DOI_PREFIX);
+				}
+				if (useSetBasedEngine) {
+					assignedDOIs = new SetBasedDOIUpdater(
+						dbaTestReactome, dbaGkCentral, candidateSelector, lookupChunkSize, deltaMode)
+						.findAndUpdateDOIs(instanceEditTR, instanceEditGK, expectedUpdatedDOIs, testMode, testReport);
 				} else {
-					logger.info("No DOIs to update");
+					assignedDOIs = updateDOIsByInstance(
+						instanceEditTR, instanceEditGK, expectedUpdatedDOIs, testMode, testReport, journal);
 				}
 				if (!testMode) {
-					dbaGkCentral.commit();
+					try (Metrics.Timer phaseTimer = Metrics.phase(Metrics.COMMIT);
+						Metrics.Timer timer = Metrics.roundTrip(dbaGkCentral, Metrics.TRANSACTION)) {
+						dbaGkCentral.commit();
+					}
 				} else {
+					testReport.flush();
 					dbaGkCentral.rollback();
+					// Only a completed test run replaces the list of DOIs that can be updated
+					testReport.commit();
+					logger.info("Wrote " + testReport.getLineCount() + " DOIs that can be updated to " + doisListFilepath);
 				}
 			} else {
 				logger.fatal("Unable to open transaction with GK Central, rolling back");
@@ -167,45 +188,304 @@ public class UpdateDOIs {
 				e.printStackTrace();
 			}
 			e.printStackTrace();
+		} finally {
+			if (testReport != null) {
+				testReport.close();
+			}
+			if (journal != null) {
+				journal.close();
+			}
 		}
+		return assignedDOIs;
 	}
 
-	// Parses input report and places each line's contents in HashMap
-	public static Map<String, Map<String,String>> getExpectedUpdatedDOIs(String pathToReport) {
+	// List of the DOIs that can be updated, written by a test mode run to the working directory
+	public static Path getDOIListPath(int releaseNumber) {
+		return Paths.get("doisToBeUpdated-v" + releaseNumber + ".txt");
+	}
 
-		Map<String, Map<String, String>> expectedUpdatedDOIs = new HashMap<>();
-		try 
+	// Default plan file of a release, in the working directory
+	public static Path getDefaultPlanPath(int releaseNumber) {
+		return Paths.get("updateDOIs-v" + releaseNumber + ".plan");
+	}
+
+	/**
+	 * Does the reads, matching and verification of a run (outside of test mode) and writes the DOI changes it would
+	 * make to a plan file, for applyPlan to write later.  Neither database is changed.
+	 *
+	 * @param pathToReport Report of DOIs expected to be updated
+	 * @param releaseNumber Current release
+	 * @param planPath File to write the plan to
+	 * @return The plan written
+	 * @throws Exception Thrown if the pathways can not be read or the plan can not be written
+	 */
+	public static DOIChangePlan planDOIs(Path pathToReport, int releaseNumber, Path planPath) throws Exception {
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = new HashMap<>();
+		if (Files.exists(pathToReport)) {
+			expectedUpdatedDOIs = UpdateDOIs.getExpectedUpdatedDOIs(pathToReport.toString());
+		}
+		if (expectedUpdatedDOIs.size() == 0) {
+			logger.warn("No DOIs listed in UpdateDOIs.report. " +
+				"Please add expected DOI and displayName to UpdateDOIs.report.");
+		}
+		DOIChangePlan plan = new SetBasedDOIUpdater(
+			dbaTestReactome, dbaGkCentral, candidateSelector, lookupChunkSize, deltaMode)
+			.plan(expectedUpdatedDOIs, releaseNumber);
+		plan.write(planPath);
+		logger.info("Wrote " + plan.getEntries().size() + " planned DOI changes to " + planPath);
+		return plan;
+	}
+
+	/**
+	 * Writes the DOI changes of a plan made by planDOIs to both databases and commits GK Central.  Nothing is written
+	 * if the plan is for another release or databases, or if any of its pathways changed since it was made.
+	 *
+	 * @param personId DB_ID of the Person the InstanceEdits are created for
+	 * @param planPath Plan file
+	 * @param releaseNumber Current release
+	 * @return DOIs of the plan
+	 * @throws Exception Thrown if the plan does not match the databases or can not be applied (GK Central is rolled
+	 * back)
+	 */
+	public static List<String> applyPlan(long personId, Path planPath, int releaseNumber) throws Exception {
+		DOIChangePlan plan = DOIChangePlan.read(planPath);
+		if (plan.getReleaseNumber() != releaseNumber || !plan.getTestReactomeName().equals(dbaTestReactome.getDBName()) ||
+			!plan.getGkCentralName().equals(dbaGkCentral.getDBName())) {
+			throw new IllegalArgumentException(planPath + " was made for release " + plan.getReleaseNumber() + " of " +
+				plan.getTestReactomeName() + " and " + plan.getGkCentralName() + ", not release " + releaseNumber +
+				" of " + dbaTestReactome.getDBName() + " and " + dbaGkCentral.getDBName());
+		}
+		logger.info("Applying " + plan.getEntries().size() + " planned DOI changes from " + planPath);
+		if (!dbaGkCentral.supportsTransactions()) {
+			throw new IllegalStateException("Unable to open transaction with GK Central");
+		}
+
+		String creatorFile = "org.reactome.release.updateDOIs.Main";
+		GKInstance instanceEditTR = UpdateDOIs.createInstanceEdit(UpdateDOIs.dbaTestReactome, personId, creatorFile);
+		GKInstance instanceEditGK = UpdateDOIs.createInstanceEdit(UpdateDOIs.dbaGkCentral, personId, creatorFile);
+		try {
+			return new SetBasedDOIUpdater(dbaTestReactome, dbaGkCentral, candidateSelector, lookupChunkSize, deltaMode)
+				.apply(plan, instanceEditTR, instanceEditGK);
+		} catch (Exception e) {
+			dbaGkCentral.rollback();
+			throw e;
+		}
+	}
+
+	// Default snapshot file of a release, in the working directory
+	public static Path getDefaultSnapshotPath(int releaseNumber) {
+		return Paths.get("updateDOIs-v" + releaseNumber + ".snapshot");
+	}
+
+	/**
+	 * Writes the DOI-related state of every Pathway of both databases to a snapshot file, which the Verifier and
+	 * whatIf can use instead of the databases.
+	 *
+	 * @param releaseNumber Current release
+	 * @param snapshotPath File to write the snapshot to
+	 * @throws Exception Thrown if the pathways can not be read or the snapshot can not be written
+	 */
+	public static void exportSnapshot(int releaseNumber, Path snapshotPath) throws Exception {
+		try (Metrics.Timer timer = Metrics.phase(Metrics.EXPORT)) {
+			PathwaySnapshot.export(dbaTestReactome, dbaGkCentral, 0, releaseNumber, snapshotPath);
+		}
+		logger.info("Wrote the pathways of " + dbaTestReactome.getDBName() + " and " + dbaGkCentral.getDBName() +
+			" to " + snapshotPath);
+	}
+
+	/**
+	 * Does the selection, verification and report reconciliation of a run (outside of test mode) on a snapshot
+	 * instead of the databases, and logs the DOIs that would be updated.  No database is used.
+	 *
+	 * @param pathToReport Report of DOIs expected to be updated
+	 * @param snapshotPath Snapshot written by exportSnapshot
+	 * @param releaseNumber Current release
+	 * @return DOIs that would be assigned
+	 * @throws Exception Thrown if the snapshot can not be read
+	 */
+	public static List<String> whatIf(Path pathToReport, Path snapshotPath, int releaseNumber) throws Exception {
+		PathwaySnapshot snapshot = PathwaySnapshot.open(snapshotPath);
+		if (snapshot.getReleaseNumber() != releaseNumber) {
+			warningsLog.warn(snapshotPath + " was exported for release " + snapshot.getReleaseNumber() + ", not " +
+				releaseNumber);
+		}
+		logger.info("Using the pathways of " + snapshot.getTestReactome().getDatabaseName() + " and " +
+			snapshot.getGkCentral().getDatabaseName() + " exported at " + snapshot.getExportedAt());
+
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = new HashMap<>();
+		if (Files.exists(pathToReport)) {
+			expectedUpdatedDOIs = UpdateDOIs.getExpectedUpdatedDOIs(pathToReport.toString());
+		}
+		List<PathwayDOIRecord> trPathways;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.CANDIDATE_FETCH)) {
+			trPathways = candidateSelector.selectRecords(snapshot.getTestReactome());
+		}
+		logger.info("Found " + trPathways.size() + " Pathway instances that need a DOI");
+
+		PathwaySnapshot.Section gkCentral = snapshot.getGkCentral();
+		Map<Long, PathwayDOIRecord> gkPathways = new HashMap<>();
+		for (PathwayDOIRecord trPathway : trPathways) {
+			int row = gkCentral.indexOf(trPathway.getDbId());
+			if (row >= 0) {
+				gkPathways.put(trPathway.getDbId(), gkCentral.getRecord(row));
+			}
+		}
+
+		List<String> updated = new ArrayList<>();
+		List<String> notUpdated = new ArrayList<>();
+		List<SetBasedDOIUpdater.Assignment> assignments;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.VERIFICATION)) {
+			assignments = SetBasedDOIUpdater.selectAssignments(
+				trPathways, gkPathways, expectedUpdatedDOIs, false, updated, notUpdated);
+		}
+		List<String> assignedDOIs = new ArrayList<>();
+		for (SetBasedDOIUpdater.Assignment assignment : assignments) {
+			assignedDOIs.add(assignment.getDoi());
+			logger.info("Would update DOI: {} for {}", assignment.getDoi(), assignment.getTrPathway().getName());
+		}
+		try (Metrics.Timer timer = Metrics.phase(Metrics.RECONCILIATION)) {
+			ReportTests.expectedUpdatesTests(
+				expectedUpdatedDOIs, updated, notUpdated, trPathways.size(), REACTOME_DOI_PREFIX);
+		}
+		return assignedDOIs;
+	}
+
+	// Updates the pathways needing a DOI one GKInstance at a time, leaving the GK Central transaction open
+	// (package-private for the benchmarks in src/jmh)
+	static List<String> updateDOIsByInstance(
+		GKInstance instanceEditTR,
+		GKInstance instanceEditGK,
+		Map<String, ExpectedDOI> expectedUpdatedDOIs,
+		boolean testMode,
+		DOIReportWriter testReport,
+		CheckpointJournal journal
+	) throws Exception {
+
+		List<String> updated = new ArrayList<>();
+		List<String> notUpdated = new ArrayList<>();
+		List<String> assignedDOIs = new ArrayList<>();
+
+		// Get all instances in Test Reactome in the Pathway table that don't have a 'doi' attribute starting
+		// with 10.3180, the Reactome DOI standard
+		Collection<GKInstance> doisTR;
+		try (Metrics.Timer timer = Metrics.phase(Metrics.CANDIDATE_FETCH)) {
+			doisTR = candidateSelector.selectInstances(dbaTestReactome);
+		}
+		logger.info("Found " + doisTR.size() + " Pathway instances that need a DOI");
+		if (journal != null) {
+			// Pathways a previous run already updated in both databases
+			doisTR = new ArrayList<>(doisTR);
+			int selectedCount = doisTR.size();
+			doisTR.removeIf(trDOI -> journal.isCompleted(trDOI.getDBID()));
+			if (doisTR.size() < selectedCount) {
+				logger.info("Skipping " + (selectedCount - doisTR.size()) + " pathways completed according to " +
+					journal.getJournalPath());
+			}
+		}
+		if (doisTR.isEmpty())
 		{
-			FileReader fr = new FileReader(pathToReport);
-			BufferedReader br = new BufferedReader(fr);
+			logger.info("No DOIs to update");
+			return assignedDOIs;
+		}
 
-			String sCurrentLine;
-			while ((sCurrentLine = br.readLine()) != null) 
-			{
-				Map<String, String> doiAttributes = new HashMap<>();
-				String[] commaSplit = sCurrentLine.split(",", 2);
-				String reactomeDoi = commaSplit[0];
-				String displayName = commaSplit[1];
-				int lastPeriodIndex = commaSplit[0].lastIndexOf(".");
-				String[] versionSplit = {
-					reactomeDoi.substring(0, lastPeriodIndex),
-					reactomeDoi.substring(lastPeriodIndex + 1)
-				};
-				String stableId = versionSplit[0].replace(REACTOME_DOI_PREFIX + "/", "");
-				String stableIdVersion = versionSplit[1];
-				doiAttributes.put("displayName", displayName);
-				doiAttributes.put("stableId", stableId);
-				doiAttributes.put("stableIdVersion", stableIdVersion);
-				expectedUpdatedDOIs.put(reactomeDoi, doiAttributes);
+		// Loads the attributes read below for all instances at once, instead of lazily per instance
+		try (Metrics.Timer timer = Metrics.phase(Metrics.PRELOAD)) {
+			new PathwayPreloader(dbaTestReactome, lookupChunkSize).preloadForDOIUpdate(doisTR);
+		}
+
+		dbaGkCentral.startTransaction();
+		List<PathwayResolution> resolutions = new ArrayList<>();
+		for (GKInstance trDOI : doisTR) {
+			resolutions.add(PathwayResolution.forCandidate(trDOI, expectedUpdatedDOIs, testMode));
+		}
+		BatchAttributeWriter writerGK = new BatchAttributeWriter(dbaGkCentral, writeBatchSize);
+		BatchAttributeWriter writerTR;
+		ChunkedCommitter committer = null;
+		if (journal != null) {
+			writerTR = new BatchAttributeWriter(
+				dbaTestReactome, ChunkedCommitter.testReactomeBatchSize(writeBatchSize, commitChunkSize));
+			committer = new ChunkedCommitter(dbaGkCentral, writerTR, writerGK, journal, commitChunkSize);
+		} else {
+			writerTR = new BatchAttributeWriter(dbaTestReactome, writeBatchSize);
+		}
+		DOIWriterStage writer = new DOIWriterStage(instanceEditTR, instanceEditGK, testMode, deltaMode, testReport,
+			writerTR, writerGK, committer, updated, notUpdated, assignedDOIs);
+		Metrics.Progress progress = Metrics.progress("Updating pathways", resolutions.size());
+		ResolverPipeline.ResolutionHandler timedWriter = resolution -> {
+			try (Metrics.Timer timer = Metrics.phase(Metrics.WRITE)) {
+				writer.handle(resolution);
 			}
-			br.close();
-			fr.close();
+			progress.advance();
+		};
 
-		} catch (Exception e) {
+		if (resolverWorkers > 0) {
+			// GK Central lookups and verification run on the resolver workers' own connections, while this thread
+			// remains the only one writing, within the GK Central transaction
+			try (ResolverPipeline pipeline = new ResolverPipeline(gkAdaptorFactory, resolverWorkers, lookupChunkSize)) {
+				pipeline.run(resolutions, timedWriter);
+			}
+		} else {
+			// Grabs all matching instances from GKCentral up front, based on the DB_IDs taken from
+			// Test Reactome, rather than querying once per pathway
+			List<Long> dbIds = new ArrayList<>();
+			for (GKInstance trDOI : doisTR) {
+				dbIds.add(trDOI.getDBID());
+			}
+			Map<Long, GKInstance> doisGK;
+			try (Metrics.Timer timer = Metrics.phase(Metrics.GK_LOOKUP)) {
+				doisGK = new PathwayResolver(dbaGkCentral, lookupChunkSize).resolve(dbIds);
+			}
+			try (Metrics.Timer timer = Metrics.phase(Metrics.PRELOAD)) {
+				new PathwayPreloader(dbaGkCentral, lookupChunkSize)
+					.preload(doisGK.values(), ReactomeJavaConstants.modified, "doi");
+			}
+			for (PathwayResolution resolution : resolutions) {
+				try (Metrics.Timer timer = Metrics.phase(Metrics.VERIFICATION)) {
+					resolution.resolveGkPathway(doisGK.get(resolution.getTrPathway().getDBID()));
+				}
+				timedWriter.handle(resolution);
+			}
+		}
+		if (committer != null) {
+			committer.commitChunk();
+		}
+		// Writes whatever is still queued; the GK Central changes remain part of its open transaction
+		try (Metrics.Timer timer = Metrics.phase(Metrics.WRITE)) {
+			writerGK.flush();
+			writerTR.flush();
+		}
+		logger.info("Wrote " + (writerTR.getWrittenCount() + writerGK.getWrittenCount()) +
+			" attribute changes in " + (writerTR.getStatementCount() + writerGK.getStatementCount()) +
+			" statements");
+		writer.logDeltaSummary();
+		try (Metrics.Timer timer = Metrics.phase(Metrics.RECONCILIATION)) {
+			ReportTests.expectedUpdatesTests(expectedUpdatedDOIs, updated, notUpdated, doisTR.size(), REACTOME_DOI_PREFIX);
+		}
+
+		return assignedDOIs;
+	}
+
+	// The report of DOIs expected to be updated, or no DOIs if there is no report
+	public static Map<String, ExpectedDOI> getExpectedUpdatedDOIs(Path pathToReport) {
+		return Files.exists(pathToReport) ? getExpectedUpdatedDOIs(pathToReport.toString()) : new HashMap<>();
+	}
+
+	/**
+	 * Reads the report of DOIs expected to be updated, one line at a time.  Malformed lines are logged with their line
+	 * numbers and skipped; the rest of the report is still used.
+	 *
+	 * @param pathToReport Path of UpdateDOIs.report
+	 * @return DOIs expected to be updated, by DOI (empty if the report can not be read)
+	 */
+	public static Map<String, ExpectedDOI> getExpectedUpdatedDOIs(String pathToReport) {
+		try {
+			return new ExpectedDOIParser(REACTOME_DOI_PREFIX).read(Paths.get(pathToReport));
+		} catch (NoSuchFileException e) {
 			warningsLog.warn("No input file found -- Continuing without checking DOIs");
-			e.printStackTrace();
+		} catch (IOException e) {
+			warningsLog.warn("Unable to read " + pathToReport + " -- Continuing without checking DOIs", e);
 		}
-		return expectedUpdatedDOIs;
+		return new HashMap<>();
 	}
 
 	/**
@@ -7,12 +7,19 @@ import org.gk.model.ReactomeJavaConstants;
 import org.gk.persistence.MySQLAdaptor;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author Joel Weiser (joel.weiser@oicr.on.ca)
@@ -22,10 +29,10 @@ public class Verifier {
     @Parameter(names ={"--releaseNumber", "--r"}, required = true)
     private int releaseNumber;
 
-    @Parameter(names ={"--curatorUser", "--cu"}, required = true)
+    @Parameter(names ={"--curatorUser", "--cu"})
     private String curatorUserName;
 
-    @Parameter(names ={"--curatorPassword", "--cp"}, required = true)
+    @Parameter(names ={"--curatorPassword", "--cp"})
     private String curatorPassword;
 
     @Parameter(names ={"--curatorHost", "--ch"})
@@ -37,10 +44,10 @@ public class Verifier {
     @Parameter(names ={"--curatorPort", "--cP"})
     private int curatorPort = 3306;
 
-    @Parameter(names ={"--releaseUser", "--ru"}, required = true)
+    @Parameter(names ={"--releaseUser", "--ru"})
     private String releaseUserName;
 
-    @Parameter(names ={"--releasePassword", "--rp"}, required = true)
+    @Parameter(names ={"--releasePassword", "--rp"})
     private String releasePassword;
 
     @Parameter(names ={"--releaseHost", "--rh"})
@@ -55,6 +62,53 @@ public class Verifier {
     @Parameter(names ={"--output", "--o"})
     private String outputFolder = ".";
 
+    @Parameter(names ={"--chunkSize", "--cs"})
+    private int chunkSize = PathwayResolver.DEFAULT_CHUNK_SIZE;
+
+    @Parameter(names ={"--threads", "--t"})
+    private int threads = 4;
+
+    // Directory to write the metrics snapshot (verifier-metrics.json and verifier.prom) to
+    @Parameter(names ={"--metrics", "--m"})
+    private String metricsFolder;
+
+    // DOI change plan (see UpdateDOIs.planDOIs) to check the databases against instead of the test mode list
+    @Parameter(names ={"--plan", "--p"})
+    private String planFile;
+
+    // Check each database in a single streaming scan of its Pathway rows instead of loading the pathways as instances
+    @Parameter(names ={"--streamingScan", "--ss"})
+    private boolean streamingScan = false;
+
+    // Rows fetched at a time by the streaming scan; 0 streams them one at a time (see PathwayDOIRecord.scan)
+    @Parameter(names ={"--fetchSize", "--fs"})
+    private int fetchSize = 0;
+
+    // Also compare the doi of every Pathway in both databases, by digests of DB_ID ranges (see DOIConsistencyScan)
+    @Parameter(names ={"--consistencyScan", "--cons"})
+    private boolean consistencyScan = false;
+
+    // Number of ranges each differing range is split into by the consistency scan
+    @Parameter(names ={"--scanFanout", "--sf"})
+    private int scanFanout = DOIConsistencyScan.DEFAULT_FANOUT;
+
+    // Width (in DB_IDs) up to which the consistency scan compares a differing range row by row
+    @Parameter(names ={"--scanLeafWidth", "--sl"})
+    private long scanLeafWidth = DOIConsistencyScan.DEFAULT_LEAF_WIDTH;
+
+    // Pathway snapshot (see UpdateDOIs.exportSnapshot) to run the checks on instead of the databases, which are then
+    // not connected to (the user and password options are only required without one)
+    @Parameter(names ={"--snapshot", "--snap"})
+    private String snapshotFile;
+
+    // Directory to cache the schema of each database in, so later invocations do not load it (see AdaptorFactory)
+    @Parameter(names ={"--schemaCache", "--sc"})
+    private String schemaCacheFolder;
+
+    private List<String> expectedDOIs;
+    private DOIChangePlan plan;
+    private PathwaySnapshot snapshot;
+
     public static void main(String[] args) throws Exception {
         Verifier verifier = new Verifier();
         JCommander.newBuilder()
@@ -66,7 +120,14 @@ public class Verifier {
     }
 
     public void run() throws Exception {
-        List<String> errorMessages = getErrorMessages();
+        List<String> errorMessages;
+        try (Metrics.Timer timer = Metrics.phase(Metrics.RUN)) {
+            errorMessages = getErrorMessages();
+        }
+        Metrics.logSummary();
+        if (this.metricsFolder != null) {
+            Metrics.writeSnapshot(Paths.get(this.metricsFolder), "verifier");
+        }
         if (errorMessages.isEmpty()) {
             System.out.println("Update DOIs has run correctly!");
         } else {
@@ -75,20 +136,112 @@ public class Verifier {
         }
     }
 
-    private List<String> getErrorMessages() throws Exception {
+    // Package-private for the integration tests in src/it, as run() exits on errors
+    List<String> getErrorMessages() throws Exception {
+        // Read up front so the checks share the parsed file
+        try (Metrics.Timer timer = Metrics.phase("expected_dois")) {
+            getExpectedDOIs();
+        }
+
+        List<Callable<List<String>>> checks = new ArrayList<>();
+        if (this.snapshotFile != null) {
+            // The snapshot is mapped once and shared: the checks only read it
+            checks.add(() -> runSnapshotCheck("release_snapshot", this::checkReleaseSnapshot));
+            checks.add(() -> runSnapshotCheck("curator_snapshot", this::checkCuratorSnapshot));
+            if (this.consistencyScan) {
+                checks.add(() -> runSnapshotCheck("consistency_snapshot", DOIConsistencyScan::compare));
+            }
+            if (this.planFile != null) {
+                checks.add(() -> runSnapshotCheck("release_plan", snapshot -> checkSectionAgainstPlan(
+                    snapshot.getTestReactome(), false)));
+                checks.add(() -> runSnapshotCheck("curator_plan", snapshot -> checkSectionAgainstPlan(
+                    snapshot.getGkCentral(), true)));
+            }
+            return runChecks(checks);
+        }
+        requireConnectionOptions();
+        // Each check opens its own connection, as an adaptor can not be shared between threads; as the checks run at
+        // the same time, so do the connections and schema loads
+        if (this.streamingScan) {
+            // One scan per database runs all of its checks
+            checks.add(() -> runCheck("release_scan", getReleaseDBA(), this::scanReleaseDBA));
+            checks.add(() -> runCheck("curator_scan", getCuratorDBA(), this::scanCuratorDBA));
+        } else {
+            checks.add(() -> runCheck("release_unassigned_dois", getReleaseDBA(),
+                this::checkReleaseDBAForPathwaysWithUnassignedDOIs));
+            checks.add(() -> runCheck("curator_pathways_requiring_dois", getCuratorDBA(),
+                this::checkCuratorDBAForPathwaysRequiringDOIs));
+            checks.add(() -> runCheck("curator_unexpected_dois", getCuratorDBA(),
+                this::checkDBAForPathwaysWithUnexpectedDOIs));
+            checks.add(() -> runCheck("release_unexpected_dois", getReleaseDBA(),
+                this::checkDBAForPathwaysWithUnexpectedDOIs));
+        }
+        if (this.consistencyScan) {
+            checks.add(this::checkConsistency);
+        }
+        if (this.planFile != null) {
+            checks.add(() -> runCheck("release_plan", getReleaseDBA(), dba -> checkDBAAgainstPlan(dba, false)));
+            checks.add(() -> runCheck("curator_plan", getCuratorDBA(), dba -> checkDBAAgainstPlan(dba, true)));
+        }
+        return runChecks(checks);
+    }
+
+    private List<String> runChecks(List<Callable<List<String>>> checks) throws Exception {
         List<String> errorMessages = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.threads, checks.size())));
+        try {
+            // Messages are collected in the order of the checks, whichever finishes first
+            for (Future<List<String>> checkResult : executor.invokeAll(checks)) {
+                errorMessages.addAll(getCheckResult(checkResult));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return errorMessages;
+    }
 
-        MySQLAdaptor curatorDBA = getCuratorDBA();
-        MySQLAdaptor releaseDBA = getReleaseDBA();
+    private interface Check {
+        List<String> apply(MySQLAdaptor dba) throws Exception;
+    }
 
-        errorMessages.addAll(checkReleaseDBAForPathwaysWithUnassignedDOIs(releaseDBA));
-        errorMessages.addAll(checkCuratorDBAForPathwaysRequiringDOIs(curatorDBA));
+    private interface SnapshotCheck {
+        List<String> apply(PathwaySnapshot snapshot) throws Exception;
+    }
 
-        for (MySQLAdaptor dba : Arrays.asList(curatorDBA, releaseDBA)) {
-            errorMessages.addAll(checkDBAForPathwaysWithUnexpectedDOIs(dba));
+    // Each check is timed as its own phase
+    private List<String> runCheck(String phase, MySQLAdaptor dba, Check check) throws Exception {
+        try (Metrics.Timer timer = Metrics.phase(phase)) {
+            return check.apply(dba);
+        } finally {
+            dba.cleanUp();
         }
+    }
 
-        return errorMessages;
+    private List<String> runSnapshotCheck(String phase, SnapshotCheck check) throws Exception {
+        PathwaySnapshot snapshot = getSnapshot();
+        try (Metrics.Timer timer = Metrics.phase(phase)) {
+            return check.apply(snapshot);
+        }
+    }
+
+    private void requireConnectionOptions() {
+        if (this.curatorUserName == null || this.curatorPassword == null || this.releaseUserName == null ||
+            this.releasePassword == null) {
+            throw new IllegalArgumentException("--curatorUser, --curatorPassword, --releaseUser and " +
+                "--releasePassword are required unless --snapshot is given");
+        }
+    }
+
+    private List<String> getCheckResult(Future<List<String>> checkResult) throws Exception {
+        try {
+            return checkResult.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
     }
 
     private List<String> checkReleaseDBAForPathwaysWithUnassignedDOIs(MySQLAdaptor releaseDBA) throws Exception {
@@ -105,12 +258,14 @@ public class Verifier {
         return errorMessages;
     }
 
-    private List<String> checkCuratorDBAForPathwaysRequiringDOIs(MySQLAdaptor curatorDBA) throws Exception {
+    // Package-private, as is the check below, for the benchmarks in src/jmh
+    List<String> checkCuratorDBAForPathwaysRequiringDOIs(MySQLAdaptor curatorDBA) throws Exception {
         List<String> errorMessages = new ArrayList<>();
 
         List<GKInstance> curatedPathwaysNeedingDOIs = getPathwaysNeedingDOI(curatorDBA);
         if (!curatedPathwaysNeedingDOIs.isEmpty()) {
-            List<GKInstance> curatedPathwaysExpectedToHaveDOIs = matchingExpectedDOIs(curatedPathwaysNeedingDOIs);
+            List<GKInstance> curatedPathwaysExpectedToHaveDOIs =
+                matchingExpectedDOIs(curatedPathwaysNeedingDOIs, curatorDBA);
             if (!curatedPathwaysExpectedToHaveDOIs.isEmpty()) {
                 errorMessages.add("The following pathways in the curated database still require DOIs:");
                 for (GKInstance curatedPathwayExpectedToHaveDOI : curatedPathwaysExpectedToHaveDOIs) {
@@ -122,11 +277,13 @@ public class Verifier {
         return errorMessages;
     }
 
-    private List<String> checkDBAForPathwaysWithUnexpectedDOIs(MySQLAdaptor dba) throws Exception {
+    List<String> checkDBAForPathwaysWithUnexpectedDOIs(MySQLAdaptor dba) throws Exception {
         List<String> errorMessages = new ArrayList<>();
 
-        for (String expectedDOI : getExpectedDOIs()) {
-            GKInstance pathway = getPathwayByDOI(expectedDOI, dba);
+        List<String> expectedDOIs = getExpectedDOIs();
+        Map<String, List<GKInstance>> pathwaysByDOI = getPathwaysByDOI(expectedDOIs, dba);
+        for (String expectedDOI : expectedDOIs) {
+            GKInstance pathway = getPathwayByDOI(expectedDOI, pathwaysByDOI, dba);
             if (!hasExpectedDOI(pathway, expectedDOI)) {
                 errorMessages.add(String.format("Pathway %s in %s database has '%s' as its doi (expected %s)",
                     pathway, dba.getDBName(), getCorrectDOI(pathway), expectedDOI));
@@ -136,28 +293,191 @@ public class Verifier {
         return errorMessages;
     }
 
+    // Every pathway of the plan, found by its DB_ID, must have the planned DOI (in the curator database, only those
+    // the plan found there)
+    List<String> checkDBAAgainstPlan(MySQLAdaptor dba, boolean curatorDBA) throws Exception {
+        Map<Long, PathwayDOIRecord> pathways =
+            PathwayDOIRecord.fetchByDbIds(dba, getPlannedDbIds(curatorDBA), this.chunkSize);
+        return checkPathwaysAgainstPlan(dba.getDBName(), curatorDBA, pathways);
+    }
+
+    // The same check on the pathways of a database in the snapshot
+    private List<String> checkSectionAgainstPlan(PathwaySnapshot.Section section, boolean curatorDBA)
+        throws Exception {
+        Map<Long, PathwayDOIRecord> pathways = new HashMap<>();
+        for (long dbId : getPlannedDbIds(curatorDBA)) {
+            int row = section.indexOf(dbId);
+            if (row >= 0) {
+                pathways.put(dbId, section.getRecord(row));
+            }
+        }
+        return checkPathwaysAgainstPlan(section.getDatabaseName(), curatorDBA, pathways);
+    }
+
+    private List<Long> getPlannedDbIds(boolean curatorDBA) throws IOException {
+        List<Long> dbIds = new ArrayList<>();
+        for (DOIChangePlan.Entry entry : getPlan().getEntries()) {
+            if (!curatorDBA || entry.getGkCentral() != null) {
+                dbIds.add(entry.getDbId());
+            }
+        }
+        return dbIds;
+    }
+
+    private List<String> checkPathwaysAgainstPlan(String dbName, boolean curatorDBA,
+        Map<Long, PathwayDOIRecord> pathways) throws IOException {
+        List<String> errorMessages = new ArrayList<>();
+
+        DOIChangePlan plan = getPlan();
+        String plannedDBName = curatorDBA ? plan.getGkCentralName() : plan.getTestReactomeName();
+        if (!plannedDBName.equals(dbName)) {
+            errorMessages.add(String.format("The plan was made for %s, not %s database", plannedDBName, dbName));
+        }
+
+        for (DOIChangePlan.Entry entry : plan.getEntries()) {
+            if (curatorDBA && entry.getGkCentral() == null) {
+                continue;
+            }
+            PathwayDOIRecord pathway = pathways.get(entry.getDbId());
+            if (pathway == null) {
+                errorMessages.add(String.format("Pathway %d of the plan is not in %s database",
+                    entry.getDbId(), dbName));
+            } else if (!entry.getDoi().equals(pathway.getDoi())) {
+                errorMessages.add(String.format("Pathway %s in %s database has '%s' as its doi (expected %s)",
+                    pathway, dbName, pathway.getDoi(), entry.getDoi()));
+            }
+        }
+
+        return errorMessages;
+    }
+
+    // The checks of the release database on a streaming scan: pathways with unassigned DOIs, then unexpected DOIs
+    List<String> scanReleaseDBA(MySQLAdaptor releaseDBA) throws Exception {
+        PathwayScanChecks scanChecks = scan(releaseDBA);
+        List<String> errorMessages = new ArrayList<>(scanChecks.getUnassignedDOIMessages());
+        errorMessages.addAll(scanChecks.getUnexpectedDOIMessages());
+        return errorMessages;
+    }
+
+    // The checks of the curated database on a streaming scan: pathways requiring DOIs, then unexpected DOIs
+    List<String> scanCuratorDBA(MySQLAdaptor curatorDBA) throws Exception {
+        PathwayScanChecks scanChecks = scan(curatorDBA);
+        List<String> errorMessages = new ArrayList<>(scanChecks.getRequiringDOIMessages());
+        errorMessages.addAll(scanChecks.getUnexpectedDOIMessages());
+        return errorMessages;
+    }
+
+    // Pathways whose doi differs between the release and curated databases
+    private List<String> checkConsistency() throws Exception {
+        List<MySQLAdaptor> adaptors = AdaptorFactory.connect(Arrays.asList(
+            getDbAdaptorFactory(this.releaseHost, this.releaseDatabaseName, this.releaseUserName, this.releasePassword,
+                this.releasePort),
+            getDbAdaptorFactory(this.curatorHost, this.curatorDatabaseName, this.curatorUserName, this.curatorPassword,
+                this.curatorPort)
+        ));
+        MySQLAdaptor releaseDBA = adaptors.get(0);
+        MySQLAdaptor curatorDBA = adaptors.get(1);
+        try (Metrics.Timer timer = Metrics.phase("consistency_scan")) {
+            return new DOIConsistencyScan(releaseDBA, curatorDBA, this.scanFanout, this.scanLeafWidth).run();
+        } finally {
+            releaseDBA.cleanUp();
+            curatorDBA.cleanUp();
+        }
+    }
+
+    // The streaming scan checks, on the pathways of the release database in the snapshot
+    private List<String> checkReleaseSnapshot(PathwaySnapshot snapshot) throws Exception {
+        PathwayScanChecks scanChecks = scan(snapshot.getTestReactome());
+        List<String> errorMessages = new ArrayList<>(scanChecks.getUnassignedDOIMessages());
+        errorMessages.addAll(scanChecks.getUnexpectedDOIMessages());
+        return errorMessages;
+    }
+
+    private List<String> checkCuratorSnapshot(PathwaySnapshot snapshot) throws Exception {
+        PathwayScanChecks scanChecks = scan(snapshot.getGkCentral());
+        List<String> errorMessages = new ArrayList<>(scanChecks.getRequiringDOIMessages());
+        errorMessages.addAll(scanChecks.getUnexpectedDOIMessages());
+        return errorMessages;
+    }
+
+    private PathwayScanChecks scan(PathwaySnapshot.Section section) throws Exception {
+        PathwayScanChecks scanChecks = new PathwayScanChecks(section.getDatabaseName(), getExpectedDOIs());
+        section.scan(scanChecks);
+        return scanChecks;
+    }
+
+    private PathwayScanChecks scan(MySQLAdaptor dba) throws Exception {
+        PathwayScanChecks scanChecks = new PathwayScanChecks(dba.getDBName(), getExpectedDOIs());
+        PathwayDOIRecord.scan(dba, this.fetchSize, scanChecks);
+        return scanChecks;
+    }
+
     private List<GKInstance> getPathwaysNeedingDOI(MySQLAdaptor dba) throws Exception {
-        return ((Collection<GKInstance>) dba.fetchInstancesByClass(ReactomeJavaConstants.Pathway))
+        // Only the pathways marked as needing a DOI are loaded.  The doi values are then loaded in bulk so the exact
+        // (case-sensitive) check in needsDOI does not query each pathway again.
+        Collection<GKInstance> markedPathways;
+        try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT)) {
+            markedPathways = (Collection<GKInstance>) dba.fetchInstanceByAttribute(
+                ReactomeJavaConstants.Pathway, ReactomeJavaConstants.doi, "=", CandidateSelector.NEEDS_DOI_SENTINEL);
+        }
+        Metrics.rowsRead(dba, markedPathways.size());
+        new PathwayPreloader(dba, this.chunkSize).preload(markedPathways, ReactomeJavaConstants.doi);
+
+        return markedPathways
             .stream()
             .filter(this::needsDOI)
             .collect(Collectors.toList());
     }
 
-    private List<GKInstance> matchingExpectedDOIs(List<GKInstance> pathwaysNeedingDOIs) throws IOException {
+    private List<GKInstance> matchingExpectedDOIs(List<GKInstance> pathwaysNeedingDOIs, MySQLAdaptor dba)
+        throws Exception {
         List<GKInstance> pathwaysExpectedToHaveDOIs = new ArrayList<>();
 
-        List<String> expectedDOIs = getExpectedDOIs();
-        for (String expectedDOI : expectedDOIs) {
-            Optional<GKInstance> pathwayExpectedToHaveDOI =
-                pathwaysNeedingDOIs.stream().filter(pathway -> getCorrectDOI(pathway).equals(expectedDOI)).findFirst();
-            pathwayExpectedToHaveDOI.ifPresent(pathwaysExpectedToHaveDOIs::add);
+        Map<String, GKInstance> pathwaysByCorrectDOI = indexByCorrectDOI(pathwaysNeedingDOIs, dba);
+        for (String expectedDOI : getExpectedDOIs()) {
+            GKInstance pathwayExpectedToHaveDOI = pathwaysByCorrectDOI.get(expectedDOI);
+            if (pathwayExpectedToHaveDOI != null) {
+                pathwaysExpectedToHaveDOIs.add(pathwayExpectedToHaveDOI);
+            }
         }
         return pathwaysExpectedToHaveDOIs;
     }
 
-    private GKInstance getPathwayByDOI(String doi, MySQLAdaptor dba) throws Exception {
-        Collection<GKInstance> pathwaysWithDOI =
-            dba.fetchInstanceByAttribute(ReactomeJavaConstants.Pathway, ReactomeJavaConstants.doi, "=", doi);
+    // Computes each pathway's correct DOI once; the first pathway in the list wins if two compute the same DOI
+    private Map<String, GKInstance> indexByCorrectDOI(List<GKInstance> pathways, MySQLAdaptor dba) throws Exception {
+        new PathwayPreloader(dba, this.chunkSize).preloadStableIdentifiers(pathways);
+        Map<String, GKInstance> pathwaysByCorrectDOI = new HashMap<>();
+        for (GKInstance pathway : pathways) {
+            if (pathway.getAttributeValue(ReactomeJavaConstants.stableIdentifier) != null) {
+                pathwaysByCorrectDOI.putIfAbsent(getCorrectDOI(pathway), pathway);
+            }
+        }
+        return pathwaysByCorrectDOI;
+    }
+
+    // Fetches the pathways with any of the DOIs using chunked IN queries and groups them by (normalized) DOI
+    private Map<String, List<GKInstance>> getPathwaysByDOI(List<String> dois, MySQLAdaptor dba) throws Exception {
+        List<GKInstance> pathways = new ArrayList<>();
+        List<String> distinctDOIs = new ArrayList<>(new LinkedHashSet<>(dois));
+        for (List<String> chunk : Batches.partition(distinctDOIs, this.chunkSize)) {
+            try (Metrics.Timer timer = Metrics.roundTrip(dba, Metrics.SELECT)) {
+                pathways.addAll(dba.fetchInstanceByAttribute(
+                    ReactomeJavaConstants.Pathway, ReactomeJavaConstants.doi, "=", new ArrayList<>(chunk)));
+            }
+        }
+        Metrics.rowsRead(dba, pathways.size());
+        new PathwayPreloader(dba, this.chunkSize).preload(pathways, ReactomeJavaConstants.doi);
+
+        Map<String, List<GKInstance>> pathwaysByDOI = new HashMap<>();
+        for (GKInstance pathway : pathways) {
+            String doi = (String) pathway.getAttributeValue(ReactomeJavaConstants.doi);
+            pathwaysByDOI.computeIfAbsent(normalizeDOI(doi), k -> new ArrayList<>()).add(pathway);
+        }
+        return pathwaysByDOI;
+    }
+
+    private GKInstance getPathwayByDOI(String doi, Map<String, List<GKInstance>> pathwaysByDOI, MySQLAdaptor dba) {
+        List<GKInstance> pathwaysWithDOI = pathwaysByDOI.getOrDefault(normalizeDOI(doi), Collections.emptyList());
         if (pathwaysWithDOI.isEmpty()) {
             throw new RuntimeException("Unable to find pathway with doi " + doi + " in database " + dba.getDBName());
         }
@@ -170,6 +490,12 @@ public class Verifier {
         return pathwaysWithDOI.iterator().next();
     }
 
+    // The doi column is compared by MySQL case-insensitively and ignoring trailing spaces, so the grouping of the
+    // fetched pathways has to be as well to find the same pathways the per-DOI queries did
+    private String normalizeDOI(String doi) {
+        return PathwayScanChecks.normalizeDOI(doi);
+    }
+
     private boolean hasExpectedDOI(GKInstance pathway, String expectedDOI) throws Exception {
         String actualDOI = (String) pathway.getAttributeValue(ReactomeJavaConstants.doi);
         return actualDOI.equals(expectedDOI);
@@ -196,13 +522,52 @@ public class Verifier {
         } catch (Exception e) {
             throw new RuntimeException("Unable to get doi value from pathway " + pathway, e);
         }
-        return doiValue != null && doiValue.equals("needs DOI");
+        return doiValue != null && doiValue.equals(CandidateSelector.NEEDS_DOI_SENTINEL);
     }
 
-    private List<String> getExpectedDOIs() throws IOException {
-        return Files.lines(getExpectedDOIFile())
-            .map(this::getDOIFromFileLine)
-            .collect(Collectors.toList());
+    // The expected DOI file is only read on the first call.  Its structured (JSON lines) variant is read instead
+    // when the test mode run produced one, and the DOIs of the plan when one is given.
+    private synchronized List<String> getExpectedDOIs() throws IOException {
+        if (this.expectedDOIs == null && this.planFile != null) {
+            this.expectedDOIs = getPlan().getDOIs();
+        }
+        if (this.expectedDOIs == null) {
+            Path structuredExpectedDOIFile = DOIReportWriter.getStructuredReportPath(getExpectedDOIFile());
+            if (Files.exists(structuredExpectedDOIFile)) {
+                try (Stream<String> lines = Files.lines(structuredExpectedDOIFile, StandardCharsets.UTF_8)) {
+                    this.expectedDOIs = Collections.unmodifiableList(
+                        lines.filter(line -> !line.trim().isEmpty())
+                            .map(this::getDOIFromJsonLine)
+                            .collect(Collectors.toList())
+                    );
+                }
+            } else {
+                try (Stream<String> lines = Files.lines(getExpectedDOIFile(), StandardCharsets.UTF_8)) {
+                    this.expectedDOIs = Collections.unmodifiableList(
+                        lines.map(this::getDOIFromFileLine).collect(Collectors.toList())
+                    );
+                }
+            }
+        }
+        return this.expectedDOIs;
+    }
+
+    private synchronized DOIChangePlan getPlan() throws IOException {
+        if (this.plan == null) {
+            this.plan = DOIChangePlan.read(Paths.get(this.planFile));
+        }
+        return this.plan;
+    }
+
+    private synchronized PathwaySnapshot getSnapshot() throws IOException {
+        if (this.snapshot == null) {
+            this.snapshot = PathwaySnapshot.open(Paths.get(this.snapshotFile));
+            if (this.snapshot.getReleaseNumber() != this.releaseNumber) {
+                throw new IllegalArgumentException(this.snapshotFile + " was exported for release " +
+                    this.snapshot.getReleaseNumber() + ", not " + this.releaseNumber);
+            }
+        }
+        return this.snapshot;
     }
 
     private Path getExpectedDOIFile() {
@@ -213,6 +578,14 @@ public class Verifier {
         return line.split(",")[0];
     }
 
+    private String getDOIFromJsonLine(String line) {
+        String doi = JsonLines.parse(line).get("doi");
+        if (doi == null) {
+            throw new IllegalArgumentException("No doi in expected DOI line: " + line);
+        }
+        return doi;
+    }
+
     private MySQLAdaptor getCuratorDBA() throws SQLException {
         return getDbAdaptor(
             this.curatorHost,
@@ -236,12 +609,17 @@ public class Verifier {
     private MySQLAdaptor getDbAdaptor(String host, String dbName, String userName, String password, int port)
         throws SQLException {
 
-        return new MySQLAdaptor(
+        return getDbAdaptorFactory(host, dbName, userName, password, port).call();
+    }
+
+    private AdaptorFactory getDbAdaptorFactory(String host, String dbName, String userName, String password, int port) {
+        return new AdaptorFactory(
             host,
             dbName,
             userName,
             password,
-            port
+            port,
+            this.schemaCacheFolder != null ? Paths.get(this.schemaCacheFolder) : null
         );
     }
 
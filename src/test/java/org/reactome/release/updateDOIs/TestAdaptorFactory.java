@@ -0,0 +1,79 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.GKSchema;
+import org.gk.schema.Schema;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class TestAdaptorFactory {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAdaptorsAreOpenedAtTheSameTime() throws Exception {
+		// Each factory waits for the other to start, which only happens if they run at the same time
+		CountDownLatch started = new CountDownLatch(2);
+		Callable<MySQLAdaptor> factory = () -> {
+			started.countDown();
+			assertTrue("The adaptors were opened one after another", started.await(10, TimeUnit.SECONDS));
+			return null;
+		};
+
+		List<MySQLAdaptor> adaptors = AdaptorFactory.connect(Arrays.asList(factory, factory));
+		assertEquals(2, adaptors.size());
+	}
+
+	@Test
+	public void testFailureToOpenAnAdaptorIsThrown() throws Exception {
+		Callable<MySQLAdaptor> failingFactory = () -> {
+			throw new SQLException("Access denied");
+		};
+
+		try {
+			AdaptorFactory.connect(Arrays.asList(() -> null, failingFactory));
+			fail("Expected the failure to open an adaptor to be thrown");
+		} catch (SQLException e) {
+			assertEquals("Access denied", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testSchemaCacheIsKeyedByDatabaseSchemaAndLibraryVersion() {
+		assertEquals(Paths.get("cache", "gk_central-1f2e-1.2.3.schema"),
+			AdaptorFactory.getSchemaCachePath(Paths.get("cache"), "gk_central", "1f2e", "1.2.3"));
+		assertNotNull("The version of release-common-lib is not known", AdaptorFactory.getLibraryVersion());
+	}
+
+	@Test
+	public void testCachedSchemaIsInstalled() throws Exception {
+		Path schemaPath = AdaptorFactory.getSchemaCachePath(
+			this.folder.getRoot().toPath(), "gk_central", "1f2e", AdaptorFactory.getLibraryVersion());
+		AdaptorFactory.writeSchema(new GKSchema(), schemaPath);
+
+		Schema cachedSchema = AdaptorFactory.readSchema(schemaPath);
+		assertTrue(cachedSchema instanceof GKSchema);
+
+		MySQLAdaptor dba = Mockito.mock(MySQLAdaptor.class, Mockito.CALLS_REAL_METHODS);
+		AdaptorFactory.installSchema(dba, cachedSchema);
+		assertSame(cachedSchema, dba.getSchema());
+	}
+}
@@ -0,0 +1,115 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestAuditJournal {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testEveryDecisionIsRecorded() throws Exception {
+		List<PathwayDOIRecord> trPathways = Arrays.asList(
+			new PathwayDOIRecord(1L, "Listed", "Listed", "R-HSA-1.1", "needs DOI"),
+			new PathwayDOIRecord(2L, "Not listed", "Not listed", "R-HSA-2.1", "needs DOI"),
+			new PathwayDOIRecord(3L, "Renamed", "Renamed", "R-HSA-3.1", "needs DOI"),
+			new PathwayDOIRecord(4L, "New", "New", "R-HSA-4.1", "needs DOI")
+		);
+		Map<Long, PathwayDOIRecord> gkPathways = new HashMap<>();
+		gkPathways.put(1L, new PathwayDOIRecord(1L, "Listed", "Listed", "R-HSA-1.1", null));
+		gkPathways.put(3L, new PathwayDOIRecord(3L, "Renamed in GK Central", "Renamed", "R-HSA-3.1", null));
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = new HashMap<>();
+		for (String line : Arrays.asList("10.3180/R-HSA-1.1,Listed", "10.3180/R-HSA-3.1,Renamed",
+			"10.3180/R-HSA-4.1,New")) {
+			ExpectedDOI expectedDOI = ExpectedDOI.parse(line, UpdateDOIs.REACTOME_DOI_PREFIX);
+			expectedUpdatedDOIs.put(expectedDOI.getDoi(), expectedDOI);
+		}
+
+		Path journalPath = this.folder.getRoot().toPath().resolve("audit.jsonl");
+		AuditJournal journal = AuditJournal.open(journalPath, AuditJournal.DEFAULT_CAPACITY);
+		List<SetBasedDOIUpdater.Assignment> assignments;
+		try {
+			assertTrue(AuditJournal.isEnabled());
+			assignments = SetBasedDOIUpdater.selectAssignments(
+				trPathways, gkPathways, expectedUpdatedDOIs, false, new ArrayList<>(), new ArrayList<>());
+		} finally {
+			journal.close();
+		}
+		assertFalse(AuditJournal.isEnabled());
+		assertEquals(2, assignments.size());
+
+		List<Map<String, String>> events = new ArrayList<>();
+		for (String line : Files.readAllLines(journalPath, StandardCharsets.UTF_8)) {
+			events.add(JsonLines.parse(line));
+		}
+		assertEquals(3, events.size());
+		assertEquals(3, journal.getWrittenCount());
+		assertEquals(0, journal.getDroppedCount());
+
+		assertEquals("not-in-report", events.get(0).get("decision"));
+		assertEquals("10.3180/R-HSA-2.1", events.get(0).get("doi"));
+		assertEquals("2", events.get(0).get("dbId"));
+
+		assertEquals("display-name-mismatch", events.get(1).get("decision"));
+		assertEquals("Renamed", events.get(1).get("displayName"));
+		assertEquals("3", events.get(1).get("gkDbId"));
+		assertEquals("Renamed in GK Central", events.get(1).get("gkDisplayName"));
+
+		assertEquals("missing-in-gk-central", events.get(2).get("decision"));
+		assertEquals("4", events.get(2).get("dbId"));
+		assertTrue(events.get(2).containsKey("time"));
+		assertFalse(events.get(2).containsKey("gkDbId"));
+	}
+
+	@Test
+	public void testDecisionsAreDroppedWhenTheQueueIsFull() throws Exception {
+		Path journalPath = this.folder.getRoot().toPath().resolve("audit.jsonl");
+		// Nothing is taken off the queue until the writer is started
+		AuditJournal journal = AuditJournal.open(journalPath, 2, false);
+		try {
+			for (long dbId = 1; dbId <= 5; dbId++) {
+				AuditJournal.record(AuditJournal.Decision.UPDATED, "10.3180/R-HSA-" + dbId + ".1", dbId, "Pathway");
+			}
+			assertEquals(3, journal.getDroppedCount());
+		} finally {
+			journal.close();
+		}
+
+		List<String> lines = Files.readAllLines(journalPath, StandardCharsets.UTF_8);
+		assertEquals(2, lines.size());
+		assertEquals("1", JsonLines.parse(lines.get(0)).get("dbId"));
+		assertEquals("2", JsonLines.parse(lines.get(1)).get("dbId"));
+		assertEquals(2, journal.getWrittenCount());
+		assertEquals(3, journal.getDroppedCount());
+	}
+
+	@Test
+	public void testNothingIsRecordedWithoutAJournal() throws Exception {
+		assertFalse(AuditJournal.isEnabled());
+		AuditJournal.record(AuditJournal.Decision.UPDATED, "10.3180/R-HSA-1.1", 1L, "Pathway");
+
+		Path journalPath = this.folder.getRoot().toPath().resolve("audit.jsonl");
+		AuditJournal journal = AuditJournal.open(journalPath, 1);
+		journal.close();
+		// Recorded after the journal is closed
+		AuditJournal.record(AuditJournal.Decision.UPDATED, "10.3180/R-HSA-1.1", 1L, "Pathway");
+
+		assertTrue(Files.readAllLines(journalPath, StandardCharsets.UTF_8).isEmpty());
+		assertEquals(0, journal.getWrittenCount());
+	}
+}
@@ -0,0 +1,148 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.List;
+
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+/**
+ * Checks the multi-row statements BatchAttributeWriter builds, on a mocked connection.
+ */
+public class TestBatchAttributeWriter {
+
+	private MySQLAdaptor dba;
+	private Connection connection;
+	private PreparedStatement statement;
+	private SchemaClass pathwayClass;
+
+	@Before
+	public void setUp() throws Exception {
+		this.dba = Mockito.mock(MySQLAdaptor.class);
+		this.connection = Mockito.mock(Connection.class);
+		this.statement = Mockito.mock(PreparedStatement.class);
+		Mockito.when(this.dba.getDBName()).thenReturn("gk_central");
+		Mockito.when(this.dba.getConnection()).thenReturn(this.connection);
+		Mockito.when(this.connection.prepareStatement(Mockito.anyString())).thenReturn(this.statement);
+		Mockito.when(this.statement.executeUpdate()).thenReturn(1);
+
+		this.pathwayClass = mockSchemaClass("Pathway");
+		SchemaAttribute doi = mockAttribute(this.pathwayClass, false, false);
+		SchemaAttribute modified = mockAttribute(mockSchemaClass("DatabaseObject"), true, true);
+		SchemaAttribute name = mockAttribute(mockSchemaClass("Event"), true, false);
+		Mockito.when(this.pathwayClass.getAttribute("doi")).thenReturn(doi);
+		Mockito.when(this.pathwayClass.getAttribute("modified")).thenReturn(modified);
+		Mockito.when(this.pathwayClass.getAttribute("name")).thenReturn(name);
+	}
+
+	@Test
+	public void testSingleValuedChangesAreOneUpdateWithACase() throws Exception {
+		BatchAttributeWriter writer = new BatchAttributeWriter(this.dba, 10);
+		writer.queue(mockPathway(1L, "10.3180/R-HSA-1.1"), "doi");
+		writer.queue(mockPathway(2L, "10.3180/R-HSA-2.1"), "doi");
+		writer.flush();
+
+		Mockito.verify(this.connection).prepareStatement(
+			"UPDATE Pathway SET doi = CASE DB_ID WHEN ? THEN ? WHEN ? THEN ? END WHERE DB_ID IN (?, ?)");
+		InOrder inOrder = Mockito.inOrder(this.statement);
+		inOrder.verify(this.statement).setLong(1, 1L);
+		inOrder.verify(this.statement).setObject(2, "10.3180/R-HSA-1.1");
+		inOrder.verify(this.statement).setLong(3, 2L);
+		inOrder.verify(this.statement).setObject(4, "10.3180/R-HSA-2.1");
+		inOrder.verify(this.statement).setLong(5, 1L);
+		inOrder.verify(this.statement).setLong(6, 2L);
+		inOrder.verify(this.statement).executeUpdate();
+		assertEquals(2, writer.getWrittenCount());
+		assertEquals(1, writer.getStatementCount());
+	}
+
+	@Test
+	public void testAppendedValuesAreInsertedWithTheirRankAndClass() throws Exception {
+		GKInstance pathway = mockPathway(1L, null);
+		GKInstance created = mockInstance(100L, "InstanceEdit");
+		GKInstance appended = mockInstance(200L, "InstanceEdit");
+		Mockito.when(pathway.getAttributeValuesList("modified")).thenReturn(Arrays.asList(created, appended));
+		Mockito.when(pathway.getAttributeValuesList("name")).thenReturn(Arrays.asList("Signaling", "Signalling"));
+
+		BatchAttributeWriter writer = new BatchAttributeWriter(this.dba, 10);
+		writer.queue(pathway, "modified");
+		writer.queue(pathway, "name");
+		writer.flush();
+
+		InOrder inOrder = Mockito.inOrder(this.connection, this.statement);
+		inOrder.verify(this.connection).prepareStatement("INSERT INTO DatabaseObject_2_modified " +
+			"(DB_ID, modified_rank, modified, modified_class) VALUES (?, ?, ?, ?)");
+		inOrder.verify(this.statement).setObject(1, 1L);
+		inOrder.verify(this.statement).setObject(2, 1);
+		inOrder.verify(this.statement).setObject(3, 200L);
+		inOrder.verify(this.statement).setObject(4, "InstanceEdit");
+		inOrder.verify(this.statement).executeUpdate();
+		inOrder.verify(this.connection).prepareStatement(
+			"INSERT INTO Event_2_name (DB_ID, name_rank, name) VALUES (?, ?, ?)");
+		inOrder.verify(this.statement).setObject(1, 1L);
+		inOrder.verify(this.statement).setObject(2, 1);
+		inOrder.verify(this.statement).setObject(3, "Signalling");
+		inOrder.verify(this.statement).executeUpdate();
+		assertEquals(2, writer.getStatementCount());
+	}
+
+	@Test
+	public void testQueueIsWrittenInBatchesOfTheConfiguredSize() throws Exception {
+		BatchAttributeWriter writer = new BatchAttributeWriter(this.dba, 2);
+		writer.queue(mockPathway(1L, "10.3180/R-HSA-1.1"), "doi");
+		Mockito.verify(this.connection, Mockito.never()).prepareStatement(Mockito.anyString());
+
+		writer.queue(mockPathway(2L, "10.3180/R-HSA-2.1"), "doi");
+		writer.queue(mockPathway(3L, "10.3180/R-HSA-3.1"), "doi");
+		writer.flush();
+
+		ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+		Mockito.verify(this.connection, Mockito.times(2)).prepareStatement(sql.capture());
+		List<String> statements = sql.getAllValues();
+		assertEquals("UPDATE Pathway SET doi = CASE DB_ID WHEN ? THEN ? WHEN ? THEN ? END WHERE DB_ID IN (?, ?)",
+			statements.get(0));
+		assertEquals("UPDATE Pathway SET doi = CASE DB_ID WHEN ? THEN ? END WHERE DB_ID IN (?)", statements.get(1));
+		assertEquals(3, writer.getWrittenCount());
+		assertEquals(2, writer.getStatementCount());
+	}
+
+	private GKInstance mockPathway(long dbId, String doi) throws Exception {
+		GKInstance pathway = mockInstance(dbId, "Pathway");
+		Mockito.when(pathway.getSchemClass()).thenReturn(this.pathwayClass);
+		Mockito.when(pathway.getAttributeValue("doi")).thenReturn(doi);
+		return pathway;
+	}
+
+	private GKInstance mockInstance(long dbId, String className) {
+		GKInstance instance = Mockito.mock(GKInstance.class);
+		SchemaClass schemaClass = mockSchemaClass(className);
+		Mockito.when(instance.getDBID()).thenReturn(dbId);
+		Mockito.when(instance.getSchemClass()).thenReturn(schemaClass);
+		return instance;
+	}
+
+	private SchemaClass mockSchemaClass(String name) {
+		SchemaClass schemaClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(schemaClass.getName()).thenReturn(name);
+		return schemaClass;
+	}
+
+	private SchemaAttribute mockAttribute(SchemaClass origin, boolean multiple, boolean instanceType) {
+		SchemaAttribute attribute = Mockito.mock(SchemaAttribute.class);
+		Mockito.when(attribute.getOrigin()).thenReturn(origin);
+		Mockito.when(attribute.isMultiple()).thenReturn(multiple);
+		Mockito.when(attribute.isInstanceTypeAttribute()).thenReturn(instanceType);
+		return attribute;
+	}
+}
@@ -0,0 +1,71 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.gk.persistence.MySQLAdaptor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
+
+public class TestCheckpointJournal {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testResumesFromJournalWithIncompleteLastLine() throws Exception {
+		Path journalPath = this.folder.getRoot().toPath().resolve("updateDOIs-v70.journal");
+		Files.write(journalPath,
+			"GK\t1\t10.3180/R-HSA-1.1\nTR\t1\t10.3180/R-HSA-1.1\nGK\t2\t10.3180/R-HSA-2.1\nTR\t3".getBytes(StandardCharsets.UTF_8));
+
+		try (CheckpointJournal journal = CheckpointJournal.open(journalPath)) {
+			assertTrue(journal.isCompleted(1L));
+			assertFalse(journal.isCompleted(2L));
+			assertTrue(journal.isGkCentralCommitted(2L));
+			assertFalse(journal.isGkCentralCommitted(3L));
+
+			journal.record(CheckpointJournal.Stage.TR, Collections.singletonMap(2L, "10.3180/R-HSA-2.1"));
+		}
+
+		try (CheckpointJournal journal = CheckpointJournal.open(journalPath)) {
+			assertTrue(journal.isCompleted(2L));
+			assertEquals(2, journal.getCount(CheckpointJournal.Stage.TR));
+			assertEquals(0, journal.getCount(CheckpointJournal.Stage.GK));
+		}
+	}
+
+	@Test
+	public void testCommitsGkCentralBeforeWritingTestReactome() throws Exception {
+		MySQLAdaptor dbaGkCentral = Mockito.mock(MySQLAdaptor.class);
+		BatchAttributeWriter writerTR = Mockito.mock(BatchAttributeWriter.class);
+		BatchAttributeWriter writerGK = Mockito.mock(BatchAttributeWriter.class);
+		Path journalPath = this.folder.getRoot().toPath().resolve("updateDOIs-v70.journal");
+
+		try (CheckpointJournal journal = CheckpointJournal.open(journalPath)) {
+			ChunkedCommitter committer = new ChunkedCommitter(dbaGkCentral, writerTR, writerGK, journal, 2);
+			committer.gkCentralQueued(1L, "10.3180/R-HSA-1.1");
+			committer.pathwayFinished(1L, "10.3180/R-HSA-1.1");
+			assertFalse(journal.isGkCentralCommitted(1L));
+
+			committer.gkCentralQueued(2L, "10.3180/R-HSA-2.1");
+			committer.pathwayFinished(2L, "10.3180/R-HSA-2.1");
+			assertTrue(journal.isCompleted(1L));
+			assertTrue(journal.isCompleted(2L));
+		}
+
+		InOrder inOrder = Mockito.inOrder(writerGK, dbaGkCentral, writerTR);
+		inOrder.verify(writerGK).flush();
+		inOrder.verify(dbaGkCentral).commit();
+		inOrder.verify(writerTR).flush();
+		inOrder.verify(dbaGkCentral).startTransaction();
+	}
+}
@@ -0,0 +1,100 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestDOIChangePlan {
+
+	private static final PathwayDOIRecord TR_PATHWAY =
+		new PathwayDOIRecord(1L, "Signaling, part 1", "Signaling, part 1", "R-HSA-1.1", "needs DOI");
+	private static final PathwayDOIRecord GK_PATHWAY =
+		new PathwayDOIRecord(1L, "Signaling, part 1", "Signaling, part 1", "R-HSA-1.1", null);
+	private static final PathwayDOIRecord TR_ONLY_PATHWAY =
+		new PathwayDOIRecord(2L, "Only in \"Test Reactome\"", "Only in \"Test Reactome\"", "R-HSA-2.3", "needs DOI");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWrittenPlanIsReadBack() throws Exception {
+		Path planPath = writePlan();
+
+		DOIChangePlan plan = DOIChangePlan.read(planPath);
+		assertEquals(70, plan.getReleaseNumber());
+		assertEquals("release_current", plan.getTestReactomeName());
+		assertEquals("gk_central", plan.getGkCentralName());
+		assertEquals(Arrays.asList("10.3180/R-HSA-1.1", "10.3180/R-HSA-2.3"), plan.getDOIs());
+
+		DOIChangePlan.Entry entry = plan.getEntries().get(0);
+		assertEquals(1L, entry.getDbId());
+		assertEquals("needs DOI", entry.getTestReactome().getDoi());
+		assertEquals("Signaling, part 1", entry.getTestReactome().getDisplayName());
+		assertTrue(entry.getTestReactome().matches(TR_PATHWAY));
+		assertNull(entry.getGkCentral().getDoi());
+		assertTrue(entry.getGkCentral().matches(GK_PATHWAY));
+		assertNull(plan.getEntries().get(1).getGkCentral());
+	}
+
+	@Test
+	public void testChecksumDetectsChangedPathway() {
+		DOIChangePlan.PathwayState planned = DOIChangePlan.PathwayState.of(TR_PATHWAY);
+
+		assertFalse(planned.matches(
+			new PathwayDOIRecord(1L, "Signaling, part 1", "Signaling, part 1", "R-HSA-1.2", "needs DOI")));
+		assertFalse(planned.matches(
+			new PathwayDOIRecord(1L, "Signaling, part 1", "Signaling, part 1", "R-HSA-1.1", null)));
+		assertFalse(planned.matches(
+			new PathwayDOIRecord(1L, "Signaling part 1", "Signaling, part 1", "R-HSA-1.1", "needs DOI")));
+	}
+
+	@Test
+	public void testTruncatedPlanIsRejected() throws Exception {
+		Path planPath = writePlan();
+		List<String> lines = Files.readAllLines(planPath, StandardCharsets.UTF_8);
+		Files.write(planPath, lines.subList(0, lines.size() - 1), StandardCharsets.UTF_8);
+
+		assertRejected(planPath, "has no trailer");
+	}
+
+	@Test
+	public void testEditedPlanIsRejected() throws Exception {
+		Path planPath = writePlan();
+		List<String> lines = Files.readAllLines(planPath, StandardCharsets.UTF_8);
+		lines.set(1, lines.get(1).replace("10.3180/R-HSA-1.1", "10.3180/R-HSA-1.2"));
+		Files.write(planPath, lines, StandardCharsets.UTF_8);
+
+		assertRejected(planPath, "does not match its checksum");
+	}
+
+	private Path writePlan() throws Exception {
+		Path planPath = this.folder.getRoot().toPath().resolve("updateDOIs-v70.plan");
+		new DOIChangePlan(70, "release_current", "gk_central", Arrays.asList(
+			new DOIChangePlan.Entry(1L, "10.3180/R-HSA-1.1",
+				DOIChangePlan.PathwayState.of(TR_PATHWAY), DOIChangePlan.PathwayState.of(GK_PATHWAY)),
+			new DOIChangePlan.Entry(2L, "10.3180/R-HSA-2.3", DOIChangePlan.PathwayState.of(TR_ONLY_PATHWAY), null)
+		)).write(planPath);
+		return planPath;
+	}
+
+	private void assertRejected(Path planPath, String reason) throws Exception {
+		try {
+			DOIChangePlan.read(planPath);
+			fail("Expected " + planPath + " to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(reason));
+		}
+	}
+}
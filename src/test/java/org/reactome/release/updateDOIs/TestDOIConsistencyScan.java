@@ -0,0 +1,174 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.gk.persistence.MySQLAdaptor;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestDOIConsistencyScan {
+
+	@Test
+	public void testOnlyDifferentDOIsAreDrift() {
+		MySQLAdaptor mockAdaptorTR = Mockito.mock(MySQLAdaptor.class);
+		MySQLAdaptor mockAdaptorGK = Mockito.mock(MySQLAdaptor.class);
+		Mockito.when(mockAdaptorTR.getDBName()).thenReturn("release_current");
+		Mockito.when(mockAdaptorGK.getDBName()).thenReturn("gk_central");
+
+		Map<Long, PathwayDOIRecord> trPathways = pathways(
+			new PathwayDOIRecord(1L, "Same", "Same", "R-HSA-1.1", "10.3180/R-HSA-1.1"),
+			new PathwayDOIRecord(2L, "Drifted", "Drifted", "R-HSA-2.1", "10.3180/R-HSA-2.1"),
+			new PathwayDOIRecord(3L, "Renamed", "Renamed", "R-HSA-3.1", "10.3180/R-HSA-3.1")
+		);
+		Map<Long, PathwayDOIRecord> gkPathways = pathways(
+			new PathwayDOIRecord(1L, "Same", "Same", "R-HSA-1.1", "10.3180/R-HSA-1.1"),
+			new PathwayDOIRecord(2L, "Drifted", "Drifted", "R-HSA-2.1", "needs DOI"),
+			new PathwayDOIRecord(3L, "Renamed since the release", "Renamed", "R-HSA-3.1", "10.3180/R-HSA-3.1"),
+			new PathwayDOIRecord(4L, "New in GK Central", "New in GK Central", "R-HSA-4.1", null)
+		);
+
+		DOIConsistencyScan scan = new DOIConsistencyScan(
+			mockAdaptorTR, mockAdaptorGK, DOIConsistencyScan.DEFAULT_FANOUT, DOIConsistencyScan.DEFAULT_LEAF_WIDTH);
+		List<String> driftMessages = new ArrayList<>();
+		scan.comparePathways(trPathways, gkPathways, driftMessages);
+
+		assertEquals(Collections.singletonList("Pathway [Pathway:2] Drifted has '10.3180/R-HSA-2.1' as its doi in " +
+			"release_current database and 'needs DOI' in gk_central database"), driftMessages);
+		assertEquals(1, scan.getRenamedCount());
+		assertEquals(1, scan.getOnlyInOneDatabaseCount());
+	}
+
+	@Test
+	public void testEqualRangeStopsAfterOneDigestQuery() throws Exception {
+		Map<Long, PathwayDOIRecord> trPathways = numberedPathways(1, 5000);
+		Map<Long, PathwayDOIRecord> gkPathways = numberedPathways(1, 5000);
+		gkPathways.putAll(numberedPathways(6000, 6001));
+
+		StubbedScan scan = new StubbedScan(trPathways, gkPathways, 4, 10);
+		assertEquals(Collections.emptyList(), scan.run());
+
+		assertEquals(Arrays.asList("release_current digests [1, 5001)", "gk_central digests [1, 5001)"), scan.queries);
+		assertEquals(2, scan.getDigestQueryCount());
+		assertEquals(0, scan.getLeafRangeCount());
+		assertEquals(2, scan.getOutsideTestReactomeCount());
+	}
+
+	@Test
+	public void testOnlyDifferingBucketsAreSplit() throws Exception {
+		Map<Long, PathwayDOIRecord> trPathways = numberedPathways(0, 999);
+		Map<Long, PathwayDOIRecord> gkPathways = numberedPathways(0, 999);
+		gkPathways.put(612L, new PathwayDOIRecord(612L, "Pathway 612", "Pathway 612", "R-HSA-612.1", "needs DOI"));
+
+		// [0, 1000) is split into buckets of 250, of which only [500, 750) differs and is split into buckets of 63
+		StubbedScan scan = new StubbedScan(trPathways, gkPathways, 4, 100);
+		List<String> driftMessages = scan.run();
+
+		assertEquals(Arrays.asList(
+			"release_current digests [0, 1000)", "gk_central digests [0, 1000)",
+			"release_current digests [500, 750)", "gk_central digests [500, 750)",
+			"release_current rows [563, 626)", "gk_central rows [563, 626)"), scan.queries);
+		assertEquals(Collections.singletonList("Pathway [Pathway:612] Pathway 612 has '10.3180/R-HSA-612.1' as its " +
+			"doi in release_current database and 'needs DOI' in gk_central database"), driftMessages);
+		assertEquals(1, scan.getLeafRangeCount());
+		assertEquals(0, scan.getOutsideTestReactomeCount());
+	}
+
+	@Test
+	public void testRangesAreSplitIntoAtMostFanoutBuckets() {
+		assertEquals(16, DOIConsistencyScan.ceilDiv(1000, 64));
+		assertEquals(1, DOIConsistencyScan.ceilDiv(64, 64));
+		assertEquals(2, DOIConsistencyScan.ceilDiv(65, 64));
+	}
+
+	private Map<Long, PathwayDOIRecord> numberedPathways(long firstDbId, long lastDbId) {
+		Map<Long, PathwayDOIRecord> pathwaysByDbId = new TreeMap<>();
+		for (long dbId = firstDbId; dbId <= lastDbId; dbId++) {
+			pathwaysByDbId.put(dbId, new PathwayDOIRecord(dbId, "Pathway " + dbId, "Pathway " + dbId,
+				"R-HSA-" + dbId + ".1", "10.3180/R-HSA-" + dbId + ".1"));
+		}
+		return pathwaysByDbId;
+	}
+
+	private Map<Long, PathwayDOIRecord> pathways(PathwayDOIRecord... pathways) {
+		Map<Long, PathwayDOIRecord> pathwaysByDbId = new TreeMap<>();
+		for (PathwayDOIRecord pathway : pathways) {
+			pathwaysByDbId.put(pathway.getDbId(), pathway);
+		}
+		return pathwaysByDbId;
+	}
+
+	/**
+	 * Scan of two in-memory databases, digesting their pathways in Java and recording each query made.
+	 */
+	private static class StubbedScan extends DOIConsistencyScan {
+		private final Map<MySQLAdaptor, Map<Long, PathwayDOIRecord>> pathwaysByAdaptor = new HashMap<>();
+		private final List<String> queries = new ArrayList<>();
+
+		StubbedScan(Map<Long, PathwayDOIRecord> trPathways, Map<Long, PathwayDOIRecord> gkPathways, int fanout,
+			long leafWidth) {
+			this(mockAdaptor("release_current"), trPathways, mockAdaptor("gk_central"), gkPathways, fanout, leafWidth);
+		}
+
+		private StubbedScan(MySQLAdaptor dbaTR, Map<Long, PathwayDOIRecord> trPathways, MySQLAdaptor dbaGK,
+			Map<Long, PathwayDOIRecord> gkPathways, int fanout, long leafWidth) {
+			super(dbaTR, dbaGK, fanout, leafWidth);
+			this.pathwaysByAdaptor.put(dbaTR, trPathways);
+			this.pathwaysByAdaptor.put(dbaGK, gkPathways);
+		}
+
+		private static MySQLAdaptor mockAdaptor(String databaseName) {
+			MySQLAdaptor dba = Mockito.mock(MySQLAdaptor.class);
+			Mockito.when(dba.getDBName()).thenReturn(databaseName);
+			return dba;
+		}
+
+		@Override
+		long[] getDbIdBounds(MySQLAdaptor dba) {
+			TreeMap<Long, PathwayDOIRecord> pathways = new TreeMap<>(this.pathwaysByAdaptor.get(dba));
+			return pathways.isEmpty() ? null : new long[] {pathways.firstKey(), pathways.lastKey()};
+		}
+
+		@Override
+		long countPathwaysOutside(MySQLAdaptor dba, long[] bounds) {
+			return this.pathwaysByAdaptor.get(dba).keySet().stream()
+				.filter(dbId -> bounds == null || dbId < bounds[0] || dbId > bounds[1])
+				.count();
+		}
+
+		@Override
+		Map<Long, Digest> getDigests(MySQLAdaptor dba, long from, long to, long width) {
+			this.queries.add(dba.getDBName() + " digests [" + from + ", " + to + ")");
+			Map<Long, long[]> aggregates = new HashMap<>();
+			for (PathwayDOIRecord pathway : fetch(dba, from, to).values()) {
+				long checksum = Objects.hash(pathway.getDbId(), pathway.getDisplayName(), pathway.getDoi());
+				long[] aggregate = aggregates.computeIfAbsent((pathway.getDbId() - from) / width, k -> new long[3]);
+				aggregate[0]++;
+				aggregate[1] ^= checksum;
+				aggregate[2] += checksum;
+			}
+			Map<Long, Digest> digests = new HashMap<>();
+			aggregates.forEach((bucket, aggregate) -> digests.put(bucket,
+				new Digest(aggregate[0], aggregate[1], aggregate[2])));
+			return digests;
+		}
+
+		@Override
+		Map<Long, PathwayDOIRecord> fetchRange(MySQLAdaptor dba, long from, long to) {
+			this.queries.add(dba.getDBName() + " rows [" + from + ", " + to + ")");
+			return fetch(dba, from, to);
+		}
+
+		private Map<Long, PathwayDOIRecord> fetch(MySQLAdaptor dba, long from, long to) {
+			return new TreeMap<>(new TreeMap<>(this.pathwaysByAdaptor.get(dba)).subMap(from, to));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestDOIReportWriter {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testReportOnlyAppearsOnCommit() throws Exception {
+		Path reportPath = this.folder.getRoot().toPath().resolve("doisToBeUpdated-v70.txt");
+
+		try (DOIReportWriter writer = new DOIReportWriter(reportPath, true)) {
+			writer.write("10.3180/R-HSA-1.1", "Pathway, with a comma", 1L);
+			writer.write("10.3180/R-HSA-2.1", "Pathway \"quoted\"", 2L);
+			writer.flush();
+			assertFalse(Files.exists(reportPath));
+			writer.commit();
+		}
+
+		assertEquals(
+			Arrays.asList("10.3180/R-HSA-1.1,Pathway, with a comma", "10.3180/R-HSA-2.1,Pathway \"quoted\""),
+			Files.readAllLines(reportPath, StandardCharsets.UTF_8)
+		);
+		List<String> jsonLines =
+			Files.readAllLines(DOIReportWriter.getStructuredReportPath(reportPath), StandardCharsets.UTF_8);
+		assertEquals(2, jsonLines.size());
+		Map<String, String> fields = JsonLines.parse(jsonLines.get(1));
+		assertEquals("10.3180/R-HSA-2.1", fields.get("doi"));
+		assertEquals("Pathway \"quoted\"", fields.get("displayName"));
+		assertEquals("2", fields.get("dbId"));
+	}
+
+	@Test
+	public void testStructuredReportOfAnEarlierRunIsDeleted() throws Exception {
+		Path reportPath = this.folder.getRoot().toPath().resolve("doisToBeUpdated-v70.txt");
+		Path structuredReportPath = DOIReportWriter.getStructuredReportPath(reportPath);
+
+		try (DOIReportWriter writer = new DOIReportWriter(reportPath, true)) {
+			writer.write("10.3180/R-HSA-1.1", "Pathway", 1L);
+			writer.commit();
+		}
+		assertTrue(Files.exists(structuredReportPath));
+
+		try (DOIReportWriter writer = new DOIReportWriter(reportPath, false)) {
+			writer.write("10.3180/R-HSA-2.1", "Other pathway", 2L);
+			writer.commit();
+		}
+		assertFalse(Files.exists(structuredReportPath));
+		assertEquals(Arrays.asList("10.3180/R-HSA-2.1,Other pathway"),
+			Files.readAllLines(reportPath, StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testUncommittedReportIsDiscarded() throws Exception {
+		Path reportPath = this.folder.getRoot().toPath().resolve("doisToBeUpdated-v70.txt");
+
+		try (DOIReportWriter writer = new DOIReportWriter(reportPath, true)) {
+			writer.write("10.3180/R-HSA-1.1", "Pathway", 1L);
+		}
+
+		File[] remainingFiles = this.folder.getRoot().listFiles();
+		assertTrue(remainingFiles == null || remainingFiles.length == 0);
+	}
+}
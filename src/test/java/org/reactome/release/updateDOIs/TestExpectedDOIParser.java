@@ -0,0 +1,53 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestExpectedDOIParser {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSkipsMalformedLinesWithTheirLineNumbers() throws Exception {
+		Path report = this.folder.getRoot().toPath().resolve("UpdateDOIs.report");
+		Files.write(report, Arrays.asList(
+			"10.3180/R-HSA-1.1,Signaling, part 1",
+			"10.3180/R-HSA-2.1 without a display name",
+			"",
+			"10.1000/R-HSA-3.1,Wrong prefix",
+			"10.3180/R-HSA-4,No version",
+			"10.3180/R-HSA-5.2,Kept pathway"
+		), StandardCharsets.UTF_8);
+
+		ExpectedDOIParser parser = new ExpectedDOIParser("10.3180");
+		Map<String, ExpectedDOI> expectedDOIs = parser.read(report);
+
+		assertEquals(Arrays.asList("10.3180/R-HSA-1.1", "10.3180/R-HSA-5.2"), Arrays.asList(expectedDOIs.keySet().toArray()));
+		assertEquals(3, parser.getInvalidLineCount());
+		assertTrue(parser.getErrors().get(0).startsWith("UpdateDOIs.report line 2: "));
+		assertTrue(parser.getErrors().get(1).startsWith("UpdateDOIs.report line 4: "));
+		assertTrue(parser.getErrors().get(2).startsWith("UpdateDOIs.report line 5: "));
+
+		ExpectedDOI expectedDOI = expectedDOIs.get("10.3180/R-HSA-1.1");
+		assertEquals("Signaling, part 1", expectedDOI.getDisplayName());
+		assertEquals("R-HSA-1", expectedDOI.getStableId());
+		assertEquals("1", expectedDOI.getStableIdVersion());
+	}
+
+	@Test
+	public void testMissingReportGivesNoExpectedDOIs() {
+		String missing = this.folder.getRoot().toPath().resolve("missing.report").toString();
+		assertTrue(UpdateDOIs.getExpectedUpdatedDOIs(missing).isEmpty());
+	}
+}
@@ -0,0 +1,114 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.gk.persistence.MySQLAdaptor;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class TestMetrics {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@After
+	public void tearDown() {
+		Metrics.reset();
+	}
+
+	@Test
+	public void testSnapshotCountsRoundTripsAndRowsPerDatabase() throws Exception {
+		MySQLAdaptor dbaGkCentral = Mockito.mock(MySQLAdaptor.class);
+		Mockito.when(dbaGkCentral.getDBName()).thenReturn("gk_central");
+		for (int i = 0; i < 2; i++) {
+			try (Metrics.Timer timer = Metrics.roundTrip(dbaGkCentral, Metrics.SELECT)) {
+				Metrics.rowsRead(dbaGkCentral, 5);
+			}
+		}
+		Metrics.rowsWritten(dbaGkCentral, 3);
+
+		Path directory = this.folder.getRoot().toPath();
+		Metrics.writeSnapshot(directory, "updateDOIs");
+
+		List<String> prometheusLines = Files.readAllLines(directory.resolve("updateDOIs.prom"), StandardCharsets.UTF_8);
+		String labels = "{program=\"updateDOIs\",database=\"gk_central\"";
+		assertTrue(prometheusLines.contains(
+			"update_dois_db_round_trip_duration_seconds_bucket" + labels + ",operation=\"select\",le=\"+Inf\"} 2"));
+		assertTrue(prometheusLines.contains(
+			"update_dois_db_round_trip_duration_seconds_count" + labels + ",operation=\"select\"} 2"));
+		assertTrue(prometheusLines.contains("update_dois_db_rows_read_total" + labels + "} 10"));
+		assertTrue(prometheusLines.contains("update_dois_db_rows_written_total" + labels + "} 3"));
+
+		List<Map<String, String>> jsonObjects = new ArrayList<>();
+		for (String line : Files.readAllLines(directory.resolve("updateDOIs-metrics.json"), StandardCharsets.UTF_8)) {
+			String object = line.trim().replaceAll(",$", "");
+			if (object.startsWith("{")) {
+				jsonObjects.add(JsonLines.parse(object));
+			}
+		}
+		assertEquals(2, jsonObjects.size());
+		assertEquals("roundTrips", jsonObjects.get(0).get("type"));
+		assertEquals("2", jsonObjects.get(0).get("count"));
+		assertEquals("rows", jsonObjects.get(1).get("type"));
+		assertEquals("10", jsonObjects.get(1).get("read"));
+		assertEquals("3", jsonObjects.get(1).get("written"));
+	}
+
+	@Test
+	public void testNestedPhaseTimeIsOnlyCountedInTheNestedPhase() throws Exception {
+		try (Metrics.Timer run = Metrics.phase(Metrics.RUN)) {
+			try (Metrics.Timer write = Metrics.phase(Metrics.WRITE)) {
+				try (Metrics.Timer commit = Metrics.phase(Metrics.COMMIT)) {
+					Thread.sleep(200);
+				}
+			}
+		}
+
+		Map<String, String> write = null;
+		Map<String, String> commit = null;
+		Map<String, String> run = null;
+		for (String line : Metrics.toJson("updateDOIs").split("\n")) {
+			String object = line.trim().replaceAll(",$", "");
+			if (object.startsWith("{")) {
+				Map<String, String> fields = JsonLines.parse(object);
+				if (Metrics.WRITE.equals(fields.get("phase"))) {
+					write = fields;
+				} else if (Metrics.COMMIT.equals(fields.get("phase"))) {
+					commit = fields;
+				} else if (Metrics.RUN.equals(fields.get("phase"))) {
+					run = fields;
+				}
+			}
+		}
+		assertTrue(Double.parseDouble(commit.get("totalSeconds")) >= 0.2);
+		assertTrue(Double.parseDouble(commit.get("wallSeconds")) >= 0.2);
+		assertTrue(Double.parseDouble(write.get("totalSeconds")) < 0.1);
+		assertTrue(Double.parseDouble(write.get("wallSeconds")) < 0.1);
+		assertTrue(Double.parseDouble(run.get("totalSeconds")) >= 0.2);
+	}
+
+	@Test
+	public void testQuantilesAreBucketUpperBounds() {
+		Metrics.Histogram histogram = new Metrics.Histogram();
+		for (int i = 0; i < 99; i++) {
+			histogram.record(2_000_000L);
+		}
+		histogram.record(400_000_000L);
+
+		assertEquals(0.0025, histogram.getQuantileSeconds(0.5), 1e-9);
+		assertEquals(0.0025, histogram.getQuantileSeconds(0.99), 1e-9);
+		assertEquals(0.4, histogram.getQuantileSeconds(1.0), 1e-9);
+		assertEquals(0.598, histogram.getTotalSeconds(), 1e-9);
+	}
+}
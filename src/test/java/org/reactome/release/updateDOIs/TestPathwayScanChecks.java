@@ -0,0 +1,65 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestPathwayScanChecks {
+
+	private static final List<String> EXPECTED_DOIS = Arrays.asList("10.3180/R-HSA-1.1", "10.3180/R-HSA-2.1");
+
+	@Test
+	public void testReportsPathwaysStillNeedingTheirDOI() {
+		PathwayScanChecks scanChecks = scan(
+			new PathwayDOIRecord(1L, "Assigned", "Assigned", "R-HSA-1.1", "10.3180/R-HSA-1.1"),
+			new PathwayDOIRecord(2L, "Not assigned", "Not assigned", "R-HSA-2.1", "needs DOI"),
+			new PathwayDOIRecord(3L, "Not expected", "Not expected", "R-HSA-3.1", "needs DOI"),
+			new PathwayDOIRecord(4L, "Already assigned", "Already assigned", "R-HSA-4.1", "10.3180/R-HSA-4.1")
+		);
+
+		assertEquals(Arrays.asList("The following pathways in the release database still require DOIs:",
+			"[Pathway:2] Not assigned", "[Pathway:3] Not expected"), scanChecks.getUnassignedDOIMessages());
+		// Only the pathways expected to have been assigned a DOI count in the curated database
+		assertEquals(Arrays.asList("The following pathways in the curated database still require DOIs:",
+			"[Pathway:2] Not assigned"), scanChecks.getRequiringDOIMessages());
+	}
+
+	@Test
+	public void testReportsDOIDifferingInCase() {
+		PathwayScanChecks scanChecks = scan(
+			new PathwayDOIRecord(1L, "Assigned", "Assigned", "R-HSA-1.1", "10.3180/R-HSA-1.1"),
+			new PathwayDOIRecord(2L, "Lower case", "Lower case", "R-HSA-2.1", "10.3180/r-hsa-2.1 ")
+		);
+
+		assertEquals(Collections.singletonList(
+			"Pathway [Pathway:2] Lower case in gk_central database has '10.3180/R-HSA-2.1' as its doi " +
+				"(expected 10.3180/R-HSA-2.1)"), scanChecks.getUnexpectedDOIMessages());
+		assertTrue(scanChecks.getUnassignedDOIMessages().isEmpty());
+	}
+
+	@Test
+	public void testMissingExpectedDOIFails() {
+		PathwayScanChecks scanChecks =
+			scan(new PathwayDOIRecord(1L, "Assigned", "Assigned", "R-HSA-1.1", "10.3180/R-HSA-1.1"));
+		try {
+			scanChecks.getUnexpectedDOIMessages();
+			fail("Expected the missing DOI 10.3180/R-HSA-2.1 to fail the check");
+		} catch (RuntimeException e) {
+			assertEquals("Unable to find pathway with doi 10.3180/R-HSA-2.1 in database gk_central", e.getMessage());
+		}
+	}
+
+	private PathwayScanChecks scan(PathwayDOIRecord... pathways) {
+		PathwayScanChecks scanChecks = new PathwayScanChecks("gk_central", EXPECTED_DOIS);
+		for (PathwayDOIRecord pathway : pathways) {
+			scanChecks.handle(pathway);
+		}
+		return scanChecks;
+	}
+}
@@ -0,0 +1,111 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestPathwaySnapshot {
+
+	private static final List<PathwayDOIRecord> TR_PATHWAYS = Arrays.asList(
+		new PathwayDOIRecord(1L, "Signaling", "Signaling", "R-HSA-1.1", "10.3180/R-HSA-1.1"),
+		new PathwayDOIRecord(5L, "M\u00e9tabolisme", "M\u00e9tabolisme", "R-HSA-5.12", "needs DOI"),
+		new PathwayDOIRecord(7L, "No stable identifier", null, null, null)
+	);
+	private static final List<PathwayDOIRecord> GK_PATHWAYS = Arrays.asList(
+		new PathwayDOIRecord(1L, "Signaling", "Signaling", "R-HSA-1.1", "10.3180/R-HSA-1.1"),
+		new PathwayDOIRecord(5L, "M\u00e9tabolisme", "M\u00e9tabolisme", "R-HSA-5.12", "needs DOI")
+	);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testWrittenSnapshotIsReadBack() throws Exception {
+		PathwaySnapshot snapshot = PathwaySnapshot.open(writeSnapshot());
+		assertEquals(70, snapshot.getReleaseNumber());
+
+		PathwaySnapshot.Section testReactome = snapshot.getTestReactome();
+		assertEquals("release_current", testReactome.getDatabaseName());
+		assertEquals(3, testReactome.size());
+		assertEquals(5L, testReactome.getDbId(1));
+		assertEquals("M\u00e9tabolisme", testReactome.getDisplayName(1));
+		assertEquals("R-HSA-5", testReactome.getStableIdentifier(1));
+		assertEquals(12, testReactome.getStableIdVersion(1));
+		assertEquals("R-HSA-5.12", testReactome.getStableId(1));
+		assertEquals("needs DOI", testReactome.getDoi(1));
+		assertEquals(Instant.ofEpochMilli(1700000000000L), testReactome.getLastModified(1));
+
+		assertNull(testReactome.getName(2));
+		assertNull(testReactome.getStableId(2));
+		assertEquals(-1, testReactome.getStableIdVersion(2));
+		assertNull(testReactome.getDoi(2));
+		assertNull(testReactome.getLastModified(2));
+
+		assertEquals("gk_central", snapshot.getGkCentral().getDatabaseName());
+		assertEquals(1, snapshot.getGkCentral().indexOf(5L));
+		assertEquals(-1, snapshot.getGkCentral().indexOf(7L));
+		assertEquals("[Pathway:5] M\u00e9tabolisme", snapshot.getGkCentral().getRecord(1).toString());
+	}
+
+	@Test
+	public void testCandidatesAreSelectedFromTheSnapshot() throws Exception {
+		PathwaySnapshot snapshot = PathwaySnapshot.open(writeSnapshot());
+
+		for (CandidateSelector.Strategy strategy : CandidateSelector.Strategy.values()) {
+			List<PathwayDOIRecord> candidates =
+				new CandidateSelector(strategy, false).selectRecords(snapshot.getTestReactome());
+			assertEquals(strategy.toString(), 1, candidates.size());
+			assertEquals(5L, candidates.get(0).getDbId());
+		}
+	}
+
+	@Test
+	public void testWhatIfUsesTheSnapshot() throws Exception {
+		Path snapshotPath = writeSnapshot();
+		Path reportPath = this.folder.getRoot().toPath().resolve("UpdateDOIs.report");
+		Files.write(reportPath, Collections.singletonList("10.3180/R-HSA-5.12,M\u00e9tabolisme"), StandardCharsets.UTF_8);
+
+		assertEquals(Collections.singletonList("10.3180/R-HSA-5.12"), UpdateDOIs.whatIf(reportPath, snapshotPath, 70));
+	}
+
+	@Test
+	public void testTruncatedSnapshotIsRejected() throws Exception {
+		Path snapshotPath = writeSnapshot();
+		byte[] bytes = Files.readAllBytes(snapshotPath);
+		Files.write(snapshotPath, Arrays.copyOf(bytes, bytes.length - 8));
+
+		try {
+			PathwaySnapshot.open(snapshotPath);
+			fail("Expected the truncated snapshot to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(snapshotPath + " is truncated", e.getMessage());
+		}
+	}
+
+	private Path writeSnapshot() throws Exception {
+		Map<Long, Long> lastModified = new HashMap<>();
+		lastModified.put(1L, 1600000000000L);
+		lastModified.put(5L, 1700000000000L);
+
+		PathwaySnapshot.Writer writer = new PathwaySnapshot.Writer(70);
+		writer.addSection("release_current", TR_PATHWAYS, lastModified);
+		writer.addSection("gk_central", GK_PATHWAYS, lastModified);
+		Path snapshotPath = this.folder.getRoot().toPath().resolve("updateDOIs-v70.snapshot");
+		writer.write(snapshotPath);
+		return snapshotPath;
+	}
+}
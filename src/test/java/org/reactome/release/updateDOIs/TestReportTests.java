@@ -0,0 +1,86 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TestReportTests {
+
+	private static final String REACTOME_DOI_PREFIX = "10.3180";
+
+	@Test
+	public void testClassifiesDOIsNotUpdated() {
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = report(
+			"10.3180/R-HSA-1.2,Version drift pathway",
+			"10.3180/R-HSA-2.1,Renamed pathway",
+			"10.3180/R-HSA-3.1,Moved pathway"
+		);
+		List<String> notUpdated = Arrays.asList(
+			"10.3180/R-HSA-1.1:Version drift pathway",
+			"10.3180/R-HSA-2.1:Renamed pathway (new)",
+			"10.3180/R-HSA-33.1:Moved pathway",
+			"10.3180/R-HSA-4.1:Unknown pathway"
+		);
+
+		ReconciliationResult result = ReportTests.expectedUpdatesTests(
+			expectedUpdatedDOIs, Collections.emptyList(), notUpdated, notUpdated.size(), REACTOME_DOI_PREFIX);
+
+		assertTrue(result.hasMissedExpectedDOIs());
+		assertEquals(3, result.getMismatches().size());
+		assertMismatch(result, ReconciliationResult.MismatchType.VERSION_DRIFT, "10.3180/R-HSA-1.2", "10.3180/R-HSA-1.1");
+		assertMismatch(result, ReconciliationResult.MismatchType.RENAMED, "10.3180/R-HSA-2.1", "10.3180/R-HSA-2.1");
+		assertMismatch(result, ReconciliationResult.MismatchType.DB_ID_DRIFT, "10.3180/R-HSA-3.1", "10.3180/R-HSA-33.1");
+		assertEquals(Arrays.asList("10.3180/R-HSA-4.1"), result.getUnresolvedDOIs());
+	}
+
+	@Test
+	public void testKeepsDisplayNamesContainingColons() {
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = report("10.3180/R-HSA-5.1,Signaling: part 2");
+		List<String> notUpdated = Arrays.asList("10.3180/R-HSA-6.1:Signaling: part 2");
+
+		ReconciliationResult result = ReportTests.expectedUpdatesTests(
+			expectedUpdatedDOIs, Collections.emptyList(), notUpdated, notUpdated.size(), REACTOME_DOI_PREFIX);
+
+		assertMismatch(result, ReconciliationResult.MismatchType.DB_ID_DRIFT, "10.3180/R-HSA-5.1", "10.3180/R-HSA-6.1");
+		assertTrue(result.getUnresolvedDOIs().isEmpty());
+	}
+
+	@Test
+	public void testAllExpectedDOIsUpdated() {
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = report("10.3180/R-HSA-1.1,Updated pathway");
+		List<String> updated = Arrays.asList("10.3180/R-HSA-1.1");
+
+		ReconciliationResult result = ReportTests.expectedUpdatesTests(
+			expectedUpdatedDOIs, updated, Collections.emptyList(), updated.size(), REACTOME_DOI_PREFIX);
+
+		assertFalse(result.hasMissedExpectedDOIs());
+		assertTrue(result.areAllExpectedDOIsUpdated());
+		assertTrue(result.getMismatches().isEmpty());
+	}
+
+	private void assertMismatch(ReconciliationResult result, ReconciliationResult.MismatchType type,
+		String expectedDOI, String actualDOI) {
+		List<ReconciliationResult.Mismatch> mismatches = result.getMismatches(type);
+		assertEquals(1, mismatches.size());
+		assertEquals(expectedDOI, mismatches.get(0).getExpectedDOI());
+		assertEquals(actualDOI, mismatches.get(0).getActualDOI());
+	}
+
+	// Builds the same structure as UpdateDOIs.getExpectedUpdatedDOIs from "doi,display name" report lines
+	private Map<String, ExpectedDOI> report(String... lines) {
+		Map<String, ExpectedDOI> expectedUpdatedDOIs = new LinkedHashMap<>();
+		for (String line : lines) {
+			ExpectedDOI expectedDOI = ExpectedDOI.parse(line, REACTOME_DOI_PREFIX);
+			expectedUpdatedDOIs.put(expectedDOI.getDoi(), expectedDOI);
+		}
+		return expectedUpdatedDOIs;
+	}
+}
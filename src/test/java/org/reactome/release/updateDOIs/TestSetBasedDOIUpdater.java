@@ -0,0 +1,190 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gk.model.GKInstance;
+import org.gk.persistence.MySQLAdaptor;
+import org.gk.schema.SchemaAttribute;
+import org.gk.schema.SchemaClass;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Checks that the set-based engine assigns the same DOIs as the instance-by-instance loop of UpdateDOIs.
+ */
+public class TestSetBasedDOIUpdater {
+
+	private static final int MOCK_RELEASE_NUMBER = 70;
+	private static final long MOCK_PERSON_DBID = 12345L;
+
+	// DB_ID, stable id, Test Reactome name, GK Central display name; the last pathway was renamed in GK Central
+	private static final Object[][] PATHWAYS = {
+		{1L, "R-HSA-1.1", "Listed pathway", "Listed pathway"},
+		{2L, "R-HSA-2.1", "Unlisted pathway", "Unlisted pathway"},
+		{3L, "R-HSA-3.2", "Renamed pathway", "(NEW)Renamed pathway"}
+	};
+
+	private MySQLAdaptor mockAdaptorTR;
+	private MySQLAdaptor mockAdaptorGK;
+	private List<GKInstance> trPathways;
+	private List<GKInstance> gkPathways;
+	private Path reportPath;
+
+	@Before
+	public void setUp() throws Exception {
+		this.reportPath = Files.createTempFile("UpdateDOIs", ".report");
+		Files.write(this.reportPath, Arrays.asList(
+			"10.3180/R-HSA-1.1,Listed pathway",
+			"10.3180/R-HSA-3.2,Renamed pathway"
+		));
+
+		this.mockAdaptorTR = mockAdaptor();
+		this.mockAdaptorGK = mockAdaptor();
+
+		this.trPathways = new ArrayList<>();
+		this.gkPathways = new ArrayList<>();
+		for (Object[] pathway : PATHWAYS) {
+			this.trPathways.add(mockPathway((Long) pathway[0], (String) pathway[1], (String) pathway[2]));
+			this.gkPathways.add(mockPathway((Long) pathway[0], (String) pathway[1], (String) pathway[3]));
+		}
+		Mockito.when(this.mockAdaptorTR.fetchInstanceByAttribute("Pathway", "doi", "NOT REGEXP", "^10.3180"))
+			.thenReturn(this.trPathways);
+		Mockito.when(this.mockAdaptorGK.fetchInstanceByAttribute(
+			Mockito.eq("Pathway"), Mockito.eq("DB_ID"), Mockito.eq("="), Mockito.any()))
+			.thenReturn(this.gkPathways);
+
+		UpdateDOIs.setAdaptors(this.mockAdaptorTR, this.mockAdaptorGK);
+		UpdateDOIs.setUseSetBasedEngine(false);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		UpdateDOIs.setResolverWorkers(0, null);
+		UpdateDOIs.setDeltaMode(false);
+		Files.deleteIfExists(this.reportPath);
+		Files.deleteIfExists(Paths.get("doisToBeUpdated-v" + MOCK_RELEASE_NUMBER + ".txt"));
+	}
+
+	@Test
+	public void testSameDOIsAssignedInTestMode() throws Exception {
+		List<String> instanceLoopDOIs =
+			UpdateDOIs.findAndUpdateDOIs(MOCK_PERSON_DBID, this.reportPath, MOCK_RELEASE_NUMBER, true);
+
+		assertEquals(Arrays.asList("10.3180/R-HSA-1.1", "10.3180/R-HSA-2.1"), instanceLoopDOIs);
+		assertEquals(instanceLoopDOIs, setBasedDOIs(true));
+	}
+
+	@Test
+	public void testSameDOIsAssignedFromReport() throws Exception {
+		List<String> instanceLoopDOIs =
+			UpdateDOIs.findAndUpdateDOIs(MOCK_PERSON_DBID, this.reportPath, MOCK_RELEASE_NUMBER, false);
+
+		assertEquals(Arrays.asList("10.3180/R-HSA-1.1"), instanceLoopDOIs);
+		assertEquals(instanceLoopDOIs, setBasedDOIs(false));
+	}
+
+	@Test
+	public void testSameDOIsAssignedWithResolverWorkers() throws Exception {
+		List<String> instanceLoopDOIs =
+			UpdateDOIs.findAndUpdateDOIs(MOCK_PERSON_DBID, this.reportPath, MOCK_RELEASE_NUMBER, true);
+
+		UpdateDOIs.setResolverWorkers(2, () -> this.mockAdaptorGK);
+		assertEquals(instanceLoopDOIs,
+			UpdateDOIs.findAndUpdateDOIs(MOCK_PERSON_DBID, this.reportPath, MOCK_RELEASE_NUMBER, true));
+	}
+
+	@Test
+	public void testDeltaModeSkipsPathwaysAlreadyUpToDate() throws Exception {
+		// A previous run already gave the listed pathway its DOI in GK Central, but not in Test Reactome
+		GKInstance trPathway = this.trPathways.get(0);
+		GKInstance gkPathway = this.gkPathways.get(0);
+		Mockito.when(gkPathway.getAttributeValue("doi")).thenReturn("10.3180/R-HSA-1.1");
+
+		UpdateDOIs.setDeltaMode(true);
+		List<String> assignedDOIs =
+			UpdateDOIs.findAndUpdateDOIs(MOCK_PERSON_DBID, this.reportPath, MOCK_RELEASE_NUMBER, false);
+
+		assertEquals(Arrays.asList("10.3180/R-HSA-1.1"), assignedDOIs);
+		Mockito.verify(gkPathway, Mockito.never()).setAttributeValue("doi", "10.3180/R-HSA-1.1");
+		Mockito.verify(trPathway).setAttributeValue("doi", "10.3180/R-HSA-1.1");
+	}
+
+	private List<String> setBasedDOIs(boolean testMode) {
+		List<PathwayDOIRecord> trPathways = new ArrayList<>();
+		Map<Long, PathwayDOIRecord> gkPathways = new HashMap<>();
+		for (Object[] pathway : PATHWAYS) {
+			long dbId = (Long) pathway[0];
+			trPathways.add(new PathwayDOIRecord(
+				dbId, (String) pathway[2], (String) pathway[2], (String) pathway[1], "needs DOI"));
+			gkPathways.put(dbId, new PathwayDOIRecord(
+				dbId, (String) pathway[3], (String) pathway[3], (String) pathway[1], "needs DOI"));
+		}
+
+		List<String> assignedDOIs = new ArrayList<>();
+		for (SetBasedDOIUpdater.Assignment assignment : SetBasedDOIUpdater.selectAssignments(
+			trPathways, gkPathways, UpdateDOIs.getExpectedUpdatedDOIs(this.reportPath.toString()), testMode,
+			new ArrayList<>(), new ArrayList<>())) {
+			assignedDOIs.add(assignment.getDoi());
+		}
+		return assignedDOIs;
+	}
+
+	private MySQLAdaptor mockAdaptor() throws Exception {
+		MySQLAdaptor adaptor = Mockito.mock(MySQLAdaptor.class);
+		Connection connection = Mockito.mock(Connection.class);
+		PreparedStatement statement = Mockito.mock(PreparedStatement.class);
+		Mockito.when(adaptor.supportsTransactions()).thenReturn(true);
+		Mockito.when(adaptor.getConnection()).thenReturn(connection);
+		Mockito.when(connection.prepareStatement(Mockito.anyString())).thenReturn(statement);
+		return adaptor;
+	}
+
+	private GKInstance mockPathway(Long dbId, String stableId, String name) throws Exception {
+		GKInstance pathway = Mockito.mock(GKInstance.class);
+		GKInstance stableIdentifier = Mockito.mock(GKInstance.class);
+		GKInstance instanceEdit = Mockito.mock(GKInstance.class);
+		Mockito.when(stableIdentifier.getDisplayName()).thenReturn(stableId);
+		Mockito.when(instanceEdit.getDBID()).thenReturn(MOCK_PERSON_DBID);
+		Mockito.when(instanceEdit.getSchemClass()).thenReturn(mockSchemaClass("InstanceEdit"));
+
+		Mockito.when(pathway.getDBID()).thenReturn(dbId);
+		Mockito.when(pathway.getDisplayName()).thenReturn(name);
+		Mockito.when(pathway.getAttributeValue("stableIdentifier")).thenReturn(stableIdentifier);
+		Mockito.when(pathway.getAttributeValue("name")).thenReturn(name);
+		Mockito.when(pathway.getAttributeValuesList("modified")).thenReturn(Arrays.asList(instanceEdit));
+
+		SchemaClass pathwayClass = mockSchemaClass("Pathway");
+		SchemaAttribute modified = mockAttribute(mockSchemaClass("DatabaseObject"), true);
+		SchemaAttribute doi = mockAttribute(pathwayClass, false);
+		Mockito.when(pathwayClass.getAttribute("modified")).thenReturn(modified);
+		Mockito.when(pathwayClass.getAttribute("doi")).thenReturn(doi);
+		Mockito.when(pathway.getSchemClass()).thenReturn(pathwayClass);
+		return pathway;
+	}
+
+	private SchemaClass mockSchemaClass(String name) {
+		SchemaClass schemaClass = Mockito.mock(SchemaClass.class);
+		Mockito.when(schemaClass.getName()).thenReturn(name);
+		return schemaClass;
+	}
+
+	private SchemaAttribute mockAttribute(SchemaClass origin, boolean multiple) {
+		SchemaAttribute attribute = Mockito.mock(SchemaAttribute.class);
+		Mockito.when(attribute.getOrigin()).thenReturn(origin);
+		Mockito.when(attribute.isMultiple()).thenReturn(multiple);
+		return attribute;
+	}
+}
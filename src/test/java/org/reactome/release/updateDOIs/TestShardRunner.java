@@ -0,0 +1,130 @@
+package org.reactome.release.updateDOIs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestShardRunner {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testShardSpecs() {
+		ShardSpec modulo = ShardSpec.parse("mod:1/4");
+		assertTrue(modulo.contains(5L));
+		assertFalse(modulo.contains(6L));
+		assertEquals("mod:1/4", modulo.toString());
+		assertEquals("mod-1-of-4", modulo.getName());
+
+		assertTrue(ShardSpec.parse("range:100-200").contains(100L));
+		assertFalse(ShardSpec.parse("range:100-200").contains(200L));
+
+		assertFalse(modulo.overlaps(ShardSpec.modulo(2, 4)));
+		assertTrue(modulo.overlaps(ShardSpec.modulo(1, 2)));
+		assertFalse(modulo.overlaps(ShardSpec.modulo(0, 2)));
+		assertFalse(ShardSpec.range(100, 200).overlaps(ShardSpec.range(200, 300)));
+		assertTrue(ShardSpec.range(100, 201).overlaps(ShardSpec.range(200, 300)));
+		assertFalse(modulo.overlaps(ShardSpec.range(6, 9)));
+		assertTrue(modulo.overlaps(ShardSpec.range(6, 10)));
+
+		for (String spec : Arrays.asList("mod:4/4", "range:5-5", "mod:1", "shard:1/4")) {
+			try {
+				ShardSpec.parse(spec);
+				fail("Expected " + spec + " to be rejected");
+			} catch (IllegalArgumentException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testResultIsReadBack() throws Exception {
+		Path resultPath = ShardRunner.getResultPath(this.folder.getRoot().toPath(), ShardSpec.modulo(1, 4));
+		writeResult(ShardSpec.modulo(1, 4), 5L, "10.3180/R-HSA-5.1");
+
+		ShardResult result = ShardResult.read(resultPath);
+		assertEquals(70, result.getReleaseNumber());
+		assertEquals(ShardSpec.modulo(1, 4), result.getShard());
+		assertTrue(result.isTestMode());
+		assertEquals(1, result.getCandidateCount());
+		assertEquals(Collections.singletonList("10.3180/R-HSA-5.1"), result.getUpdated());
+		assertEquals(Collections.singletonList("10.3180/R-HSA-9.1:Pathway: 9"), result.getNotUpdated());
+		assertEquals(5L, result.getAssigned().get(0).getDbId());
+		assertTrue(result.getAssigned().get(0).isInGkCentral());
+
+		List<String> lines = Files.readAllLines(resultPath);
+		Files.write(resultPath, lines.subList(0, lines.size() - 1));
+		try {
+			ShardResult.read(resultPath);
+			fail("Expected the result without a trailer to be rejected");
+		} catch (IllegalArgumentException e) {
+			assertEquals(resultPath + " has no trailer; it was not completely written", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMergeWritesTheTestReportInDbIdOrder() throws Exception {
+		Path shardDirectory = this.folder.getRoot().toPath();
+		writeResult(ShardSpec.modulo(1, 2), 5L, "10.3180/R-HSA-5.1");
+		writeResult(ShardSpec.modulo(0, 2), 4L, "10.3180/R-HSA-4.1");
+		Path reportPath = shardDirectory.resolve("doisToBeUpdated-v70.txt");
+
+		try (DOIReportWriter testReport = new DOIReportWriter(reportPath, false)) {
+			assertEquals(Arrays.asList("10.3180/R-HSA-4.1", "10.3180/R-HSA-5.1"),
+				ShardRunner.merge(shardDirectory, new HashMap<>(), 70, testReport));
+		}
+		assertEquals(Arrays.asList("10.3180/R-HSA-4.1,Pathway 4", "10.3180/R-HSA-5.1,Pathway 5"),
+			Files.readAllLines(reportPath));
+	}
+
+	@Test
+	public void testOverlappingShardsAreRefused() throws Exception {
+		Path shardDirectory = this.folder.getRoot().toPath();
+		writeResult(ShardSpec.modulo(1, 2), 5L, "10.3180/R-HSA-5.1");
+		writeResult(ShardSpec.range(0, 10), 4L, "10.3180/R-HSA-4.1");
+
+		try {
+			ShardRunner.merge(shardDirectory, new HashMap<>(), 70, null);
+			fail("Expected overlapping shards to be refused");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith(" overlap"));
+		}
+	}
+
+	@Test
+	public void testLeaseIsExclusive() throws Exception {
+		Path shardDirectory = this.folder.getRoot().toPath();
+		ShardSpec shard = ShardSpec.modulo(0, 2);
+		try (ShardRunner.Lease lease = ShardRunner.Lease.acquire(shardDirectory, shard)) {
+			try {
+				ShardRunner.Lease.acquire(shardDirectory, shard);
+				fail("Expected the held lease to be refused");
+			} catch (IllegalStateException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Shard mod:0/2 is being run"));
+			}
+			assertEquals(Collections.singletonList(shard), ShardRunner.Lease.getRunningShards(shardDirectory));
+		}
+		assertFalse(Files.exists(ShardRunner.getLeasePath(shardDirectory, shard)));
+		assertEquals(Collections.emptyList(), ShardRunner.Lease.getRunningShards(shardDirectory));
+	}
+
+	private void writeResult(ShardSpec shard, long dbId, String doi) throws Exception {
+		new ShardResult(70, shard, true, "release_current", "gk_central", 1, Collections.singletonList(doi),
+			Collections.singletonList("10.3180/R-HSA-9.1:Pathway: 9"),
+			Collections.singletonList(new ShardResult.Assigned(dbId, doi, "Pathway " + dbId, true)))
+			.write(ShardRunner.getResultPath(this.folder.getRoot().toPath(), shard));
+	}
+}
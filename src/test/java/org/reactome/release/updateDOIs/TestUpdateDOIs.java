@@ -26,6 +26,7 @@ public class TestUpdateDOIs {
 	private static final Path MOCK_REPORT_PATH = Paths.get("reportPath");
 	private static final int MOCK_RELEASE_NUMBER = 70;
 	private static final long MOCK_PERSON_DBID = 12345L;
+	private static final Long MOCK_PATHWAY_DBID = 67890L;
 
 	@Test
 	public void testfindNewDOIsAndUpdate() throws Exception
@@ -38,10 +39,10 @@ public class TestUpdateDOIs {
 		Mockito.when(instance.getDisplayName()).thenReturn("HSA-12345");
 
 		Mockito.when(instance.getAttributeValue("name")).thenReturn("Name Value");
-		Mockito.when(instance.getAttributeValue("DB_ID")).thenReturn("67890");
+		Mockito.when(instance.getDBID()).thenReturn(MOCK_PATHWAY_DBID);
 
 		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "doi", "NOT REGEXP", "^10.3180")).thenReturn(testResults);
-		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "DB_ID", "=", "67890")).thenReturn(testResults);
+		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "DB_ID", "=", Arrays.asList(MOCK_PATHWAY_DBID))).thenReturn(testResults);
 
 		check.findAndUpdateDOIs(MOCK_PERSON_DBID, MOCK_REPORT_PATH, MOCK_RELEASE_NUMBER, true);
 	}
@@ -53,7 +54,7 @@ public class TestUpdateDOIs {
 		check.setAdaptors(mockAdaptor, mockAdaptor);
 
 		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "doi", "NOT REGEXP", "^10.3180")).thenReturn(new ArrayList<GKInstance>());
-		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "DB_ID", "=", "67890")).thenReturn(new ArrayList<GKInstance>());
+		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "DB_ID", "=", Arrays.asList(MOCK_PATHWAY_DBID))).thenReturn(new ArrayList<GKInstance>());
 
 		check.findAndUpdateDOIs(MOCK_PERSON_DBID, MOCK_REPORT_PATH, MOCK_RELEASE_NUMBER, true);
 	}
@@ -68,10 +69,10 @@ public class TestUpdateDOIs {
 
 		Mockito.when((GKInstance) instance.getAttributeValue("stableIdentifier")).thenReturn(instance);
 		Mockito.when(instance.getAttributeValue("name")).thenReturn("Name Value");
-		Mockito.when(instance.getAttributeValue("DB_ID")).thenReturn("67890");
+		Mockito.when(instance.getDBID()).thenReturn(MOCK_PATHWAY_DBID);
 
 		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "doi", "NOT REGEXP", "^10.3180")).thenReturn(testResults);
-		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "DB_ID", "=", "67890")).thenReturn(new ArrayList<GKInstance>());
+		Mockito.when(mockAdaptor.fetchInstanceByAttribute("Pathway", "DB_ID", "=", Arrays.asList(MOCK_PATHWAY_DBID))).thenReturn(new ArrayList<GKInstance>());
 
 		check.findAndUpdateDOIs(MOCK_PERSON_DBID, MOCK_REPORT_PATH, MOCK_RELEASE_NUMBER,true);
 	}